@@ -0,0 +1,22 @@
+plugins {
+    id("com.gradleup.shadow")
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation("com.google.code.gson:gson:2.14.0")
+    compileOnly("org.jetbrains:annotations:26.1.0")
+    compileOnly("org.jspecify:jspecify:1.0.0")
+
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testImplementation(platform("org.junit:junit-bom:6.1.0-M1"))
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.jar {
+    manifest.attributes("Main-Class" to "dev.faststats.aggregator.Aggregator")
+}
+
+tasks.shadowJar {
+    manifest.attributes("Main-Class" to "dev.faststats.aggregator.Aggregator")
+}
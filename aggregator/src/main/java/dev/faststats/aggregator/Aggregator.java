@@ -0,0 +1,284 @@
+package dev.faststats.aggregator;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.faststats.core.Token;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A host-level sidecar that collects the submissions of all servers on the same host
+ * and forwards them upstream as one batch.
+ * <p>
+ * The servers submit to the aggregator using a Unix domain socket or a loopback port,
+ * see the {@code faststats.aggregator-socket} and {@code faststats.aggregator-port} system properties.
+ * Accepted submissions are collected into a {@link Batch batch} that is compressed,
+ * {@link Spool spooled} to disk, and sent upstream once per interval,
+ * retrying with an exponential backoff until the metrics server accepted it.
+ * <p>
+ * Batches are sent upstream without an {@code Authorization} header,
+ * as a batch combines the submissions of several projects.
+ * Instead, every submission of the batch carries the token of its project,
+ * which the metrics server has to verify for each submission on its own.
+ * <p>
+ * Usage: {@code java -jar aggregator.jar (--socket=<path> | --port=<port>) [--upstream=<url>] [--spool=<dir>]
+ * [--interval=<seconds>] [--spool-limit=<bytes>]}
+ */
+public final class Aggregator implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(Aggregator.class.getName());
+
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_BACKOFF = TimeUnit.HOURS.toMillis(1);
+
+    private final Batch batch = new Batch();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "aggregator-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Options options;
+    private final Spool spool;
+    private final LocalServer server;
+
+    private long backoff = MIN_BACKOFF;
+    private long nextAttempt = 0;
+
+    @VisibleForTesting
+    Aggregator(final Options options) throws IOException {
+        this.options = options;
+        this.spool = new Spool(options.spool(), options.spoolLimit());
+        this.server = options.socket() != null
+                ? LocalServer.unixDomainSocket(options.socket(), this::handle)
+                : LocalServer.loopback(options.port(), this::handle);
+        final var interval = options.interval().toMillis();
+        executor.scheduleAtFixedRate(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java -jar aggregator.jar (--socket=<path> | --port=<port>) [--upstream=<url>] "
+                               + "[--spool=<dir>] [--interval=<seconds>] [--spool-limit=<bytes>]");
+            System.exit(2);
+            return;
+        }
+
+        final var aggregator = new Aggregator(options);
+        final var stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            aggregator.close();
+            stopped.countDown();
+        }, "aggregator-shutdown"));
+        LOGGER.info("Listening on " + aggregator.server.getAddress() + ", forwarding to " + options.upstream());
+
+        // all threads of the aggregator are daemon threads, so the main thread keeps it running until shutdown
+        stopped.await();
+    }
+
+    @VisibleForTesting
+    LocalServer getServer() {
+        return server;
+    }
+
+    private LocalServer.Response handle(final LocalServer.Request request) {
+        if (!request.target().equals("/v1/collect")) return new LocalServer.Response(404, "Not found");
+        if (!request.method().equals("POST")) return new LocalServer.Response(405, "Method not allowed");
+
+        final var authorization = request.headers().getOrDefault("authorization", "");
+        final var token = authorization.startsWith("Bearer ") ? authorization.substring(7) : "";
+        if (!token.matches(Token.PATTERN)) return new LocalServer.Response(401, "Invalid token");
+
+        final var type = request.headers().getOrDefault("content-type", "");
+        final var encoding = request.headers().getOrDefault("content-encoding", "identity").toLowerCase(Locale.ROOT);
+        if (!type.equals("application/octet-stream") || !(encoding.equals("gzip") || encoding.equals("identity"))) {
+            return new LocalServer.Response(415, "Unsupported media type");
+        }
+
+        try {
+            final var body = encoding.equals("gzip") ? gunzip(request.body()) : request.body();
+            batch.add(token, JsonParser.parseString(new String(body, UTF_8)).getAsJsonObject());
+            return new LocalServer.Response(202, "{}");
+        } catch (final IOException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            return new LocalServer.Response(400, "Malformed payload: " + e.getMessage());
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (final Throwable t) {
+            LOGGER.log(Level.WARNING, "Failed to flush batch", t);
+        }
+    }
+
+    /**
+     * Spools the pending submissions and sends all spooled batches upstream, oldest first.
+     * <p>
+     * Sending stops at the first failure, and is not attempted again before the backoff elapsed.
+     *
+     * @throws IOException if the spool could not be accessed
+     */
+    @VisibleForTesting
+    synchronized void flush() throws IOException {
+        final var pending = batch.drain();
+        if (pending != null) spool.write(gzip(pending.toString().getBytes(UTF_8)));
+
+        if (System.currentTimeMillis() < nextAttempt) return;
+        for (final var file : spool.list()) {
+            if (!send(file)) {
+                nextAttempt = System.currentTimeMillis() + backoff;
+                LOGGER.warning("Retrying in " + TimeUnit.MILLISECONDS.toSeconds(backoff) + " seconds");
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                return;
+            }
+            Files.deleteIfExists(file);
+        }
+        backoff = MIN_BACKOFF;
+    }
+
+    /**
+     * Sends a spooled batch upstream.
+     * <p>
+     * The request is not authorized as a whole, the metrics server authorizes every submission by its token.
+     * Batches rejected as invalid are dropped, as sending them again would not succeed either.
+     *
+     * @return whether the batch does not need to be sent again
+     */
+    private boolean send(final Path file) throws IOException {
+        final var request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofFile(file))
+                .header("Content-Encoding", "gzip")
+                .header("Content-Type", "application/octet-stream")
+                .header("User-Agent", "FastStats Aggregator")
+                .timeout(Duration.ofSeconds(10))
+                .uri(options.upstream())
+                .build();
+        try {
+            final var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(UTF_8));
+            final var status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                LOGGER.info("Batch accepted with status code: " + status);
+                return true;
+            } else if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                LOGGER.warning("Batch rejected with status code: " + status + " (" + response.body() + "), dropping it");
+                return true;
+            }
+            LOGGER.warning("Failed to send batch: " + status + " (" + response.body() + ")");
+            return false;
+        } catch (final IOException e) {
+            LOGGER.warning("Failed to connect to metrics server: " + options.upstream() + " (" + e + ")");
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close server", e);
+        }
+        executor.shutdown();
+        flushSafely();
+    }
+
+    @Contract(pure = true)
+    private static byte[] gzip(final byte[] bytes) {
+        try (final var byteOutput = new ByteArrayOutputStream(bytes.length / 2);
+             final var output = new GZIPOutputStream(byteOutput)) {
+            output.write(bytes);
+            output.finish();
+            return byteOutput.toByteArray();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gunzip(final byte[] bytes) throws IOException {
+        try (final var input = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * The aggregator options.
+     *
+     * @param socket     the Unix domain socket to listen on, or {@code null} to listen on a loopback port
+     * @param port       the loopback port to listen on
+     * @param upstream   the url of the metrics server
+     * @param spool      the spool directory
+     * @param interval   the interval between two batches
+     * @param spoolLimit the maximum size of the spool in bytes
+     */
+    @VisibleForTesting
+    record Options(@Nullable Path socket, int port, URI upstream, Path spool, Duration interval, long spoolLimit) {
+        static Options parse(final String[] args) throws IllegalArgumentException {
+            Path socket = null;
+            var port = -1;
+            var upstream = URI.create("https://metrics.faststats.dev/v1/batch");
+            var spool = Path.of("spool");
+            var interval = Duration.ofMinutes(5);
+            var spoolLimit = 64L * 1024 * 1024;
+
+            for (final var arg : args) {
+                final var separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator == -1) throw new IllegalArgumentException("Invalid argument: " + arg);
+                final var value = arg.substring(separator + 1);
+                try {
+                    switch (arg.substring(2, separator)) {
+                        case "socket" -> socket = Path.of(value);
+                        case "port" -> port = Integer.parseInt(value);
+                        case "upstream" -> upstream = URI.create(value);
+                        case "spool" -> spool = Path.of(value);
+                        case "interval" -> interval = Duration.ofSeconds(Long.parseLong(value));
+                        case "spool-limit" -> spoolLimit = Long.parseLong(value);
+                        default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number: " + arg, e);
+                }
+            }
+
+            if ((socket == null) == (port == -1)) throw new IllegalArgumentException("Either --socket or --port is required");
+            if (port < -1 || port > 65535) throw new IllegalArgumentException("Invalid port: " + port);
+            if (interval.isNegative() || interval.isZero()) throw new IllegalArgumentException("Invalid interval: " + interval);
+            return new Options(socket, port, upstream, spool, interval, spoolLimit);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dev.faststats.aggregator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import dev.faststats.core.BatchFormat;
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the submissions of all local servers until they are forwarded upstream.
+ * <p>
+ * Every submission is kept as its own entry, in the order it was received,
+ * as the servers flush their metrics once the aggregator accepted a submission,
+ * so repeated submissions of the same server carry data that is not part of any other.
+ * The {@link BatchFormat#HOST_FIELDS host fields} every server shares are only sent once.
+ */
+final class Batch {
+    private final List<Submission> submissions = new ArrayList<>();
+
+    /**
+     * Adds a submission.
+     *
+     * @param token   the project token
+     * @param payload the submission payload
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    synchronized void add(final String token, final JsonObject payload) throws IllegalArgumentException {
+        if (!payload.has("identifier") || !payload.get("identifier").isJsonPrimitive()) {
+            throw new IllegalArgumentException("Missing identifier");
+        }
+        if (!payload.has("data") || !payload.get("data").isJsonObject()) {
+            throw new IllegalArgumentException("Missing data");
+        }
+        if (payload.has("errors") && !payload.get("errors").isJsonArray()) {
+            throw new IllegalArgumentException("Malformed errors");
+        }
+        resolveFrames(payload);
+        submissions.add(new Submission(token, payload));
+    }
+
+    /**
+     * Checks whether there are no pending submissions.
+     *
+     * @return whether the batch is empty
+     */
+    @Contract(pure = true)
+    synchronized boolean isEmpty() {
+        return submissions.isEmpty();
+    }
+
+    /**
+     * Removes all pending submissions and returns them as one batch.
+     *
+     * @return the batch, or {@code null} if there were no pending submissions
+     */
+    synchronized @Nullable JsonObject drain() {
+        if (submissions.isEmpty()) return null;
+
+        final var host = BatchFormat.hoist(submissions.stream()
+                .filter(submission -> !submission.isDelta())
+                .map(Submission::data)
+                .toList());
+
+        final var array = new JsonArray(submissions.size());
+        submissions.forEach(submission -> {
+            final var entry = new JsonObject();
+            entry.addProperty("token", submission.token());
+            entry.add("payload", submission.payload());
+            array.add(entry);
+        });
+        submissions.clear();
+
+        final var batch = new JsonObject();
+        batch.add("host", host);
+        batch.add("submissions", array);
+        return batch;
+    }
+
+    /**
+     * Replaces frame table indices with the frames they refer to,
+     * as the frame tables of different submissions are not merged.
+     */
+    private static void resolveFrames(final JsonObject payload) {
+        final var frames = payload.remove("frames");
+        if (frames == null || !payload.has("errors")) return;
+        final var table = frames.getAsJsonArray();
+        payload.getAsJsonArray("errors").forEach(error -> {
+            final var report = error.getAsJsonObject();
+            if (!report.has("stack")) return;
+            final var stack = new JsonArray();
+            report.getAsJsonArray("stack").forEach(frame -> {
+                stack.add(frame.getAsJsonPrimitive().isNumber() ? table.get(frame.getAsInt()) : frame);
+            });
+            report.add("stack", stack);
+        });
+    }
+
+    private record Submission(String token, JsonObject payload) {
+        private JsonObject data() {
+            return payload.getAsJsonObject("data");
+        }
+
+        private boolean isDelta() {
+            return payload.has("delta") && payload.get("delta").getAsBoolean();
+        }
+    }
+}
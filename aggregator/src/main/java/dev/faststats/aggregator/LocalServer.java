@@ -0,0 +1,270 @@
+package dev.faststats.aggregator;
+
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serial;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A minimal HTTP/1.1 server for the local servers, listening on a Unix domain socket or a loopback port.
+ * <p>
+ * Every connection serves a single request and is closed after the response,
+ * and request bodies must declare their {@code Content-Length}.
+ */
+final class LocalServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LocalServer.class.getName());
+
+    private static final int MAX_HEAD_SIZE = 16 * 1024;
+    private static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final ServerSocketChannel channel;
+    private final Function<Request, Response> handler;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timeouts;
+    private final @Nullable Path socket;
+
+    private LocalServer(final ServerSocketChannel channel, final Function<Request, Response> handler, final @Nullable Path socket) {
+        this.channel = channel;
+        this.handler = handler;
+        this.socket = socket;
+        this.workers = Executors.newFixedThreadPool(4, runnable -> daemon(runnable, "aggregator-worker"));
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "aggregator-timeout"));
+        daemon(this::accept, "aggregator-acceptor").start();
+    }
+
+    /**
+     * Starts a server listening on a Unix domain socket, replacing a stale socket file.
+     *
+     * @param socket  the path of the socket
+     * @param handler the request handler
+     * @return the started server
+     * @throws IOException if the socket could not be bound
+     */
+    @Contract(value = "_, _ -> new")
+    static LocalServer unixDomainSocket(final Path socket, final Function<Request, Response> handler) throws IOException {
+        Files.deleteIfExists(socket);
+        final var channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socket));
+        return new LocalServer(channel, handler, socket);
+    }
+
+    /**
+     * Starts a server listening on a loopback port.
+     *
+     * @param port    the port, or {@code 0} to pick a free port
+     * @param handler the request handler
+     * @return the started server
+     * @throws IOException if the port could not be bound
+     */
+    @Contract(value = "_, _ -> new")
+    static LocalServer loopback(final int port, final Function<Request, Response> handler) throws IOException {
+        final var channel = ServerSocketChannel.open(StandardProtocolFamily.INET);
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return new LocalServer(channel, handler, null);
+    }
+
+    /**
+     * Get the address the server is listening on.
+     *
+     * @return the address
+     * @throws IOException if the address could not be determined
+     */
+    @Contract(pure = true)
+    SocketAddress getAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    private void accept() {
+        while (channel.isOpen()) {
+            try {
+                final var connection = channel.accept();
+                workers.execute(() -> serve(connection));
+            } catch (final ClosedChannelException ignored) {
+                return;
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to accept connection", e);
+            }
+        }
+    }
+
+    private void serve(final SocketChannel connection) {
+        final var timeout = timeouts.schedule(() -> close(connection), TIMEOUT, TimeUnit.MILLISECONDS);
+        try (connection) {
+            Response response;
+            try {
+                response = handler.apply(read(connection));
+            } catch (final ProtocolException e) {
+                response = new Response(400, e.getMessage());
+            } catch (final RequestException e) {
+                response = new Response(e.status, e.getMessage());
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to handle request", e);
+                response = new Response(500, "Internal error");
+            }
+            write(connection, response);
+        } catch (final IOException e) {
+            LOGGER.log(Level.FINE, "Failed to serve connection", e);
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    private static Request read(final SocketChannel connection) throws IOException {
+        final var input = new ByteArrayOutputStream(1024);
+        final var buffer = ByteBuffer.allocate(8192);
+        var end = -1;
+        while (end == -1) {
+            if (connection.read(buffer) == -1) throw new ProtocolException("Incomplete request");
+            input.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+            end = indexOfHeaderEnd(input.toByteArray());
+            if (end == -1 && input.size() > MAX_HEAD_SIZE) throw new RequestException(431, "Request header too large");
+        }
+
+        final var bytes = input.toByteArray();
+        final var lines = new String(bytes, 0, end, ISO_8859_1).split("\r\n");
+        final var line = lines[0].split(" ");
+        if (line.length != 3 || !line[2].startsWith("HTTP/1.")) throw new ProtocolException("Invalid request line: " + lines[0]);
+
+        final var headers = new HashMap<String, String>();
+        for (var i = 1; i < lines.length; i++) {
+            final var separator = lines[i].indexOf(':');
+            if (separator <= 0) throw new ProtocolException("Invalid header: " + lines[i]);
+            headers.put(lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT), lines[i].substring(separator + 1).trim());
+        }
+        if (headers.containsKey("transfer-encoding")) throw new RequestException(411, "Content-Length required");
+
+        final int length;
+        try {
+            length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Invalid content length: " + headers.get("content-length"));
+        }
+        if (length < 0) throw new ProtocolException("Invalid content length: " + length);
+        if (length > MAX_BODY_SIZE) throw new RequestException(413, "Request body too large");
+
+        final var body = ByteBuffer.allocate(length);
+        body.put(bytes, end + 4, Math.min(length, bytes.length - end - 4));
+        while (body.hasRemaining()) {
+            if (connection.read(body) == -1) throw new ProtocolException("Incomplete request body");
+        }
+        return new Request(line[0], line[1], Map.copyOf(headers), body.array());
+    }
+
+    private static void write(final SocketChannel connection, final Response response) throws IOException {
+        final var body = response.body().getBytes(UTF_8);
+        final var head = "HTTP/1.1 " + response.status() + " " + reason(response.status()) + "\r\n"
+                         + "Content-Type: text/plain; charset=utf-8\r\n"
+                         + "Content-Length: " + body.length + "\r\n"
+                         + "Connection: close\r\n\r\n";
+        final var buffers = new ByteBuffer[]{ByteBuffer.wrap(head.getBytes(ISO_8859_1)), ByteBuffer.wrap(body)};
+        while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) connection.write(buffers);
+    }
+
+    private static String reason(final int status) {
+        return switch (status) {
+            case 202 -> "Accepted";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 411 -> "Length Required";
+            case 413 -> "Content Too Large";
+            case 415 -> "Unsupported Media Type";
+            case 431 -> "Request Header Fields Too Large";
+            case 503 -> "Service Unavailable";
+            default -> status < 400 ? "OK" : "Error";
+        };
+    }
+
+    private static int indexOfHeaderEnd(final byte[] bytes) {
+        for (var i = 0; i + 3 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static Thread daemon(final Runnable runnable, final String name) {
+        final var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void close(final SocketChannel connection) {
+        try {
+            connection.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        workers.shutdown();
+        timeouts.shutdownNow();
+        if (socket != null) Files.deleteIfExists(socket);
+    }
+
+    /**
+     * A request of a local server.
+     *
+     * @param method  the request method
+     * @param target  the request target
+     * @param headers the request headers, with lower case names
+     * @param body    the request body
+     */
+    record Request(String method, String target, Map<String, String> headers, byte[] body) {
+    }
+
+    /**
+     * A response to a local server.
+     *
+     * @param status the status code
+     * @param body   the response body
+     */
+    record Response(int status, String body) {
+    }
+
+    /**
+     * Rejects a request with the given status code.
+     */
+    static final class RequestException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(final int status, final String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
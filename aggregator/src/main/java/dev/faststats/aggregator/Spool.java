@@ -0,0 +1,79 @@
+package dev.faststats.aggregator;
+
+import org.jetbrains.annotations.Contract;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists compressed batches on disk until they were accepted upstream.
+ * <p>
+ * Batches are written atomically, so a crash never leaves a partial batch behind,
+ * and the oldest batches are dropped once the spool exceeds its size limit.
+ */
+final class Spool {
+    private static final Logger LOGGER = Logger.getLogger(Spool.class.getName());
+    private static final String SUFFIX = ".batch.gz";
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Path directory;
+    private final long limit;
+
+    Spool(final Path directory, final long limit) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.limit = limit;
+    }
+
+    /**
+     * Writes a batch to the spool.
+     *
+     * @param batch the compressed batch
+     * @throws IOException if the batch could not be written
+     */
+    void write(final byte[] batch) throws IOException {
+        final var name = String.format("%019d-%06d%s", System.currentTimeMillis(), sequence.getAndIncrement() % 1_000_000, SUFFIX);
+        final var temp = Files.createTempFile(directory, "batch", ".tmp");
+        try {
+            Files.write(temp, batch);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        trim();
+    }
+
+    /**
+     * Lists the spooled batches, oldest first.
+     *
+     * @return the spooled batches
+     * @throws IOException if the spool could not be listed
+     */
+    @Contract(pure = true)
+    List<Path> list() throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(file -> file.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private void trim() throws IOException {
+        final var batches = new ArrayList<>(list());
+        var size = 0L;
+        for (final var batch : batches) size += Files.size(batch);
+        while (size > limit && batches.size() > 1) {
+            final var oldest = batches.remove(0);
+            size -= Files.size(oldest);
+            LOGGER.log(Level.WARNING, "Spool exceeds " + limit + " bytes, dropping " + oldest.getFileName());
+            Files.deleteIfExists(oldest);
+        }
+    }
+}
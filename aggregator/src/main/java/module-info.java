@@ -0,0 +1,14 @@
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+module dev.faststats.aggregator {
+    exports dev.faststats.aggregator;
+
+    requires com.google.gson;
+    requires dev.faststats.core;
+    requires java.logging;
+    requires java.net.http;
+
+    requires static org.jetbrains.annotations;
+    requires static org.jspecify;
+}
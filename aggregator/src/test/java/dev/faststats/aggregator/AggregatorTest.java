@@ -0,0 +1,204 @@
+package dev.faststats.aggregator;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AggregatorTest {
+    private static final String TOKEN = "bba4a14eac38779007a6fda4814381d4";
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    @Test
+    public void submissionsAreBatchedPerHost() throws Exception {
+        final var batches = new CopyOnWriteArrayList<JsonObject>();
+        final var upstream = upstream(batches, new AtomicInteger());
+        final var spool = Files.createTempDirectory("spool");
+        try (final var aggregator = new Aggregator(options(upstream, spool))) {
+            final var url = url(aggregator);
+            assertEquals(202, submit(url, "{\"identifier\":\"a\",\"data\":{\"core_count\":8,\"os_name\":\"Linux\",\"player_count\":3},"
+                                          + "\"errors\":[{\"error\":\"E\",\"hash\":\"1\"}]}"));
+            assertEquals(202, submit(url, "{\"identifier\":\"b\",\"data\":{\"core_count\":8,\"os_name\":\"Linux\",\"player_count\":5}}"));
+            assertEquals(202, submit(url, "{\"identifier\":\"a\",\"data\":{\"player_count\":4},\"delta\":true,"
+                                          + "\"errors\":[{\"error\":\"E\",\"hash\":\"1\",\"count\":2}]}"));
+
+            aggregator.flush();
+            assertEquals(1, batches.size());
+
+            final var batch = batches.get(0);
+            assertEquals(8, batch.getAsJsonObject("host").get("core_count").getAsInt());
+            assertEquals("Linux", batch.getAsJsonObject("host").get("os_name").getAsString());
+
+            final var submissions = batch.getAsJsonArray("submissions");
+            assertEquals(3, submissions.size());
+            final var first = submissions.get(0).getAsJsonObject();
+            assertEquals(TOKEN, first.get("token").getAsString());
+            final var payload = first.getAsJsonObject("payload");
+            assertFalse(payload.has("delta"));
+            assertEquals("{\"player_count\":3}", payload.getAsJsonObject("data").toString());
+            assertEquals(1, payload.getAsJsonArray("errors").size());
+
+            final var later = submissions.get(2).getAsJsonObject().getAsJsonObject("payload");
+            assertEquals("a", later.get("identifier").getAsString());
+            assertTrue(later.get("delta").getAsBoolean());
+            assertEquals("{\"player_count\":4}", later.getAsJsonObject("data").toString());
+            assertEquals(2, later.getAsJsonArray("errors").get(0).getAsJsonObject().get("count").getAsInt());
+            assertTrue(Files.list(spool).findAny().isEmpty());
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void errorFlushesAreKeptApartFromSubmissions() throws Exception {
+        final var batches = new CopyOnWriteArrayList<JsonObject>();
+        final var upstream = upstream(batches, new AtomicInteger());
+        final var spool = Files.createTempDirectory("spool");
+        try (final var aggregator = new Aggregator(options(upstream, spool))) {
+            final var url = url(aggregator);
+            assertEquals(202, submit(url, "{\"identifier\":\"a\",\"data\":{\"player_count\":3},\"sample_rate\":0.5}"));
+            assertEquals(202, submit(url, "{\"identifier\":\"a\",\"data\":{},\"delta\":true,\"errors_only\":true,"
+                                          + "\"errors\":[{\"error\":\"E\",\"hash\":\"1\"}]}"));
+            assertEquals(202, submit(url, "{\"identifier\":\"a\",\"data\":{\"player_count\":4}}"));
+
+            aggregator.flush();
+            final var submissions = batches.get(0).getAsJsonArray("submissions");
+            assertEquals(3, submissions.size());
+            assertEquals(0.5, submissions.get(0).getAsJsonObject().getAsJsonObject("payload").get("sample_rate").getAsDouble());
+            assertTrue(submissions.get(1).getAsJsonObject().getAsJsonObject("payload").get("errors_only").getAsBoolean());
+            assertFalse(submissions.get(2).getAsJsonObject().getAsJsonObject("payload").has("errors_only"));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void failedBatchesAreSpooled() throws Exception {
+        final var batches = new CopyOnWriteArrayList<JsonObject>();
+        final var failures = new AtomicInteger(1);
+        final var upstream = upstream(batches, failures);
+        final var spool = Files.createTempDirectory("spool");
+        try {
+            try (final var aggregator = new Aggregator(options(upstream, spool))) {
+                assertEquals(202, submit(url(aggregator), "{\"identifier\":\"a\",\"data\":{\"player_count\":3}}"));
+                aggregator.flush();
+                assertTrue(batches.isEmpty());
+                assertEquals(1, Files.list(spool).count());
+            }
+
+            try (final var aggregator = new Aggregator(options(upstream, spool))) {
+                aggregator.flush();
+                assertEquals(1, batches.size());
+                assertEquals(0, Files.list(spool).count());
+            }
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void invalidSubmissionsAreRejected() throws Exception {
+        final var upstream = upstream(new CopyOnWriteArrayList<>(), new AtomicInteger());
+        try (final var aggregator = new Aggregator(options(upstream, Files.createTempDirectory("spool")))) {
+            final var url = url(aggregator);
+            final var body = gzip("{\"identifier\":\"a\",\"data\":{}}");
+            assertEquals(401, CLIENT.send(HttpRequest.newBuilder(url)
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+            assertEquals(415, CLIENT.send(HttpRequest.newBuilder(url)
+                    .header("Authorization", "Bearer " + TOKEN)
+                    .header("Content-Type", "application/vnd.faststats.binary")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+            assertEquals(400, submit(url, "{\"data\":{}}"));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void mainKeepsRunningUntilShutdown() throws Exception {
+        final var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        final var classpath = System.getProperty("java.class.path") + File.pathSeparator + System.getProperty("jdk.module.path", "");
+        final var process = new ProcessBuilder(java, "-cp", classpath, Aggregator.class.getName(),
+                "--port=0", "--spool=" + Files.createTempDirectory("spool"))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            assertFalse(process.waitFor(3, TimeUnit.SECONDS), "Aggregator exited right after starting");
+        } finally {
+            process.destroy();
+        }
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS), "Aggregator did not shut down");
+    }
+
+    private static Aggregator.Options options(final HttpServer upstream, final Path spool) {
+        final var url = URI.create("http://127.0.0.1:" + upstream.getAddress().getPort() + "/v1/batch");
+        return new Aggregator.Options(null, 0, url, spool, Duration.ofHours(1), 1024 * 1024);
+    }
+
+    private static URI url(final Aggregator aggregator) throws IOException {
+        final var address = (InetSocketAddress) aggregator.getServer().getAddress();
+        return URI.create("http://127.0.0.1:" + address.getPort() + "/v1/collect");
+    }
+
+    private static int submit(final URI url, final String payload) throws Exception {
+        final var request = HttpRequest.newBuilder(url)
+                .header("Authorization", "Bearer " + TOKEN)
+                .header("Content-Encoding", "gzip")
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(gzip(payload)))
+                .build();
+        return CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static HttpServer upstream(final List<JsonObject> batches, final AtomicInteger failures) throws IOException {
+        final var server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/batch", exchange -> {
+            try (exchange; final var input = new GZIPInputStream(exchange.getRequestBody())) {
+                final var batch = JsonParser.parseString(new String(input.readAllBytes(), UTF_8)).getAsJsonObject();
+                if (failures.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                batches.add(batch);
+                exchange.sendResponseHeaders(200, -1);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static byte[] gzip(final String payload) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var output = new GZIPOutputStream(bytes)) {
+            output.write(payload.getBytes(UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -35,6 +35,11 @@ final class BukkitMetricsImpl extends SimpleMetrics implements BukkitMetrics {
                 .orElseGet(() -> server.getVersion().split("\\(MC: |\\)", 3)[1]);
         this.serverType = server.getName();
 
+        if (isNetworkMode()) {
+            server.getMessenger().registerOutgoingPluginChannel(plugin, RELAY_CHANNEL);
+            server.getMessenger().registerIncomingPluginChannel(plugin, RELAY_CHANNEL, (channel, player, message) -> receiveRelayAck(message));
+        }
+
         startSubmitting();
     }
 
@@ -64,14 +69,36 @@ final class BukkitMetricsImpl extends SimpleMetrics implements BukkitMetrics {
     }
 
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
+    protected void appendConstantData(final JsonObject metrics) {
         metrics.addProperty("minecraft_version", minecraftVersion);
-        metrics.addProperty("online_mode", checkOnlineMode());
-        metrics.addProperty("player_count", getPlayerCount());
         metrics.addProperty("plugin_version", pluginVersion);
         metrics.addProperty("server_type", serverType);
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("online_mode", checkOnlineMode());
+        metrics.addProperty("player_count", getPlayerCount());
+    }
+
+    @Override
+    protected boolean canRelay() {
+        return isNetworkMode() && getPlayerCount() > 0;
+    }
+
+    @Override
+    protected boolean relay(final byte[] message) {
+        final var player = plugin.getServer().getOnlinePlayers().stream().findAny().orElse(null);
+        if (player == null) return false;
+        try {
+            player.sendPluginMessage(plugin, RELAY_CHANNEL, message);
+            return true;
+        } catch (final Throwable t) {
+            error("Failed to relay metrics to the proxy", t);
+            return false;
+        }
+    }
+
     private int getPlayerCount() {
         try {
             return plugin.getServer().getOnlinePlayers().size();
@@ -10,6 +10,7 @@ import org.jetbrains.annotations.Contract;
 import org.jspecify.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,18 +28,31 @@ final class BungeeMetricsImpl extends SimpleMetrics implements BungeeMetrics {
         this.server = plugin.getProxy();
         this.plugin = plugin;
 
+        if (isNetworkMode()) {
+            server.registerChannel(RELAY_CHANNEL);
+            server.getPluginManager().registerListener(plugin, new RelayListener(this));
+        }
+
         startSubmitting();
     }
 
+    boolean receive(final String server, final byte[] message, final Consumer<byte[]> reply) {
+        return receiveRelayed(server, message, reply);
+    }
+
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
-        metrics.addProperty("online_mode", server.getConfig().isOnlineMode());
-        metrics.addProperty("player_count", server.getOnlineCount());
+    protected void appendConstantData(final JsonObject metrics) {
         metrics.addProperty("plugin_version", plugin.getDescription().getVersion());
         metrics.addProperty("proxy_version", server.getVersion());
         metrics.addProperty("server_type", server.getName());
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("online_mode", server.getConfig().isOnlineMode());
+        metrics.addProperty("player_count", server.getOnlineCount());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.log(Level.SEVERE, message, throwable);
@@ -0,0 +1,17 @@
+package dev.faststats.bungee;
+
+import net.md_5.bungee.api.connection.Server;
+import net.md_5.bungee.api.event.PluginMessageEvent;
+import net.md_5.bungee.api.plugin.Listener;
+import net.md_5.bungee.event.EventHandler;
+
+record RelayListener(BungeeMetricsImpl metrics) implements Listener {
+    @EventHandler
+    public void onPluginMessage(final PluginMessageEvent event) {
+        if (!event.getTag().equals(BungeeMetricsImpl.RELAY_CHANNEL)) return;
+        event.setCancelled(true);
+        if (event.getSender() instanceof final Server server) {
+            metrics.receive(server.getInfo().getName(), event.getData(), reply -> server.sendData(BungeeMetricsImpl.RELAY_CHANNEL, reply));
+        }
+    }
+}
@@ -1,3 +1,8 @@
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath
+}
+
 dependencies {
     compileOnlyApi("com.google.code.gson:gson:2.14.0")
     compileOnlyApi("org.jetbrains:annotations:26.1.0")
@@ -8,3 +13,10 @@ dependencies {
     testImplementation(platform("org.junit:junit-bom:6.1.0-M1"))
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
+
+tasks.register<JavaExec>("benchmark") {
+    description = "Compares the sizes and timings of the compression paths."
+    group = "verification"
+    classpath = benchmark.runtimeClasspath
+    mainClass = "dev.faststats.core.CompressionBenchmark"
+}
@@ -0,0 +1,72 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the sizes and timings of the preset-dictionary deflate compression and the gzip path.
+ * <p>
+ * Run using {@code ./gradlew :core:benchmark}.
+ */
+final class CompressionBenchmark {
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int ITERATIONS = 2_000;
+
+    private CompressionBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        for (final var payload : List.of(payload(false), payload(true))) {
+            final var bytes = payload.toString().getBytes(UTF_8);
+            final var gzip = Compression.gzip(bytes);
+            final var deflate = Compression.deflate(bytes);
+            System.out.printf("payload %d bytes: gzip %d bytes (%d us), %s %d bytes (%d us)%n",
+                    bytes.length,
+                    gzip.body().length, time(() -> Compression.gzip(bytes)),
+                    deflate.encoding() != null ? "deflate+dictionary" : "uncompressed",
+                    deflate.body().length, time(() -> Compression.deflate(bytes)));
+        }
+    }
+
+    private static long time(final Runnable runnable) {
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) runnable.run();
+        final var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++) runnable.run();
+        return (System.nanoTime() - start) / ITERATIONS / 1000;
+    }
+
+    private static JsonObject payload(final boolean errors) {
+        final var data = new JsonObject();
+        data.addProperty("core_count", 8);
+        data.addProperty("java_vendor", "Eclipse Adoptium");
+        data.addProperty("java_version", "21.0.5");
+        data.addProperty("os_arch", "amd64");
+        data.addProperty("os_name", "Linux");
+        data.addProperty("os_version", "6.8.0-45-generic");
+        data.addProperty("minecraft_version", "1.21.4");
+        data.addProperty("online_mode", true);
+        data.addProperty("player_count", 37);
+        data.addProperty("plugin_version", "2.4.1");
+        data.addProperty("server_type", "Paper");
+
+        final var payload = new JsonObject();
+        payload.addProperty("identifier", UUID.randomUUID().toString());
+        payload.add("data", data);
+        if (!errors) return payload;
+
+        final var report = new JsonArray();
+        final var patterns = List.<Map.Entry<Pattern, String>>of();
+        final var cause = new IllegalStateException("Cannot load world data", new NullPointerException("Cannot invoke \"Object.toString()\" because \"value\" is null"));
+        report.add(ErrorHelper.compile(cause, null, false, patterns));
+        report.add(ErrorHelper.compile(new IllegalArgumentException("Invalid configuration value: spawn-radius"), null, true, patterns));
+        payload.add("errors", report);
+        return payload;
+    }
+}
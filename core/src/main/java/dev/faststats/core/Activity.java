@@ -0,0 +1,88 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Contract;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Tracks how much changed between two submissions to adapt the submission period.
+ * <p>
+ * The period is stretched while nothing changes, that is no new error fingerprints and unchanged metric values,
+ * and shortened when new unhandled errors occur or a number swings by more than {@value #SWING} of its value.
+ * Any other change resets the period to its base, so idle servers submit less often and busy ones more often,
+ * keeping the total number of submissions roughly the same.
+ */
+final class Activity {
+    private static final double SWING = 0.5;
+    private static final double STRETCH = 1.5;
+    private static final double SHORTEN = 0.5;
+
+    private final Map<String, Long> hashes = new HashMap<>();
+    private final Map<String, Double> numbers = new HashMap<>();
+
+    private long period = 0;
+    private boolean changed = false;
+    private boolean swung = false;
+    private boolean reported = false;
+    private boolean unhandled = false;
+
+    /**
+     * Compares the given fields against their values of the previous submission.
+     *
+     * @param fields the submission data
+     */
+    synchronized void observe(final JsonObject fields) {
+        fields.entrySet().forEach(entry -> {
+            final var value = entry.getValue();
+            final var hash = MurmurHash3.hash64(value.toString().getBytes(UTF_8));
+            final var previous = hashes.put(entry.getKey(), hash);
+            if (previous != null && previous == hash) return;
+            changed = true;
+
+            if (!isNumber(value)) return;
+            final var number = value.getAsDouble();
+            final var before = numbers.put(entry.getKey(), number);
+            if (before != null && Math.abs(number - before) > Math.max(1, Math.abs(before)) * SWING) swung = true;
+        });
+    }
+
+    /**
+     * Records an error report with a new fingerprint.
+     *
+     * @param handled whether the error was handled
+     */
+    synchronized void reported(final boolean handled) {
+        reported = true;
+        if (!handled) unhandled = true;
+    }
+
+    /**
+     * Computes the period until the next submission based on the activity since the previous one,
+     * and starts observing the next period.
+     *
+     * @param base the base period in milliseconds
+     * @param min  the minimum period in milliseconds
+     * @param max  the maximum period in milliseconds
+     * @return the period until the next submission in milliseconds
+     */
+    synchronized long next(final long base, final long min, final long max) {
+        final var current = period > 0 ? period : base;
+        final long next;
+        if (unhandled || swung) next = (long) (current * SHORTEN);
+        else if (!changed && !reported) next = (long) (current * STRETCH);
+        else next = base;
+
+        changed = swung = reported = unhandled = false;
+        return period = Math.max(Math.min(min, base), Math.min(Math.max(max, base), next));
+    }
+
+    @Contract(pure = true)
+    private static boolean isNumber(final JsonElement element) {
+        return element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber();
+    }
+}
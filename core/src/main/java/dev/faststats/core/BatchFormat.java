@@ -0,0 +1,57 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Contract;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The batch format shared by coalesced submissions and the host-level aggregator.
+ * <p>
+ * A batch sends the {@link #HOST_FIELDS host fields} every full submission agrees on only once:
+ * <pre>{@code
+ * {"host":{"core_count":8,...},"submissions":[{"token":"...","payload":{"identifier":"...","data":{...}}}]}
+ * }</pre>
+ *
+ * @since 0.23.0
+ */
+public final class BatchFormat {
+    /**
+     * Fields describing the host and runtime, hoisted into the {@code host} object if every full submission agrees on them.
+     *
+     * @since 0.23.0
+     */
+    public static final List<String> HOST_FIELDS = List.of(
+            "core_count",
+            "java_vendor",
+            "java_version",
+            "os_arch",
+            "os_name",
+            "os_version"
+    );
+
+    private BatchFormat() {
+    }
+
+    /**
+     * Hoists the host fields all given submission data agrees on, removing them from the submission data.
+     * <p>
+     * Only the data of full submissions must be given, as delta submissions omit the host fields.
+     *
+     * @param data the data of the full submissions
+     * @return the host object
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", mutates = "param1")
+    public static JsonObject hoist(final Collection<JsonObject> data) {
+        final var host = new JsonObject();
+        HOST_FIELDS.forEach(field -> {
+            final var values = data.stream().map(submission -> submission.get(field)).distinct().limit(2).toList();
+            if (values.size() != 1 || values.get(0) == null) return;
+            host.add(field, values.get(0));
+            data.forEach(submission -> submission.remove(field));
+        });
+        return host;
+    }
+}
@@ -0,0 +1,281 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.jetbrains.annotations.Contract;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary encoding of the submission data, used instead of JSON if the metrics server supports it.
+ * <p>
+ * The encoding carries the same model as the JSON encoding.
+ * It starts with the {@link #MAGIC magic bytes}, followed by the top-level object.
+ * Every value starts with a one byte tag:
+ * <ul>
+ *     <li>{@code 0x00} null</li>
+ *     <li>{@code 0x01} false, {@code 0x02} true</li>
+ *     <li>{@code 0x03} integer, as a zigzag varint</li>
+ *     <li>{@code 0x04} floating point, as a big-endian IEEE 754 double</li>
+ *     <li>{@code 0x05} string, as a string reference</li>
+ *     <li>{@code 0x06} array, as a varint length followed by the elements</li>
+ *     <li>{@code 0x07} object, as string reference keys each followed by their value, terminated by {@code 0x00}</li>
+ * </ul>
+ * Strings are interned per payload: a string reference is a varint,
+ * {@code 1} is followed by a new string (varint byte length and UTF-8 bytes) that is appended to the string table,
+ * and any value {@code n >= 2} refers to the string at index {@code n - 2} of the string table.
+ */
+final class BinaryFormat {
+    static final String CONTENT_TYPE = "application/vnd.faststats.binary";
+    static final byte[] MAGIC = {'F', 'S', 1};
+
+    private static final int NULL = 0x00;
+    private static final int FALSE = 0x01;
+    private static final int TRUE = 0x02;
+    private static final int INTEGER = 0x03;
+    private static final int DOUBLE = 0x04;
+    private static final int STRING = 0x05;
+    private static final int ARRAY = 0x06;
+    private static final int OBJECT = 0x07;
+
+    private static final int END = 0;
+    private static final int NEW_STRING = 1;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Encodes a payload.
+     *
+     * @param payload the payload
+     * @return the binary payload
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static byte[] write(final JsonObject payload) {
+        final var writer = new Writer();
+        writer.value(payload);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a binary payload.
+     *
+     * @param bytes the payload
+     * @return the decoded payload
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static JsonObject read(final byte[] bytes) throws IllegalArgumentException {
+        try {
+            for (var i = 0; i < MAGIC.length; i++) {
+                if (bytes[i] != MAGIC[i]) throw new IllegalArgumentException("Unsupported binary format");
+            }
+            final var reader = new Reader(bytes, MAGIC.length);
+            final var value = reader.readValue();
+            if (!value.isJsonObject() || reader.position != bytes.length) {
+                throw new IllegalArgumentException("Malformed binary payload");
+            }
+            return value.getAsJsonObject();
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated binary payload", e);
+        }
+    }
+
+    /**
+     * Writes binary payloads.
+     * <p>
+     * A writer can be {@link #copy() copied} to reuse an encoded prefix, including its string table.
+     */
+    static final class Writer {
+        private final ByteArrayOutputStream output;
+        private final Map<String, Integer> strings;
+
+        Writer() {
+            this.output = new ByteArrayOutputStream(1024);
+            this.strings = new HashMap<>();
+            output.writeBytes(MAGIC);
+        }
+
+        private Writer(final Writer writer) {
+            this.output = new ByteArrayOutputStream(Math.max(1024, writer.output.size() * 2));
+            this.strings = new HashMap<>(writer.strings);
+            output.writeBytes(writer.output.toByteArray());
+        }
+
+        @Contract(value = " -> new", pure = true)
+        Writer copy() {
+            return new Writer(this);
+        }
+
+        void startObject() {
+            output.write(OBJECT);
+        }
+
+        void key(final String key) {
+            writeString(key);
+        }
+
+        void endObject() {
+            writeVarInt(END);
+        }
+
+        void entries(final JsonObject object) {
+            object.entrySet().forEach(entry -> {
+                writeString(entry.getKey());
+                value(entry.getValue());
+            });
+        }
+
+        void value(final JsonElement element) {
+            if (element instanceof final JsonObject object) {
+                startObject();
+                entries(object);
+                endObject();
+            } else if (element instanceof final JsonArray array) {
+                output.write(ARRAY);
+                writeVarInt(array.size());
+                array.forEach(this::value);
+            } else if (element instanceof final JsonPrimitive primitive) {
+                if (primitive.isBoolean()) {
+                    output.write(primitive.getAsBoolean() ? TRUE : FALSE);
+                } else if (primitive.isNumber()) {
+                    number(primitive);
+                } else {
+                    output.write(STRING);
+                    writeString(primitive.getAsString());
+                }
+            } else {
+                output.write(NULL);
+            }
+        }
+
+        private void number(final JsonPrimitive primitive) {
+            final var number = primitive.getAsNumber();
+            if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+                output.write(INTEGER);
+                writeVarLong(zigzag(number.longValue()));
+                return;
+            }
+            if (!(number instanceof Double) && !(number instanceof Float)) {
+                final var decimal = new BigDecimal(primitive.getAsString());
+                if (decimal.scale() <= 0 && decimal.toBigInteger().bitLength() < 64) {
+                    output.write(INTEGER);
+                    writeVarLong(zigzag(decimal.longValue()));
+                    return;
+                }
+            }
+            output.write(DOUBLE);
+            final var bits = Double.doubleToLongBits(number.doubleValue());
+            for (var shift = 56; shift >= 0; shift -= 8) output.write((int) (bits >>> shift));
+        }
+
+        private void writeString(final String string) {
+            final var index = strings.get(string);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            strings.put(string, strings.size());
+            final var bytes = string.getBytes(UTF_8);
+            writeVarInt(NEW_STRING);
+            writeVarInt(bytes.length);
+            output.writeBytes(bytes);
+        }
+
+        private void writeVarInt(final int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+
+        private static long zigzag(final long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        @Contract(value = " -> new", pure = true)
+        byte[] toByteArray() {
+            return output.toByteArray();
+        }
+    }
+
+    private static final class Reader {
+        private final List<String> strings = new ArrayList<>();
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(final byte[] bytes, final int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private JsonElement readValue() {
+            final var tag = bytes[position++];
+            return switch (tag) {
+                case NULL -> JsonNull.INSTANCE;
+                case FALSE -> new JsonPrimitive(false);
+                case TRUE -> new JsonPrimitive(true);
+                case INTEGER -> {
+                    final var value = readVarLong();
+                    yield new JsonPrimitive((value >>> 1) ^ -(value & 1));
+                }
+                case DOUBLE -> {
+                    var bits = 0L;
+                    for (var i = 0; i < 8; i++) bits = (bits << 8) | (bytes[position++] & 0xFF);
+                    yield new JsonPrimitive(Double.longBitsToDouble(bits));
+                }
+                case STRING -> new JsonPrimitive(readString(readVarLong()));
+                case ARRAY -> {
+                    final var length = Math.toIntExact(readVarLong());
+                    final var array = new JsonArray(Math.min(length, bytes.length - position));
+                    for (var i = 0; i < length; i++) array.add(readValue());
+                    yield array;
+                }
+                case OBJECT -> {
+                    final var object = new JsonObject();
+                    for (var reference = readVarLong(); reference != END; reference = readVarLong()) {
+                        final var key = readString(reference);
+                        object.add(key, readValue());
+                    }
+                    yield object;
+                }
+                default -> throw new IllegalArgumentException("Unknown tag: " + tag);
+            };
+        }
+
+        private String readString(final long reference) {
+            if (reference != NEW_STRING) return strings.get(Math.toIntExact(reference - 2));
+            final var length = Math.toIntExact(readVarLong());
+            if (position + length > bytes.length) throw new IndexOutOfBoundsException(position + length);
+            final var string = new String(bytes, position, length, UTF_8);
+            position += length;
+            strings.add(string);
+            return string;
+        }
+
+        private long readVarLong() {
+            var value = 0L;
+            for (var shift = 0; shift < 64; shift += 7) {
+                final var b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonPrimitive;
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Coalesces the submissions of all plugins on the same server into a single batch request.
+ * <p>
+ * Every plugin shades its own copy of this library, so the instances can only communicate using JDK types.
+ * The first instance registers itself as the leader in the platform MBean server,
+ * which is shared by every class loader of the JVM.
+ * The other instances hand their encoded submissions to the leader as a plain {@link Map},
+ * and are notified through a {@link Consumer} once the batch containing them was accepted.
+ * <p>
+ * The batch uses the {@link BatchFormat batch format}.
+ * As every instance runs on the same host, the other instances offer their submissions without the host fields,
+ * which the leader only takes if their host fields equal its own.
+ * The offered submissions are spliced into the batch as they were encoded.
+ */
+final class Coalescer implements Function<Object, Object> {
+    /**
+     * The name of the leader in the MBean server.
+     * It must not start with the package name, as that would be relocated when shading.
+     */
+    private static final String NAME = "faststats:type=SubmissionCoalescer";
+    private static final int VERSION = 2;
+    private static final byte[] HOST = "{\"host\":".getBytes(UTF_8);
+    private static final byte[] SUBMISSIONS = ",\"submissions\":[".getBytes(UTF_8);
+    private static final byte[] TOKEN = "{\"token\":".getBytes(UTF_8);
+    private static final byte[] PAYLOAD = ",\"payload\":".getBytes(UTF_8);
+
+    /**
+     * The size of a batch without its host fields and submissions.
+     */
+    static final int OVERHEAD = HOST.length + SUBMISSIONS.length + 2;
+
+    private final Map<String, Offer> offers = new LinkedHashMap<>();
+    private final ObjectName name;
+    private final URI url;
+    private final String host;
+
+    private Coalescer(final ObjectName name, final URI url, final String host) {
+        this.name = name;
+        this.url = url;
+        this.host = host;
+    }
+
+    /**
+     * Registers a new leader, unless another instance already leads.
+     *
+     * @param url  the url submissions are sent to
+     * @param host the encoded host fields
+     * @return the leader, or {@code null} if there already is a leader
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static @Nullable Coalescer lead(final URI url, final String host) {
+        try {
+            final var coalescer = new Coalescer(name(), url, host);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(coalescer, (Class) Function.class), coalescer.name);
+            return coalescer;
+        } catch (final InstanceAlreadyExistsException e) {
+            return null;
+        } catch (final JMException e) {
+            throw new IllegalStateException("Failed to register submission coalescer", e);
+        }
+    }
+
+    /**
+     * Hands a submission to the leader.
+     * <p>
+     * The offer replaces a previous offer of the same project that was not submitted yet.
+     *
+     * @param url      the url the submission would be sent to
+     * @param token    the project token
+     * @param host     the encoded host fields
+     * @param payload  the encoded JSON submission, without the host fields
+     * @param callback notified whether the batch containing the submission was accepted
+     * @return whether the leader took the submission
+     */
+    static boolean offer(final URI url, final String token, final String host, final byte[] payload, final Consumer<Boolean> callback) {
+        final var offer = Map.<String, Object>of(
+                "version", VERSION,
+                "url", url.toString(),
+                "token", token,
+                "host", host,
+                "payload", payload,
+                "callback", callback
+        );
+        try {
+            final var result = ManagementFactory.getPlatformMBeanServer().invoke(name(), "apply",
+                    new Object[]{offer}, new String[]{Object.class.getName()});
+            return Boolean.TRUE.equals(result);
+        } catch (final InstanceNotFoundException e) {
+            return false;
+        } catch (final JMException e) {
+            throw new IllegalStateException("Failed to offer submission", e);
+        }
+    }
+
+    private static ObjectName name() {
+        try {
+            return new ObjectName(NAME);
+        } catch (final MalformedObjectNameException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Takes an offer from another instance.
+     *
+     * @param argument the offer
+     * @return whether the offer was taken
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Object apply(final Object argument) {
+        if (!(argument instanceof final Map<?, ?> map) || !Integer.valueOf(VERSION).equals(map.get("version"))) return false;
+        if (!url.toString().equals(map.get("url")) || !host.equals(map.get("host"))) return false;
+        if (!(map.get("token") instanceof final String token)) return false;
+        if (!(map.get("payload") instanceof final byte[] payload)) return false;
+        if (!(map.get("callback") instanceof final Consumer<?> callback)) return false;
+
+        final var previous = offers.put(token, new Offer(token, payload, (Consumer<Boolean>) callback));
+        if (previous != null) previous.complete(false);
+        return true;
+    }
+
+    /**
+     * Removes all pending offers.
+     *
+     * @return the pending offers
+     */
+    synchronized List<Offer> drain() {
+        final var drained = new ArrayList<>(offers.values());
+        offers.clear();
+        return drained;
+    }
+
+    /**
+     * Returns an offer that did not fit into a batch, unless the project offered a newer submission in the meantime.
+     *
+     * @param offer the offer
+     */
+    synchronized void requeue(final Offer offer) {
+        offers.putIfAbsent(offer.token(), offer);
+    }
+
+    /**
+     * Unregisters the leader and rejects all pending offers, so the remaining instances elect a new leader.
+     */
+    void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (final JMException ignored) {
+        }
+        drain().forEach(offer -> offer.complete(false));
+    }
+
+    /**
+     * Computes the size a submission adds to a batch, including its separator.
+     *
+     * @param token   the project token
+     * @param payload the encoded JSON submission
+     * @return the size in bytes
+     */
+    @Contract(pure = true)
+    static int size(final String token, final byte[] payload) {
+        return TOKEN.length + new JsonPrimitive(token).toString().getBytes(UTF_8).length + PAYLOAD.length + payload.length + 2;
+    }
+
+    /**
+     * Creates a batch of submissions, splicing in the encoded host fields and submissions.
+     *
+     * @param host        the encoded host fields
+     * @param submissions the project tokens and their encoded JSON submissions, without the host fields
+     * @return the encoded batch
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static byte[] batch(final String host, final List<Map.Entry<String, byte[]>> submissions) {
+        final var output = new ByteArrayOutputStream(OVERHEAD + host.length() + submissions.stream()
+                .mapToInt(submission -> size(submission.getKey(), submission.getValue()))
+                .sum());
+        output.writeBytes(HOST);
+        output.writeBytes(host.getBytes(UTF_8));
+        output.writeBytes(SUBMISSIONS);
+        for (var i = 0; i < submissions.size(); i++) {
+            if (i > 0) output.write(',');
+            output.writeBytes(TOKEN);
+            output.writeBytes(new JsonPrimitive(submissions.get(i).getKey()).toString().getBytes(UTF_8));
+            output.writeBytes(PAYLOAD);
+            output.writeBytes(submissions.get(i).getValue());
+            output.write('}');
+        }
+        output.write(']');
+        output.write('}');
+        return output.toByteArray();
+    }
+
+    /**
+     * A submission handed over by another instance.
+     *
+     * @param token    the project token
+     * @param payload  the encoded JSON submission
+     * @param callback notified whether the submission was accepted
+     */
+    record Offer(String token, byte[] payload, Consumer<Boolean> callback) {
+        void complete(final boolean accepted) {
+            try {
+                callback.accept(accepted);
+            } catch (final RuntimeException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package dev.faststats.core;
+
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compression of submission payloads.
+ * <p>
+ * Besides plain gzip, payloads can be compressed as zlib deflate streams using a preset dictionary
+ * of keys, values and stack frames that repeat across every server.
+ * The dictionary is versioned, the metrics server advertises the versions it supports
+ * using the {@link #ACCEPT_DICTIONARY_HEADER} response header,
+ * and the version used is sent in the {@link #DICTIONARY_HEADER} request header.
+ */
+final class Compression {
+    static final String DICTIONARY_HEADER = "X-FastStats-Dictionary";
+    static final String ACCEPT_DICTIONARY_HEADER = "X-FastStats-Accept-Dictionary";
+    static final String DICTIONARY_VERSION = "1";
+
+    private static final int THRESHOLD = Integer.getInteger("faststats.compression-threshold", 256);
+
+    /**
+     * The preset dictionary, version {@value #DICTIONARY_VERSION}.
+     * <p>
+     * Deflate prefers short back-references, so the most common strings are placed last.
+     * This must never be changed, a changed dictionary requires a new version.
+     */
+    private static final byte[] DICTIONARY_V1 = String.join("",
+            "java.base/jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:",
+            "java.base/java.lang.reflect.Method.invoke(Method.java:",
+            "java.base/java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:",
+            "java.base/java.util.concurrent.ThreadPoolExecutor$Worker.run(ThreadPoolExecutor.java:",
+            "java.base/java.util.concurrent.CompletableFuture",
+            "java.base/java.lang.Thread.run(Thread.java:",
+            "net.minecraft.server.MinecraftServer.",
+            "net.minecraft.server.dedicated.DedicatedServer.",
+            "org.bukkit.craftbukkit.scheduler.CraftScheduler.mainThreadHeartbeat(CraftScheduler.java:",
+            "org.bukkit.craftbukkit.scheduler.CraftTask.run(CraftTask.java:",
+            "org.bukkit.plugin.SimplePluginManager.callEvent(SimplePluginManager.java:",
+            "io.papermc.paper.plugin.manager.PaperEventManager.callEvent(PaperEventManager.java:",
+            "com.velocitypowered.proxy.",
+            "net.md_5.bungee.",
+            "(Unknown Source)",
+            "java.lang.IllegalArgumentException",
+            "java.lang.IllegalStateException",
+            "java.lang.NullPointerException: Cannot invoke \"",
+            "java.lang.RuntimeException",
+            "\",\"server_type\":\"Paper\"",
+            "\",\"server_type\":\"Velocity\"",
+            "\",\"os_name\":\"Windows 10\"",
+            "\",\"os_name\":\"Linux\",\"os_version\":\"",
+            "\",\"os_arch\":\"amd64\"",
+            "\",\"os_arch\":\"aarch64\"",
+            "\",\"java_vendor\":\"Eclipse Adoptium\"",
+            "\",\"java_vendor\":\"Oracle Corporation\"",
+            "\",\"java_version\":\"21.0.",
+            "\",\"minecraft_version\":\"1.21.",
+            "\",\"plugin_version\":\"",
+            "\",\"proxy_version\":\"",
+            ",\"online_mode\":true",
+            ",\"online_mode\":false",
+            ",\"player_count\":",
+            ",\"handled\":true,\"hash\":\"",
+            ",\"handled\":false,\"hash\":\"",
+            "\",\"buildId\":\"",
+            ",\"count\":",
+            "\"],\"errors\":[{\"error\":\"java.lang.",
+            "\",\"message\":\"",
+            "\",\"stack\":[\"",
+            "\",\"Caused by: ",
+            "\",\"  at ",
+            "\",\"  ... ",
+            " more\"",
+            "{\"identifier\":\"",
+            "\",\"data\":{\"core_count\":"
+    ).getBytes(UTF_8);
+
+    private Compression() {
+    }
+
+    /**
+     * Get the preset dictionary of the current version.
+     *
+     * @return a copy of the dictionary
+     */
+    @Contract(value = " -> new", pure = true)
+    static byte[] dictionary() {
+        return DICTIONARY_V1.clone();
+    }
+
+    /**
+     * Compresses the payload using gzip.
+     *
+     * @param bytes the payload
+     * @return the compressed payload
+     */
+    @Contract(pure = true)
+    static Compressed gzip(final byte[] bytes) {
+        try (final var byteOutput = new ByteArrayOutputStream(bytes.length / 2);
+             final var output = new GZIPOutputStream(byteOutput)) {
+            output.write(bytes);
+            output.finish();
+            return new Compressed(byteOutput.toByteArray(), "gzip", null);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compresses the payload using deflate with the preset dictionary.
+     * <p>
+     * Payloads smaller than the threshold are not compressed at all,
+     * and the compression level decreases as the payload grows.
+     *
+     * @param bytes the payload
+     * @return the compressed payload
+     */
+    @Contract(pure = true)
+    static Compressed deflate(final byte[] bytes) {
+        if (bytes.length < THRESHOLD) return new Compressed(bytes, null, null);
+
+        final var deflater = new Deflater(level(bytes.length));
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            final var output = new ByteArrayOutputStream(bytes.length / 2);
+            final var buffer = new byte[4096];
+            while (!deflater.finished()) {
+                final var length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            return new Compressed(output.toByteArray(), "deflate", DICTIONARY_VERSION);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int level(final int length) {
+        if (length <= 16 * 1024) return Deflater.BEST_COMPRESSION;
+        if (length <= 256 * 1024) return Deflater.DEFAULT_COMPRESSION;
+        return Deflater.BEST_SPEED;
+    }
+
+    /**
+     * Checks whether the metrics server supports the current dictionary version.
+     *
+     * @param header the value of the {@link #ACCEPT_DICTIONARY_HEADER} response header
+     * @return whether the dictionary is supported
+     */
+    @Contract(pure = true)
+    static boolean isSupported(@Nullable final String header) {
+        if (header == null) return false;
+        for (final var version : header.split(",")) {
+            if (version.trim().equals(DICTIONARY_VERSION)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A compressed payload.
+     *
+     * @param body       the request body
+     * @param encoding   the content encoding, or {@code null} if the payload is not compressed
+     * @param dictionary the dictionary version, or {@code null} if no dictionary was used
+     */
+    record Compressed(byte[] body, @Nullable String encoding, @Nullable String dictionary) {
+    }
+}
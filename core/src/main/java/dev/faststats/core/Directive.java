@@ -0,0 +1,154 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Tuning directives sent by the metrics server, allowing operators to shed load centrally.
+ * <p>
+ * A directive is part of the response body and replaces the previous directive,
+ * an empty directive restores the client defaults:
+ * <pre>{@code
+ * {"directive":{"period":3600,"sample_rate":0.1,"stack_trace_limit":5,"message_length":200,"payload_budget":65536}}
+ * }</pre>
+ * The period is given in seconds, the payload budget in bytes.
+ * Absent fields keep the client default, out of range values are clamped.
+ *
+ * @param period          the submission period in milliseconds
+ * @param sampleRate      the fraction of servers submitting detailed data
+ * @param stackTraceLimit the maximum number of stack lines per exception
+ * @param messageLength   the maximum length of exception messages
+ * @param payloadBudget   the maximum size of a submission before compression
+ */
+record Directive(
+        @Nullable Long period,
+        @Nullable Double sampleRate,
+        @Nullable Integer stackTraceLimit,
+        @Nullable Integer messageLength,
+        @Nullable Long payloadBudget
+) {
+    private static final long MIN_PERIOD = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_PERIOD = TimeUnit.DAYS.toMillis(1);
+    private static final long MIN_PAYLOAD_BUDGET = 1024;
+
+    static final Directive NONE = new Directive(null, null, null, null, null);
+
+    Directive {
+        if (period != null) period = Math.max(MIN_PERIOD, Math.min(MAX_PERIOD, period));
+        if (sampleRate != null) sampleRate = Double.isNaN(sampleRate) ? null : Math.max(0, Math.min(1, sampleRate));
+        if (payloadBudget != null) payloadBudget = Math.max(MIN_PAYLOAD_BUDGET, payloadBudget);
+    }
+
+    /**
+     * Parses the directive of a response body.
+     *
+     * @param body the response body
+     * @return the directive, or {@code null} if the body does not contain one
+     */
+    @Contract(pure = true)
+    static @Nullable Directive parse(@Nullable final String body) {
+        if (body == null || body.isBlank()) return null;
+        try {
+            final var json = JsonParser.parseString(body);
+            if (!json.isJsonObject() || !json.getAsJsonObject().has("directive")) return null;
+            final var directive = json.getAsJsonObject().get("directive");
+            return directive.isJsonObject() ? fromJson(directive.getAsJsonObject()) : NONE;
+        } catch (final JsonParseException | IllegalStateException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Contract(value = "_ -> new", pure = true)
+    private static Directive fromJson(final JsonObject json) {
+        final var period = number(json, "period");
+        final var sampleRate = number(json, "sample_rate");
+        final var stackTraceLimit = number(json, "stack_trace_limit");
+        final var messageLength = number(json, "message_length");
+        final var payloadBudget = number(json, "payload_budget");
+        return new Directive(
+                period != null ? TimeUnit.SECONDS.toMillis(period.longValue()) : null,
+                sampleRate != null ? sampleRate.doubleValue() : null,
+                stackTraceLimit != null ? stackTraceLimit.intValue() : null,
+                messageLength != null ? messageLength.intValue() : null,
+                payloadBudget != null ? payloadBudget.longValue() : null
+        );
+    }
+
+    private static @Nullable Number number(final JsonObject json, final String key) {
+        final var element = json.get(key);
+        if (element == null || !element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) return null;
+        return element.getAsNumber();
+    }
+
+    /**
+     * Reads a cached directive.
+     *
+     * @param file the cache file
+     * @return the cached directive, or {@code null} if there is none
+     */
+    @Contract(mutates = "io")
+    static @Nullable Directive read(final Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            return parse(Files.readString(file, UTF_8));
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches the directive, so it applies right away after a restart.
+     *
+     * @param file the cache file
+     * @throws IOException if the file could not be written
+     */
+    @Contract(mutates = "io")
+    void write(final Path file) throws IOException {
+        final var parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final var temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            final var json = new JsonObject();
+            json.add("directive", toJson());
+            Files.writeString(temp, json.toString(), UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Contract(value = " -> new", pure = true)
+    JsonObject toJson() {
+        final var json = new JsonObject();
+        if (period != null) json.addProperty("period", TimeUnit.MILLISECONDS.toSeconds(period));
+        if (sampleRate != null) json.addProperty("sample_rate", sampleRate);
+        if (stackTraceLimit != null) json.addProperty("stack_trace_limit", stackTraceLimit);
+        if (messageLength != null) json.addProperty("message_length", messageLength);
+        if (payloadBudget != null) json.addProperty("payload_budget", payloadBudget);
+        return json;
+    }
+
+    /**
+     * Creates the error limits of this directive, using the defaults for absent limits.
+     *
+     * @return the error limits
+     */
+    @Contract(value = " -> new", pure = true)
+    ErrorHelper.Limits limits() {
+        return new ErrorHelper.Limits(
+                stackTraceLimit != null ? stackTraceLimit : ErrorHelper.Limits.DEFAULT.stackTraceLimit(),
+                messageLength != null ? messageLength : ErrorHelper.Limits.DEFAULT.messageLength()
+        );
+    }
+}
@@ -21,8 +21,13 @@ final class ErrorHelper {
 
     public static JsonObject compile(final Throwable error, @Nullable final List<String> suppress, final boolean handled,
                                      final List<Map.Entry<Pattern, String>> customPatterns) {
+        return compile(error, suppress, handled, customPatterns, Limits.DEFAULT);
+    }
+
+    public static JsonObject compile(final Throwable error, @Nullable final List<String> suppress, final boolean handled,
+                                     final List<Map.Entry<Pattern, String>> customPatterns, final Limits limits) {
         final var report = new JsonObject();
-        final var message = getAnonymizedMessage(error, customPatterns);
+        final var message = getAnonymizedMessage(error, customPatterns, limits);
 
         final var stacktrace = new JsonArray();
         final var header = message != null
@@ -34,10 +39,10 @@ final class ErrorHelper {
         final var stack = collapseStackTrace(elements);
         final var list = new ArrayList<>(stack);
         if (suppress != null) list.removeAll(suppress);
-        final var traces = Math.min(list.size(), STACK_TRACE_LIMIT);
+        final var traces = Math.min(list.size(), limits.stackTraceLimit());
 
         populateTraces(traces, list, elements, stacktrace);
-        appendCauseChain(error.getCause(), stack, suppress, stacktrace, customPatterns);
+        appendCauseChain(error.getCause(), stack, suppress, stacktrace, customPatterns, limits);
 
         report.addProperty("error", error.getClass().getName());
         if (message != null) report.addProperty("message", message);
@@ -50,12 +55,12 @@ final class ErrorHelper {
 
     private static void appendCauseChain(@Nullable Throwable cause, final List<String> parentStack,
                                          @Nullable final List<String> suppress, final JsonArray stacktrace,
-                                         final List<Map.Entry<Pattern, String>> customPatterns) {
+                                         final List<Map.Entry<Pattern, String>> customPatterns, final Limits limits) {
         final var toSuppress = new ArrayList<>(parentStack);
         if (suppress != null) toSuppress.addAll(suppress);
         final var visited = Collections.<Throwable>newSetFromMap(new IdentityHashMap<>());
         while (cause != null && visited.add(cause)) {
-            final var causeMessage = getAnonymizedMessage(cause, customPatterns);
+            final var causeMessage = getAnonymizedMessage(cause, customPatterns, limits);
             final var header = causeMessage != null
                     ? "Caused by: " + cause.getClass().getName() + ": " + causeMessage
                     : "Caused by: " + cause.getClass().getName();
@@ -65,7 +70,7 @@ final class ErrorHelper {
             final var causeStack = collapseStackTrace(causeElements);
             final var causeList = new ArrayList<>(causeStack);
             causeList.removeAll(toSuppress);
-            final var causeTraces = Math.min(causeList.size(), STACK_TRACE_LIMIT);
+            final var causeTraces = Math.min(causeList.size(), limits.stackTraceLimit());
             populateTraces(causeTraces, causeList, causeElements, stacktrace);
 
             cause = cause.getCause();
@@ -193,11 +198,12 @@ final class ErrorHelper {
         return loader == current;
     }
 
-    private static @Nullable String getAnonymizedMessage(final Throwable error, final List<Map.Entry<Pattern, String>> customPatterns) {
+    private static @Nullable String getAnonymizedMessage(final Throwable error, final List<Map.Entry<Pattern, String>> customPatterns,
+                                                         final Limits limits) {
         final var message = error.getMessage();
         if (message == null) return null;
-        var truncated = message.length() > MESSAGE_LENGTH
-                ? message.substring(0, MESSAGE_LENGTH) + "..."
+        var truncated = message.length() > limits.messageLength()
+                ? message.substring(0, limits.messageLength()) + "..."
                 : message;
         for (final var entry : customPatterns) {
             truncated = entry.getKey().matcher(truncated).replaceAll(entry.getValue());
@@ -243,4 +249,19 @@ final class ErrorHelper {
                 .map(Pattern::quote)
                 .map(Pattern::compile);
     }
+
+    /**
+     * The limits applied when compiling error reports.
+     *
+     * @param stackTraceLimit the maximum number of stack lines per exception
+     * @param messageLength   the maximum length of exception messages
+     */
+    record Limits(int stackTraceLimit, int messageLength) {
+        static final Limits DEFAULT = new Limits(STACK_TRACE_LIMIT, MESSAGE_LENGTH);
+
+        Limits {
+            stackTraceLimit = Math.max(0, Math.min(50, stackTraceLimit));
+            messageLength = Math.max(0, Math.min(1000, messageLength));
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package dev.faststats.core;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+final class HttpTransport implements Transport {
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(3))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    @Override
+    public CompletableFuture<Response> send(final Request request) {
+        final var builder = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request.body()))
+                .timeout(Duration.ofSeconds(3))
+                .uri(request.url());
+        request.headers().forEach(builder::header);
+        return httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString(UTF_8)).thenApply(response ->
+                new Response(response.statusCode(), response.headers().map(), response.body()));
+    }
+}
@@ -0,0 +1,21 @@
+package dev.faststats.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+final class LoopbackTransport implements Transport {
+    private final Function<Request, Response> handler;
+
+    LoopbackTransport(final Function<Request, Response> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletableFuture<Response> send(final Request request) {
+        try {
+            return CompletableFuture.completedFuture(handler.apply(request));
+        } catch (final Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package dev.faststats.core;
 
 import dev.faststats.core.data.Metric;
+import dev.faststats.core.data.SourceId;
 import org.jetbrains.annotations.Async;
 import org.jetbrains.annotations.Contract;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -42,6 +44,53 @@ public interface Metrics {
     @Contract(pure = true)
     Config getConfig();
 
+    /**
+     * Registers a metric at runtime, for example for a feature or module that was loaded later.
+     * <p>
+     * The metric will be included starting with the next submission.
+     * If {@link Config#additionalMetrics()} is disabled, the metric will not be submitted.
+     *
+     * @param metric the metric to register
+     * @throws IllegalArgumentException if a metric with the same source id is already registered,
+     *                                  or any of its source ids, including those of a {@link dev.faststats.core.data.MetricGroup metric group},
+     *                                  is already used by another metric or the system or constant data
+     * @see Factory#addMetric(Metric)
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void register(Metric<?> metric) throws IllegalArgumentException;
+
+    /**
+     * Unregisters the metric with the given source id.
+     * <p>
+     * A {@link dev.faststats.core.data.CachedMetric cached metric} is closed once unregistered.
+     *
+     * @param id the source id
+     * @return an optional containing the unregistered metric, or an empty optional if no such metric was registered
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    Optional<Metric<?>> unregister(@SourceId String id);
+
+    /**
+     * Get the registered metric with the given source id.
+     *
+     * @param id the source id
+     * @return an optional containing the metric, or an empty optional if no such metric is registered
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    Optional<Metric<?>> getMetric(@SourceId String id);
+
+    /**
+     * Get a snapshot of all registered metrics.
+     *
+     * @return an unmodifiable view of the registered metrics at the time of the call
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    Collection<Metric<?>> getMetrics();
+
     /**
      * Performs additional post-startup tasks.
      * <p>
@@ -58,6 +107,7 @@ public interface Metrics {
      * Safely shuts down the metrics submission.
      * <p>
      * This method should be called when the application is shutting down.
+     * Registered {@link dev.faststats.core.data.CachedMetric cached metrics} are closed.
      *
      * @since 0.1.0
      */
@@ -77,7 +127,9 @@ public interface Metrics {
          *
          * @param metric the metric to add
          * @return the metrics factory
-         * @throws IllegalArgumentException if the metric is already added
+         * @throws IllegalArgumentException if the metric is already added, or any of its source ids,
+         *                                  including those of a {@link dev.faststats.core.data.MetricGroup metric group},
+         *                                  is already used by another metric or reserved for the system data
          * @since 0.16.0
          */
         @Contract(mutates = "this")
@@ -122,6 +174,37 @@ public interface Metrics {
         @Contract(mutates = "this")
         F debug(boolean enabled);
 
+        /**
+         * Enables or disables delta submission for this metrics instance.
+         * <p>
+         * In delta mode, values that did not change since the last accepted submission are omitted
+         * and carried forward by the metrics server.
+         * Values that are no longer present are submitted as {@code null}.
+         * A full submission is still sent periodically to resynchronize the metrics server.
+         * <p>
+         * This requires a metrics server that supports delta submissions.
+         *
+         * @param enabled whether delta submission is enabled
+         * @return the metrics factory
+         * @since 0.23.0
+         */
+        @Contract(mutates = "this")
+        F deltaSubmission(boolean enabled);
+
+        /**
+         * Enables or disables the compact binary format for this metrics instance.
+         * <p>
+         * The binary format carries the same data as JSON, but encodes numbers as varints and
+         * stores every string only once per submission.
+         * If the metrics server does not support the binary format, JSON is used instead.
+         *
+         * @param enabled whether the binary format is enabled
+         * @return the metrics factory
+         * @since 0.23.0
+         */
+        @Contract(mutates = "this")
+        F binaryFormat(boolean enabled);
+
         /**
          * Sets the token used to authenticate with the metrics server and identify the project.
          * <p>
@@ -147,6 +230,19 @@ public interface Metrics {
         @Contract(mutates = "this")
         F url(URI url);
 
+        /**
+         * Sets the transport used to send submissions to the metrics server.
+         * <p>
+         * By default, submissions are sent using {@link Transport#http()}.
+         *
+         * @param transport the transport
+         * @return the metrics factory
+         * @see Transport#unixDomainSocket(java.nio.file.Path)
+         * @since 0.23.0
+         */
+        @Contract(mutates = "this")
+        F transport(Transport transport);
+
         /**
          * Creates a new metrics instance.
          * <p>
@@ -21,11 +21,92 @@ import java.nio.charset.StandardCharsets;
  * </p>
  */
 final class MurmurHash3 {
-    public static String hash(final JsonObject object) {
+    private MurmurHash3() {
+    }
+
+    static String hash(final JsonObject object) {
         final var hash = MurmurHash3.hash(object.toString());
         return Long.toHexString(hash[0]) + Long.toHexString(hash[1]);
     }
 
+    /**
+     * Computes the lower 64 bits of the 128-bit MurmurHash3 hash of the input bytes, using a seed of {@code 0}.
+     * <p>
+     * Unlike the hash used for error fingerprints, this reads full 64-bit blocks,
+     * so every input byte contributes to the result.
+     * </p>
+     *
+     * @param bytes the input bytes to hash
+     * @return the lower 64 bits of the hash
+     */
+    @Contract(pure = true)
+    static long hash64(final byte[] bytes) {
+        var h1 = 0L;
+        var h2 = 0L;
+        final var c1 = 0x87c37b91114253d5L;
+        final var c2 = 0x4cf5ad432745937fL;
+        final var length = bytes.length;
+        final var blocks = length / 16;
+
+        // Process 128-bit blocks
+        for (var i = 0; i < blocks; i++) {
+            var k1 = getLong(bytes, i * 16);
+            var k2 = getLong(bytes, i * 16 + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Tail
+        final var tail = blocks * 16;
+        final var remaining = length & 15;
+        var k1 = 0L;
+        var k2 = 0L;
+
+        for (var i = remaining - 1; i >= 8; i--) k2 ^= (bytes[tail + i] & 0xffL) << ((i - 8) * 8);
+        if (remaining > 8) {
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+
+        for (var i = Math.min(remaining, 8) - 1; i >= 0; i--) k1 ^= (bytes[tail + i] & 0xffL) << (i * 8);
+        if (remaining > 0) {
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        // Finalization
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        return h1 + h2;
+    }
+
     /**
      * Computes the 128-bit MurmurHash3 hash of the input string.
      * <p>
@@ -167,6 +248,18 @@ final class MurmurHash3 {
         return k;
     }
 
+    /**
+     * Reads a 64-bit little-endian long from the byte array at the specified offset.
+     *
+     * @param bytes  the byte array to read from
+     * @param offset the starting index in the byte array (must have at least 8 bytes from offset)
+     * @return the 64-bit long value read in little-endian order
+     */
+    @Contract(pure = true)
+    private static long getLong(final byte[] bytes, final int offset) {
+        return (getInt(bytes, offset) & 0xffffffffL) | ((long) getInt(bytes, offset + 4) << 32);
+    }
+
     /**
      * Reads a 32-bit little-endian integer from the byte array at the specified offset.
      * <p>
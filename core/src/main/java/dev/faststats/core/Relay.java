@@ -0,0 +1,249 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Relays submissions of backend servers to their proxy over a plugin messaging channel.
+ * <p>
+ * A relay message consists of a version byte, the message type, a hash of the project token and a sequence number,
+ * followed by the gzip compressed submission in the {@link BinaryFormat binary format} for submission messages.
+ * The token itself is never sent, as unhandled plugin messages are forwarded to the players.
+ * <p>
+ * Backend servers first send a {@link #HANDSHAKE handshake} and only relay their submissions
+ * once the proxy confirmed it handles the project, and treat a relayed submission as accepted
+ * once the proxy {@link #ACK acknowledged} its sequence number.
+ * The proxy queues the relayed submissions per backend server and submits them as part of its own submission,
+ * in the {@code servers} section, one entry per relayed submission in the order they were relayed:
+ * <pre>{@code
+ * "servers":[{"identifier":"...","server":"lobby","data":{...},"errors":[...]}]
+ * }</pre>
+ * Relayed submissions are never merged, as the backend server flushes its metrics once the proxy acknowledged them,
+ * so each of them carries data that is not part of any other submission.
+ */
+final class Relay {
+    static final String CHANNEL = "faststats:metrics";
+
+    /**
+     * The maximum size of a plugin message sent by a backend server.
+     */
+    static final int MAX_MESSAGE_SIZE = 32766;
+
+    /**
+     * The message type of a handshake, sent by a backend server before relaying its submissions.
+     */
+    static final byte HANDSHAKE = 1;
+    /**
+     * The message type of a relayed submission.
+     */
+    static final byte SUBMISSION = 2;
+    /**
+     * The message type of an acknowledgement, sent by the proxy in reply to a handshake or relayed submission.
+     */
+    static final byte ACK = 3;
+
+    private static final int MAX_PAYLOAD_SIZE = 1024 * 1024;
+    private static final byte VERSION = 2;
+    private static final int HEADER_SIZE = 2 + Long.BYTES + Long.BYTES;
+
+    private Relay() {
+    }
+
+    /**
+     * Encodes a relay message.
+     *
+     * @param type     the message type
+     * @param token    the project token
+     * @param sequence the sequence number
+     * @param payload  the submission in the binary format, empty for other message types
+     * @return the relay message, or {@code null} if it exceeds the {@link #MAX_MESSAGE_SIZE maximum message size}
+     */
+    @Contract(pure = true)
+    static byte @Nullable [] encode(final byte type, final String token, final long sequence, final byte[] payload) {
+        final var compressed = payload.length > 0 ? Compression.gzip(payload).body() : payload;
+        if (HEADER_SIZE + compressed.length > MAX_MESSAGE_SIZE) return null;
+        return ByteBuffer.allocate(HEADER_SIZE + compressed.length)
+                .put(VERSION)
+                .put(type)
+                .putLong(hash(token))
+                .putLong(sequence)
+                .put(compressed)
+                .array();
+    }
+
+    /**
+     * Checks whether a relay message belongs to the given project.
+     *
+     * @param message the relay message
+     * @param token   the project token
+     * @return whether the message is a supported relay message of the project
+     */
+    @Contract(pure = true)
+    static boolean isFor(final byte[] message, final String token) {
+        return message.length >= HEADER_SIZE && message[0] == VERSION
+               && ByteBuffer.wrap(message).getLong(2) == hash(token);
+    }
+
+    /**
+     * Gets the type of a relay message.
+     *
+     * @param message the relay message
+     * @return the message type
+     */
+    @Contract(pure = true)
+    static byte type(final byte[] message) {
+        return message[1];
+    }
+
+    /**
+     * Gets the sequence number of a relay message.
+     *
+     * @param message the relay message
+     * @return the sequence number
+     */
+    @Contract(pure = true)
+    static long sequence(final byte[] message) {
+        return ByteBuffer.wrap(message).getLong(2 + Long.BYTES);
+    }
+
+    /**
+     * Decodes the submission of a relay message.
+     *
+     * @param message the relay message
+     * @return the submission
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static JsonObject decode(final byte[] message) throws IllegalArgumentException {
+        if (type(message) != SUBMISSION) throw new IllegalArgumentException("Not a submission message");
+        final var input = new ByteArrayInputStream(message, HEADER_SIZE, message.length - HEADER_SIZE);
+        try (final var gzip = new GZIPInputStream(input)) {
+            return BinaryFormat.read(gzip.readNBytes(MAX_PAYLOAD_SIZE));
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Malformed relay message", e);
+        }
+    }
+
+    @Contract(pure = true)
+    private static long hash(final String token) {
+        return MurmurHash3.hash64(token.getBytes(US_ASCII));
+    }
+
+    /**
+     * The relayed submissions of all backend servers, queued per server until the proxy submitted them.
+     */
+    static final class Servers {
+        /**
+         * The maximum number of relayed submissions queued per backend server,
+         * beyond which the oldest submission is dropped, bounding the memory while the proxy cannot submit.
+         */
+        private static final int MAX_QUEUED = 16;
+
+        private final Map<String, Server> servers = new LinkedHashMap<>();
+
+        /**
+         * Queues a relayed submission.
+         *
+         * @param name    the name of the backend server
+         * @param payload the submission
+         * @throws IllegalArgumentException if the submission is malformed
+         */
+        synchronized void receive(final String name, final JsonObject payload) throws IllegalArgumentException {
+            if (!payload.has("identifier") || !payload.has("data")) throw new IllegalArgumentException("Malformed submission");
+            final var identifier = payload.get("identifier").getAsString();
+            final var data = payload.getAsJsonObject("data");
+            final var delta = payload.has("delta") && payload.get("delta").getAsBoolean();
+
+            final var entry = new JsonObject();
+            entry.addProperty("identifier", identifier);
+            entry.addProperty("server", name);
+            if (delta) entry.addProperty("delta", true);
+            entry.add("data", data);
+            final var errors = payload.getAsJsonArray("errors");
+            if (errors != null) {
+                final var frames = payload.getAsJsonArray("frames");
+                final var resolved = new JsonArray(errors.size());
+                errors.forEach(error -> resolved.add(resolveFrames(error.getAsJsonObject(), frames)));
+                entry.add("errors", resolved);
+            }
+
+            final var server = servers.computeIfAbsent(identifier, ignored -> new Server());
+            server.lastSeen = System.currentTimeMillis();
+            server.pending.addLast(entry);
+            if (server.pending.size() > MAX_QUEUED) server.pending.removeFirst();
+        }
+
+        /**
+         * Replaces frame table indices with the frames they refer to,
+         * as the reports of all servers are submitted together.
+         */
+        private static JsonObject resolveFrames(final JsonObject report, @Nullable final JsonArray frames) {
+            if (frames == null || !report.has("stack")) return report;
+            final var stack = new JsonArray();
+            report.getAsJsonArray("stack").forEach(frame -> {
+                stack.add(frame.getAsJsonPrimitive().isNumber() ? frames.get(frame.getAsInt()) : frame);
+            });
+            report.add("stack", stack);
+            return report;
+        }
+
+        @Contract(pure = true)
+        synchronized boolean isEmpty() {
+            return servers.isEmpty();
+        }
+
+        /**
+         * Creates the {@code servers} section from the relayed submissions that were not submitted yet,
+         * dropping servers that did not relay a submission within the timeout.
+         * <p>
+         * The submissions of each server are listed in the order they were relayed,
+         * and must only be submitted in that order, as later submissions may be deltas of earlier ones.
+         *
+         * @param timeout the timeout in milliseconds
+         * @return the servers section
+         */
+        synchronized JsonArray toJson(final long timeout) {
+            final var now = System.currentTimeMillis();
+            servers.values().removeIf(server -> now - server.lastSeen >= timeout);
+
+            final var array = new JsonArray();
+            servers.values().forEach(server -> server.pending.forEach(array::add));
+            return array;
+        }
+
+        /**
+         * Removes the relayed submissions that were part of an accepted submission.
+         *
+         * @param submitted the submitted {@code servers} section
+         */
+        synchronized void accepted(final JsonArray submitted) {
+            submitted.forEach(element -> {
+                final var entry = element.getAsJsonObject();
+                if (!entry.has("server")) return;
+                final var server = servers.get(entry.get("identifier").getAsString());
+                if (server == null || server.pending.isEmpty()) return;
+                // the submissions of a server are submitted in order, so the accepted ones are at the head of its queue
+                if (server.pending.peekFirst().equals(entry)) server.pending.removeFirst();
+                if (server.pending.isEmpty()) servers.remove(entry.get("identifier").getAsString());
+            });
+        }
+    }
+
+    private static final class Server {
+        private final Deque<JsonObject> pending = new ArrayDeque<>();
+        private long lastSeen;
+    }
+}
@@ -0,0 +1,60 @@
+package dev.faststats.core;
+
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Fleet sampling of detailed submission data.
+ * <p>
+ * Only a fraction of all servers submit detailed data, such as error reports and metrics with array or object values,
+ * while every server submits its scalar data along with the sample rate.
+ * Whether a server is selected is decided by a stable hash of its server id,
+ * so the same servers stay selected across restarts,
+ * and raising the rate only ever adds servers to the sample.
+ * <p>
+ * The metrics server can override the configured rate using the {@link #SAMPLE_RATE_HEADER} response header.
+ */
+final class Sampling {
+    static final String SAMPLE_RATE_HEADER = "X-FastStats-Sample-Rate";
+
+    private Sampling() {
+    }
+
+    /**
+     * Checks whether a server is part of the sample.
+     *
+     * @param serverId the server id
+     * @param rate     the sample rate, between {@code 0} and {@code 1}
+     * @return whether the server submits detailed data
+     */
+    @Contract(pure = true)
+    static boolean isSelected(final UUID serverId, final double rate) {
+        if (rate >= 1) return true;
+        if (rate <= 0) return false;
+        final var bytes = ByteBuffer.allocate(16)
+                .putLong(serverId.getMostSignificantBits())
+                .putLong(serverId.getLeastSignificantBits())
+                .array();
+        return (MurmurHash3.hash64(bytes) >>> 11) * 0x1.0p-53 < rate;
+    }
+
+    /**
+     * Parses the sample rate provided by the metrics server.
+     *
+     * @param header the value of the {@link #SAMPLE_RATE_HEADER} response header
+     * @return the sample rate, or {@link Double#NaN} if the header is missing or invalid
+     */
+    @Contract(pure = true)
+    static double parseRate(@Nullable final String header) {
+        if (header == null) return Double.NaN;
+        try {
+            final var rate = Double.parseDouble(header.trim());
+            return rate >= 0 && rate <= 1 ? rate : Double.NaN;
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
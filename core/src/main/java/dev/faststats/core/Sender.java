@@ -0,0 +1,171 @@
+package dev.faststats.core;
+
+import org.jspecify.annotations.Nullable;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sends the requests of a metrics instance to the metrics server.
+ * <p>
+ * The encoding and compression are negotiated with the metrics server,
+ * starting with the most widely supported ones and upgrading once a response advertises support for more compact ones.
+ */
+final class Sender {
+    private static final boolean DICTIONARY_COMPRESSION = Boolean.parseBoolean(System.getProperty("faststats.dictionary-compression", "true"));
+
+    private final SimpleMetrics metrics;
+    private final Tuning tuning;
+    private final URI url;
+    private final Transport transport;
+    private final String userAgent;
+    private final boolean debug;
+
+    private volatile boolean dictionarySupported = false;
+    private volatile boolean binarySupported = true;
+    private volatile boolean frameTableSupported = false;
+
+    Sender(final SimpleMetrics metrics, final Tuning tuning, final URI url, final Transport transport, final String userAgent, final boolean debug) {
+        this.metrics = metrics;
+        this.tuning = tuning;
+        this.url = url;
+        this.transport = transport;
+        this.userAgent = userAgent;
+        this.debug = debug;
+    }
+
+    /**
+     * The url submissions are sent to.
+     *
+     * @return the submission url
+     */
+    URI url() {
+        return url;
+    }
+
+    /**
+     * Whether the metrics server advertised support for error reports referencing a shared frame table.
+     *
+     * @return whether the frame table is supported
+     */
+    boolean isFrameTableSupported() {
+        return frameTableSupported;
+    }
+
+    /**
+     * Encodes, compresses and sends a request to the metrics server,
+     * falling back to a more widely supported encoding if it responds with {@code 415 Unsupported Media Type}.
+     *
+     * @param target  the url to send the request to
+     * @param token   the token authorizing the request, or {@code null} if the body carries the tokens
+     * @param encoder encodes the request body, using the binary format if given {@code true}
+     * @return a future completing with the response
+     */
+    CompletableFuture<Transport.Response> send(final URI target, @Nullable final String token, final Function<Boolean, byte[]> encoder) {
+        final var binary = metrics.isBinaryFormat() && binarySupported;
+        final var bytes = encoder.apply(binary);
+
+        if (debug) metrics.info("Uncompressed data: " + (binary ? BinaryFormat.read(bytes) + " (" + bytes.length + " bytes binary)" : new String(bytes, UTF_8)));
+
+        final var compressed = compress(bytes);
+        metrics.info("Compressed size: " + compressed.body().length + " bytes (" + compressed.encoding() + ")");
+
+        final var headers = new LinkedHashMap<String, String>();
+        headers.put("Content-Type", binary ? BinaryFormat.CONTENT_TYPE : "application/octet-stream");
+        if (token != null) headers.put("Authorization", "Bearer " + token);
+        headers.put("User-Agent", userAgent);
+        if (compressed.encoding() != null) headers.put("Content-Encoding", compressed.encoding());
+        if (compressed.dictionary() != null) headers.put(Compression.DICTIONARY_HEADER, compressed.dictionary());
+
+        final CompletableFuture<Transport.Response> future;
+        try {
+            future = transport.send(new Transport.Request(target, headers, compressed.body()));
+        } catch (final Throwable t) {
+            return CompletableFuture.failedFuture(t);
+        }
+        return future.thenCompose(response -> response.statusCode() == 415 && fallback(binary, compressed)
+                ? send(target, token, encoder)
+                : CompletableFuture.completedFuture(response));
+    }
+
+    /**
+     * Falls back to a more widely supported encoding after the metrics server responded with
+     * {@code 415 Unsupported Media Type}.
+     *
+     * @return whether there is an encoding to fall back to
+     */
+    private boolean fallback(final boolean binary, final Compression.Compressed compressed) {
+        if (binary) {
+            metrics.warn("Metrics server does not support the binary format, falling back to JSON");
+            binarySupported = false;
+            return true;
+        } else if (compressed.dictionary() != null) {
+            metrics.warn("Metrics server rejected " + compressed.encoding() + " compression, falling back to gzip");
+            dictionarySupported = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compresses the payload, using the preset dictionary once the metrics server advertised support for it.
+     */
+    private Compression.Compressed compress(final byte[] bytes) {
+        return dictionarySupported ? Compression.deflate(bytes) : Compression.gzip(bytes);
+    }
+
+    /**
+     * Applies the negotiation headers and directive of a response.
+     *
+     * @param response  the response, or {@code null} if the request failed
+     * @param throwable the failure of the request, or {@code null} if it completed
+     * @return whether the metrics server accepted the request
+     */
+    boolean handleResponse(final Transport.@Nullable Response response, @Nullable final Throwable throwable) {
+        if (throwable != null) {
+            final var cause = SimpleMetrics.unwrap(throwable);
+            if (cause instanceof HttpConnectTimeoutException || cause instanceof TimeoutException) {
+                metrics.error("Metrics submission timed out after 3 seconds: " + url, null);
+            } else if (cause instanceof ConnectException) {
+                metrics.error("Failed to connect to metrics server: " + url, null);
+            } else {
+                metrics.error("Failed to submit metrics", cause);
+            }
+            return false;
+        }
+
+        assert response != null : "Response missing";
+        final var statusCode = response.statusCode();
+        final var body = response.body();
+
+        dictionarySupported = DICTIONARY_COMPRESSION && Compression.isSupported(
+                response.header(Compression.ACCEPT_DICTIONARY_HEADER).orElse(null));
+        frameTableSupported = SimpleErrorTracker.isFrameTableSupported(
+                response.header(SimpleErrorTracker.ACCEPT_ERROR_FORMAT_HEADER).orElse(null));
+
+        if (statusCode >= 200 && statusCode < 300) {
+            // error responses may come from proxies in front of the metrics server that do not provide the rate
+            // or directive, and must not replace the ones the metrics server provided
+            tuning.receiveDirective(body);
+            tuning.receiveSampleRate(response.header(Sampling.SAMPLE_RATE_HEADER).orElse(null));
+            metrics.info("Metrics submitted with status code: " + statusCode + " (" + body + ")");
+            return true;
+        } else if (statusCode >= 300 && statusCode < 400) {
+            metrics.warn("Received redirect response from metrics server: " + statusCode + " (" + body + ")");
+        } else if (statusCode >= 400 && statusCode < 500) {
+            metrics.error("Submitted invalid request to metrics server: " + statusCode + " (" + body + ")", null);
+        } else if (statusCode >= 500 && statusCode < 600) {
+            metrics.error("Received server error response from metrics server: " + statusCode + " (" + body + ")", null);
+        } else {
+            metrics.warn("Received unexpected response from metrics server: " + statusCode + " (" + body + ")");
+        }
+        return false;
+    }
+}
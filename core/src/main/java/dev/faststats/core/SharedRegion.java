@@ -0,0 +1,315 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A memory-mapped region shared by all servers on the same host.
+ * <p>
+ * Every server claims a slot of the region.
+ * For every project, a single server is elected as the leader using a file lock,
+ * while the other servers of the project publish their submission data into their slot
+ * instead of submitting it on their own.
+ * Only {@link #isPublishable(JsonObject) publishable} data, that is a limited number of numbers and booleans,
+ * is published, any other submission is submitted directly by the server itself.
+ * The leader submits the published values together with its own submission, as long as they fit into its payload budget,
+ * and marks them as consumed once they have been accepted.
+ * <p>
+ * A server only publishes again after its previous publication was consumed,
+ * and the leader only marks the publications as consumed that were part of an accepted submission,
+ * so every publication is submitted exactly once.
+ * All shared state is accessed using {@link VarHandle} operations on aligned longs,
+ * each field of a slot only ever being written by either its owner or the leader.
+ */
+final class SharedRegion implements AutoCloseable {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long MAGIC = 0x4653_5245_4749_4f01L;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOTS = 64;
+    private static final int SLOT_SIZE = 2048;
+    private static final int ENTRIES = 32;
+    private static final int ENTRY_SIZE = 48;
+    private static final int MAX_NAME_LENGTH = ENTRY_SIZE - 8 - 2;
+    static final int SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final int OWNER = 0;
+    private static final int HEARTBEAT = 8;
+    private static final int PUBLISHED = 16;
+    private static final int CONSUMED = 24;
+    private static final int SERVER_ID = 32;
+    private static final int TOKEN = 48;
+    private static final int ENTRY_COUNT = 80;
+    private static final int FIRST_ENTRY = 88;
+
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+
+    private final long owner = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final FileChannel channel;
+    private final FileChannel lockChannel;
+    private final MappedByteBuffer buffer;
+    private final byte[] token;
+    private final UUID serverId;
+    private final long timeout;
+    private final int slot;
+
+    private @Nullable FileLock lock = null;
+
+    private SharedRegion(final FileChannel channel, final FileChannel lockChannel, final MappedByteBuffer buffer,
+                         final String token, final UUID serverId, final long timeout) throws IOException {
+        this.channel = channel;
+        this.lockChannel = lockChannel;
+        this.buffer = buffer;
+        this.token = token.getBytes(US_ASCII);
+        this.serverId = serverId;
+        this.timeout = timeout;
+
+        if (!LONGS.compareAndSet(buffer, 0, 0L, MAGIC) && (long) LONGS.getVolatile(buffer, 0) != MAGIC) {
+            throw new IOException("Unsupported shared region format");
+        }
+        this.slot = claim();
+    }
+
+    /**
+     * Opens or creates the shared region.
+     *
+     * @param file     the region file
+     * @param token    the project token
+     * @param serverId the server id
+     * @param timeout  the time after which slots without a heartbeat are considered abandoned, in milliseconds
+     * @return the shared region
+     * @throws IOException if the region could not be opened or all slots are taken
+     */
+    @Contract(value = "_, _, _, _ -> new", mutates = "io")
+    static SharedRegion open(final Path file, final String token, final UUID serverId, final long timeout) throws IOException {
+        final var parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        final var hash = Long.toHexString(MurmurHash3.hash64(token.getBytes(US_ASCII)));
+        final var lockFile = file.resolveSibling(file.getFileName() + "." + hash + ".lock");
+
+        final var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final var lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                return new SharedRegion(channel, lockChannel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE), token, serverId, timeout);
+            } catch (final IOException | RuntimeException e) {
+                lockChannel.close();
+                throw e;
+            }
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private int claim() throws IOException {
+        final var now = System.currentTimeMillis();
+        for (var i = 0; i < SLOTS; i++) {
+            final var base = HEADER_SIZE + i * SLOT_SIZE;
+            final var current = (long) LONGS.getVolatile(buffer, base + OWNER);
+            if (current != 0 && now - (long) LONGS.getAcquire(buffer, base + HEARTBEAT) < timeout) continue;
+            if (!LONGS.compareAndSet(buffer, base + OWNER, current, owner)) continue;
+
+            LONGS.setVolatile(buffer, base + HEARTBEAT, now);
+            LONGS.setVolatile(buffer, base + PUBLISHED, 0L);
+            LONGS.setVolatile(buffer, base + CONSUMED, 0L);
+            LONGS.setVolatile(buffer, base + ENTRY_COUNT, 0L);
+            buffer.putLong(base + SERVER_ID, serverId.getMostSignificantBits());
+            buffer.putLong(base + SERVER_ID + 8, serverId.getLeastSignificantBits());
+            buffer.put(base + TOKEN, token);
+            LONGS.setRelease(buffer, base + HEARTBEAT, now);
+            return base;
+        }
+        throw new IOException("No free slot in shared region");
+    }
+
+    /**
+     * Tries to become the leader of the project, unless this server already is.
+     *
+     * @return whether this server is the leader
+     */
+    synchronized boolean tryLead() {
+        if (lock != null) return true;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (final OverlappingFileLockException | IOException e) {
+            lock = null;
+        }
+        return lock != null;
+    }
+
+    /**
+     * Signals that this server is still alive.
+     */
+    void heartbeat() {
+        LONGS.setRelease(buffer, slot + HEARTBEAT, System.currentTimeMillis());
+    }
+
+    /**
+     * Checks whether the leader consumed the last publication of this server.
+     *
+     * @return whether this server can publish again
+     */
+    @Contract(pure = true)
+    boolean isConsumed() {
+        return (long) LONGS.getAcquire(buffer, slot + CONSUMED) == (long) LONGS.getAcquire(buffer, slot + PUBLISHED);
+    }
+
+    /**
+     * Checks whether the given data can be published as a whole.
+     * <p>
+     * Data is publishable if it consists of at most {@value #ENTRIES} numbers and booleans
+     * with ASCII names of at most {@value #MAX_NAME_LENGTH} characters.
+     *
+     * @param data the submission data
+     * @return whether the data is publishable
+     */
+    @Contract(pure = true)
+    static boolean isPublishable(final JsonObject data) {
+        if (data.size() > ENTRIES) return false;
+        for (final var entry : data.entrySet()) {
+            if (!entry.getValue().isJsonPrimitive() || entry.getValue().getAsJsonPrimitive().isString()) return false;
+            if (entry.getKey().length() > MAX_NAME_LENGTH || !US_ASCII.newEncoder().canEncode(entry.getKey())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the given data for the leader to consume.
+     *
+     * @param data the submission data
+     * @return the number of published values
+     * @throws IllegalArgumentException if the data is not {@link #isPublishable(JsonObject) publishable}
+     * @throws IllegalStateException    if the previous publication was not consumed yet
+     */
+    int publish(final JsonObject data) throws IllegalArgumentException, IllegalStateException {
+        if (!isPublishable(data)) throw new IllegalArgumentException("Data is not publishable");
+        if (!isConsumed()) throw new IllegalStateException("Previous publication not consumed yet");
+
+        var count = 0;
+        for (final var entry : data.entrySet()) {
+            final var name = entry.getKey().getBytes(US_ASCII);
+            final var base = slot + FIRST_ENTRY + count++ * ENTRY_SIZE;
+            final var primitive = entry.getValue().getAsJsonPrimitive();
+            buffer.put(base + 1, (byte) name.length);
+            buffer.put(base + 2, name);
+            if (primitive.isBoolean()) {
+                buffer.put(base, BOOLEAN);
+                LONGS.setVolatile(buffer, base + ENTRY_SIZE - 8, primitive.getAsBoolean() ? 1L : 0L);
+                continue;
+            }
+            final var number = primitive.getAsNumber();
+            final var integral = number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+            buffer.put(base, integral ? LONG : DOUBLE);
+            LONGS.setVolatile(buffer, base + ENTRY_SIZE - 8, integral ? number.longValue() : Double.doubleToRawLongBits(number.doubleValue()));
+        }
+
+        LONGS.setRelease(buffer, slot + ENTRY_COUNT, (long) count);
+        LONGS.getAndAddRelease(buffer, slot + PUBLISHED, 1L);
+        heartbeat();
+        return count;
+    }
+
+    /**
+     * Collects the unconsumed publications of the other servers of the project.
+     *
+     * @return the collected publications
+     */
+    @Contract(pure = true)
+    List<Publication> collect() {
+        final var now = System.currentTimeMillis();
+        final var publications = new ArrayList<Publication>();
+        final var name = new byte[token.length];
+        for (var i = 0; i < SLOTS; i++) {
+            final var base = HEADER_SIZE + i * SLOT_SIZE;
+            if (base == slot || (long) LONGS.getVolatile(buffer, base + OWNER) == 0) continue;
+            if (now - (long) LONGS.getAcquire(buffer, base + HEARTBEAT) >= timeout) continue;
+
+            final var published = (long) LONGS.getAcquire(buffer, base + PUBLISHED);
+            if (published == (long) LONGS.getAcquire(buffer, base + CONSUMED)) continue;
+
+            buffer.get(base + TOKEN, name);
+            if (!Arrays.equals(name, token)) continue;
+
+            final var data = new JsonObject();
+            final var count = (int) (long) LONGS.getAcquire(buffer, base + ENTRY_COUNT);
+            for (var entry = 0; entry < Math.min(count, ENTRIES); entry++) {
+                final var offset = base + FIRST_ENTRY + entry * ENTRY_SIZE;
+                final var key = new byte[Math.min(buffer.get(offset + 1) & 0xFF, MAX_NAME_LENGTH)];
+                buffer.get(offset + 2, key);
+                final var value = (long) LONGS.getVolatile(buffer, offset + ENTRY_SIZE - 8);
+                final var type = buffer.get(offset);
+                if (type == LONG) data.addProperty(new String(key, US_ASCII), value);
+                else if (type == BOOLEAN) data.addProperty(new String(key, US_ASCII), value != 0);
+                else data.addProperty(new String(key, US_ASCII), Double.longBitsToDouble(value));
+            }
+
+            final var serverId = new UUID(buffer.getLong(base + SERVER_ID), buffer.getLong(base + SERVER_ID + 8));
+            publications.add(new Publication(base, published, serverId, data));
+        }
+        return publications;
+    }
+
+    /**
+     * Marks the given publications as consumed.
+     *
+     * @param publications the publications that were accepted by the metrics server
+     */
+    void consume(final List<Publication> publications) {
+        publications.forEach(publication -> LONGS.setRelease(buffer, publication.slot() + CONSUMED, publication.sequence()));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        LONGS.compareAndSet(buffer, slot + OWNER, owner, 0L);
+        try (channel; lockChannel) {
+            if (lock != null) lock.release();
+        }
+    }
+
+    /**
+     * The published values of another server.
+     *
+     * @param slot     the slot offset
+     * @param sequence the publication sequence
+     * @param serverId the server id
+     * @param data     the published values
+     */
+    record Publication(int slot, long sequence, UUID serverId, JsonObject data) {
+        /**
+         * Converts the publication into an entry of the {@code servers} section of the leader's submission.
+         *
+         * @return the server entry
+         */
+        @Contract(value = " -> new", pure = true)
+        JsonObject toJson() {
+            final var server = new JsonObject();
+            server.addProperty("identifier", serverId.toString());
+            server.add("data", data);
+            return server;
+        }
+    }
+}
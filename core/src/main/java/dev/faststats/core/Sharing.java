@@ -0,0 +1,395 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Shares the submissions of a metrics instance with other metrics instances,
+ * so one of them submits on behalf of the others.
+ * <p>
+ * Servers on the same host share a {@link SharedRegion memory-mapped region},
+ * plugins on the same server {@link Coalescer coalesce} their submissions into a batch,
+ * and backend servers {@link Relay relay} their submissions to the proxy.
+ */
+final class Sharing {
+    private static final int SERVERS_OVERHEAD = ",\"servers\":[]".length();
+
+    private final SimpleMetrics metrics;
+    private final Tuning tuning;
+    private final Sender sender;
+
+    private final Object sharedRegionLock = new Object();
+    private volatile @Nullable SharedRegion sharedRegion = null;
+    private volatile boolean sharedRegionOpened = false;
+    private volatile List<SharedRegion.Publication> publications = List.of();
+
+    private volatile @Nullable Coalescer coalescer = null;
+    private volatile boolean batchSupported = true;
+    private volatile boolean coalescingStopped = false;
+
+    private final Relay.Servers relayed = new Relay.Servers();
+    private final AtomicLong relaySequence = new AtomicLong();
+    private final AtomicReference<@Nullable PendingRelay> pendingRelay = new AtomicReference<>();
+    private volatile boolean relayConfirmed = false;
+
+    Sharing(final SimpleMetrics metrics, final Tuning tuning, final Sender sender) {
+        this.metrics = metrics;
+        this.tuning = tuning;
+        this.sender = sender;
+    }
+
+    /**
+     * Submits the submission data, sharing it with the other metrics instances if enabled.
+     *
+     * @return a future completing with whether the submission was accepted
+     */
+    CompletableFuture<Boolean> submitAsync() {
+        final var region = sharedRegion();
+        if (region != null && !region.tryLead()) return publishAsync(region);
+        if (metrics.canRelay() && isRelayConfirmed()) return relayAsync();
+        final var coalescing = metrics.isCoalescing() && batchSupported && !coalescingStopped;
+        final var leader = coalescing ? coalescer() : null;
+        if (coalescing && leader == null) return offerAsync();
+        return metrics.createDataAsync().thenApply(json -> {
+            if (region != null) appendPublications(json, region);
+            if (!relayed.isEmpty()) appendRelayed(json);
+            return json;
+        }).thenCompose(json -> leader != null ? submitBatch(json, leader) : metrics.submitNow(json));
+    }
+
+    /**
+     * Completes the sharing part of a submission that was accepted by the metrics server.
+     *
+     * @param json the accepted submission data
+     */
+    void accepted(final JsonObject json) {
+        if (!json.has("servers")) return;
+        final var region = sharedRegion;
+        if (region != null) region.consume(publications);
+        relayed.accepted(json.getAsJsonArray("servers"));
+    }
+
+    /**
+     * Publishes the submission data to the shared region instead of submitting it,
+     * for the leader to submit it on behalf of this server.
+     * <p>
+     * Metrics are flushed once their data was published,
+     * as the leader submits every publication exactly once.
+     */
+    private CompletableFuture<Boolean> publishAsync(final SharedRegion region) {
+        region.heartbeat();
+        if (!region.isConsumed()) {
+            metrics.info("Waiting for the leader to consume the published metrics");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        metrics.resetAcceptedData();
+        return metrics.createDataAsync().thenCompose(json -> {
+            final var data = json.getAsJsonObject("data");
+            if (json.has("errors") || json.has("truncated") || !SharedRegion.isPublishable(data)) {
+                metrics.info("Metrics cannot be published to the shared region, submitting directly");
+                return metrics.submitNow(json);
+            }
+            final var count = region.publish(data);
+            metrics.info("Published " + count + " values to the shared region");
+            metrics.submittedMetrics().forEach(metrics::flushMetric);
+            return CompletableFuture.completedFuture(true);
+        }).exceptionally(throwable -> {
+            metrics.error("Failed to publish metrics", SimpleMetrics.unwrap(throwable));
+            return false;
+        });
+    }
+
+    /**
+     * Appends the values published by the other servers of the project to the submission of the leader,
+     * as long as they fit into the remaining payload budget.
+     * <p>
+     * Publications that do not fit remain unconsumed and are submitted with a later submission.
+     */
+    private void appendPublications(final JsonObject json, final SharedRegion region) {
+        region.heartbeat();
+        final var collected = region.collect();
+        final var servers = new JsonArray(collected.size());
+        final var appended = new ArrayList<SharedRegion.Publication>(collected.size());
+        var remaining = getRemainingBudget(json);
+        for (final var publication : collected) {
+            final var server = publication.toJson();
+            final var size = metrics.measure(server) + 1;
+            if (size > remaining) continue;
+            remaining -= size;
+            servers.add(server);
+            appended.add(publication);
+        }
+        publications = appended;
+        if (appended.size() < collected.size()) {
+            metrics.warn("Payload budget exceeded, deferred " + (collected.size() - appended.size()) + " published servers");
+        }
+        if (!servers.isEmpty()) json.add("servers", servers);
+    }
+
+    /**
+     * Computes how many bytes can still be added to the {@code servers} section of the submission
+     * without exceeding the payload budget.
+     */
+    private long getRemainingBudget(final JsonObject json) {
+        final var overhead = json.has("servers") ? 0 : SERVERS_OVERHEAD;
+        return tuning.payloadBudget() - metrics.encode(json, false).length - overhead;
+    }
+
+    private @Nullable SharedRegion sharedRegion() {
+        if (sharedRegionOpened) return sharedRegion;
+        synchronized (sharedRegionLock) {
+            if (sharedRegionOpened) return sharedRegion;
+            final var file = metrics.getSharedRegion();
+            if (file != null) try {
+                sharedRegion = SharedRegion.open(file, metrics.getToken(), metrics.getConfig().serverId(), tuning.staleTimeout());
+            } catch (final IOException | RuntimeException e) {
+                metrics.error("Failed to open shared region, submitting independently: " + file, e);
+            }
+            sharedRegionOpened = true;
+            return sharedRegion;
+        }
+    }
+
+    /**
+     * Closes the shared region, leaving it to the other servers.
+     */
+    void closeSharedRegion() {
+        synchronized (sharedRegionLock) {
+            final var region = sharedRegion;
+            if (region == null) return;
+            try {
+                region.close();
+            } catch (final IOException e) {
+                metrics.error("Failed to close shared region", e);
+            }
+            sharedRegion = null;
+        }
+    }
+
+    private @Nullable Coalescer coalescer() {
+        final var current = coalescer;
+        if (current != null) return current;
+        return coalescer = Coalescer.lead(sender.url(), metrics.getSegments().host());
+    }
+
+    /**
+     * Stops coalescing submissions, handing the lead to another plugin.
+     */
+    void stopCoalescing() {
+        coalescingStopped = true;
+        final var leader = coalescer;
+        if (leader != null) leader.close();
+        coalescer = null;
+    }
+
+    /**
+     * Hands the submission data to the leading plugin, which submits it as part of its next batch.
+     * <p>
+     * The data is submitted directly if there is no leader taking it.
+     */
+    private CompletableFuture<Boolean> offerAsync() {
+        return metrics.createDataAsync().thenCompose(json -> {
+            final var offered = Coalescer.offer(sender.url(), metrics.getToken(), metrics.getSegments().host(), metrics.encode(json, true), accepted -> {
+                if (accepted) metrics.acceptSubmission(json);
+            });
+            if (!offered) return metrics.submitNow(json);
+            metrics.info("Handed metrics to the leading plugin for batch submission");
+            return CompletableFuture.completedFuture(true);
+        });
+    }
+
+    /**
+     * Submits the submission data together with the data offered by other plugins as a single batch.
+     * <p>
+     * The batch is kept within the {@link SimpleMetrics#getPayloadBudget() payload budget},
+     * offers that do not fit are kept for the next batch and the own data is submitted directly if it does not fit.
+     * If the metrics server does not support batches, coalescing is disabled and the data is submitted directly.
+     */
+    private CompletableFuture<Boolean> submitBatch(final JsonObject json, final Coalescer leader) {
+        final var offers = leader.drain();
+        if (offers.isEmpty()) return metrics.submitNow(json);
+
+        final var host = metrics.getSegments().host();
+        var remaining = tuning.payloadBudget() - Coalescer.OVERHEAD - host.getBytes(UTF_8).length;
+        final var batched = new ArrayList<Coalescer.Offer>(offers.size());
+        for (final var offer : offers) {
+            final var size = Coalescer.size(offer.token(), offer.payload());
+            // the first offer is always taken, as it was kept within the budget of the plugin offering it
+            if (!batched.isEmpty() && size > remaining) {
+                leader.requeue(offer);
+                continue;
+            }
+            remaining -= size;
+            batched.add(offer);
+        }
+        if (batched.size() < offers.size()) {
+            metrics.warn("Payload budget exceeded, deferred " + (offers.size() - batched.size()) + " offered submissions");
+        }
+
+        final var own = metrics.encode(json, true);
+        final var included = Coalescer.size(metrics.getToken(), own) <= remaining;
+        final var submissions = new ArrayList<Map.Entry<String, byte[]>>(batched.size() + 1);
+        if (included) submissions.add(Map.entry(metrics.getToken(), own));
+        batched.forEach(offer -> submissions.add(Map.entry(offer.token(), offer.payload())));
+        final var batch = Coalescer.batch(host, submissions);
+
+        final var batchUrl = sender.url().resolve("batch");
+        metrics.info("Sending batch of " + submissions.size() + " submissions to: " + batchUrl);
+        // the binary format interns strings per payload, so the spliced batch has to be decoded once to re-encode it
+        return sender.send(batchUrl, null, binary -> binary ? BinaryFormat.write(JsonParser.parseString(new String(batch, UTF_8)).getAsJsonObject()) : batch)
+                .handle((response, throwable) -> {
+                    if (throwable == null && response.statusCode() == 404) {
+                        metrics.warn("Metrics server does not support batches, submitting independently");
+                        batchSupported = false;
+                        leader.close();
+                        coalescer = null;
+                        batched.forEach(offer -> offer.complete(false));
+                        return metrics.submitNow(json);
+                    }
+                    final var accepted = sender.handleResponse(response, throwable);
+                    batched.forEach(offer -> offer.complete(accepted));
+                    if (!included) return metrics.submitNow(json);
+                    if (accepted) metrics.acceptSubmission(json);
+                    return CompletableFuture.completedFuture(accepted);
+                }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Checks whether the proxy confirmed the relay channel, sending a handshake if it did not.
+     * <p>
+     * A relayed submission the proxy did not acknowledge until the next submission is given up on,
+     * along with the relay channel, so its data is submitted directly instead.
+     */
+    private boolean isRelayConfirmed() {
+        if (pendingRelay.getAndSet(null) != null) {
+            metrics.warn("The proxy did not acknowledge the relayed metrics, submitting directly");
+            relayConfirmed = false;
+        }
+        if (relayConfirmed) return true;
+        final var handshake = Relay.encode(Relay.HANDSHAKE, metrics.getToken(), 0, new byte[0]);
+        if (handshake != null) metrics.relay(handshake);
+        return false;
+    }
+
+    /**
+     * Relays the submission data to the proxy, falling back to submitting it directly if it cannot be relayed.
+     * <p>
+     * The proxy keeps the relayed data, so the submission is treated as accepted once the proxy acknowledged it.
+     */
+    private CompletableFuture<Boolean> relayAsync() {
+        return metrics.createDataAsync().thenCompose(json -> {
+            final var sequence = relaySequence.incrementAndGet();
+            final var message = Relay.encode(Relay.SUBMISSION, metrics.getToken(), sequence, metrics.encodeBinary(json));
+            if (message == null) {
+                metrics.warn("Metrics exceed the plugin message size, submitting directly");
+                return metrics.submitNow(json);
+            }
+            final var pending = new PendingRelay(sequence, json);
+            pendingRelay.set(pending);
+            if (!metrics.relay(message)) {
+                pendingRelay.compareAndSet(pending, null);
+                return metrics.submitNow(json);
+            }
+            metrics.info("Relayed metrics to the proxy (" + message.length + " bytes)");
+            return CompletableFuture.completedFuture(true);
+        }).exceptionally(throwable -> {
+            metrics.error("Failed to relay metrics", SimpleMetrics.unwrap(throwable));
+            return false;
+        });
+    }
+
+    /**
+     * Appends the submissions relayed by backend servers to the submission of the proxy,
+     * as long as they fit into the remaining payload budget.
+     */
+    private void appendRelayed(final JsonObject json) {
+        final var servers = json.has("servers") ? json.getAsJsonArray("servers") : new JsonArray();
+        final var relayedServers = relayed.toJson(tuning.staleTimeout());
+        final var deferredServers = new HashSet<String>();
+        var remaining = getRemainingBudget(json);
+        var deferred = 0;
+        for (final var server : relayedServers) {
+            final var identifier = server.getAsJsonObject().get("identifier").getAsString();
+            final var size = metrics.measure(server) + 1;
+            // later submissions of a server may be deltas of a deferred one, so they are deferred as well
+            if (deferredServers.contains(identifier) || size > remaining) {
+                deferredServers.add(identifier);
+                deferred++;
+                continue;
+            }
+            remaining -= size;
+            servers.add(server);
+        }
+        if (deferred > 0) metrics.warn("Payload budget exceeded, deferred " + deferred + " relayed submissions");
+        if (!servers.isEmpty()) json.add("servers", servers);
+    }
+
+    /**
+     * Receives a relay message a backend server sent over the {@link Relay#CHANNEL relay channel}.
+     *
+     * @param server  the name of the backend server
+     * @param message the relay message
+     * @param reply   sends a relay message back to the backend server
+     * @return whether the message belongs to this project
+     * @see SimpleMetrics#receiveRelayed(String, byte[], Consumer)
+     */
+    boolean receiveRelayed(final String server, final byte[] message, final Consumer<byte[]> reply) {
+        if (!Relay.isFor(message, metrics.getToken())) return false;
+        try {
+            final var type = Relay.type(message);
+            if (type == Relay.SUBMISSION) {
+                relayed.receive(server, Relay.decode(message));
+                metrics.info("Received relayed metrics from server: " + server);
+            } else if (type != Relay.HANDSHAKE) return true;
+            reply.accept(Objects.requireNonNull(Relay.encode(Relay.ACK, metrics.getToken(), Relay.sequence(message), new byte[0])));
+        } catch (final RuntimeException e) {
+            metrics.error("Received malformed relay message from server: " + server, e);
+        }
+        return true;
+    }
+
+    /**
+     * Receives a relay message the proxy sent over the {@link Relay#CHANNEL relay channel} in reply to a message of this server.
+     *
+     * @param message the relay message
+     * @return whether the message belongs to this project
+     * @see SimpleMetrics#receiveRelayAck(byte[])
+     */
+    boolean receiveRelayAck(final byte[] message) {
+        if (!Relay.isFor(message, metrics.getToken()) || Relay.type(message) != Relay.ACK) return false;
+        final var sequence = Relay.sequence(message);
+        if (sequence == 0) {
+            if (!relayConfirmed) metrics.info("The proxy confirmed the relay channel");
+            relayConfirmed = true;
+            return true;
+        }
+        final var pending = pendingRelay.get();
+        if (pending == null || pending.sequence() != sequence || !pendingRelay.compareAndSet(pending, null)) return true;
+        metrics.info("The proxy acknowledged the relayed metrics");
+        metrics.acceptSubmission(pending.json());
+        return true;
+    }
+
+    /**
+     * A relayed submission awaiting the acknowledgement of the proxy.
+     */
+    private record PendingRelay(long sequence, JsonObject json) {
+    }
+}
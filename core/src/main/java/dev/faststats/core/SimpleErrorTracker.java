@@ -2,9 +2,11 @@ package dev.faststats.core;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import org.jspecify.annotations.Nullable;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -15,12 +17,20 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 final class SimpleErrorTracker implements ErrorTracker {
+    /**
+     * The response header used by the metrics server to advertise the error formats it supports.
+     */
+    static final String ACCEPT_ERROR_FORMAT_HEADER = "X-FastStats-Accept-Error-Format";
+    static final String FRAME_TABLE_FORMAT = "frames";
+
     private final Map<String, Integer> collected = new ConcurrentHashMap<>();
     private final Map<String, JsonObject> reports = new ConcurrentHashMap<>();
+    private final Map<String, String> frames = new ConcurrentHashMap<>();
 
     private final Map<Class<? extends Throwable>, Set<Pattern>> ignoredTypedPatterns = new ConcurrentHashMap<>();
     private final Set<Class<? extends Throwable>> ignoredTypes = new CopyOnWriteArraySet<>();
@@ -33,6 +43,8 @@ final class SimpleErrorTracker implements ErrorTracker {
             Map.entry(ErrorHelper.jdbcUrlPattern(), "$1[password hidden]$2")
     ));
 
+    private volatile ErrorHelper.Limits limits = ErrorHelper.Limits.DEFAULT;
+    private volatile @Nullable Consumer<JsonObject> reportListener = null;
     private volatile @Nullable BiConsumer<@Nullable ClassLoader, Throwable> errorEvent = null;
     private volatile @Nullable UncaughtExceptionHandler originalHandler = null;
 
@@ -59,16 +71,32 @@ final class SimpleErrorTracker implements ErrorTracker {
     public void trackError(final Throwable error, final boolean handled) {
         try {
             if (isIgnored(error, Collections.newSetFromMap(new IdentityHashMap<>()))) return;
-            final var compiled = ErrorHelper.compile(error, null, handled, anonymizationEntries);
+            final var compiled = ErrorHelper.compile(error, null, handled, anonymizationEntries, limits);
             final var hashed = MurmurHash3.hash(compiled);
             if (collected.compute(hashed, (k, v) -> {
                 return v == null ? 1 : v + 1;
             }) > 1) return;
+            internFrames(compiled);
             reports.put(hashed, compiled);
+            final var listener = reportListener;
+            if (listener != null) listener.accept(compiled);
         } catch (final NoClassDefFoundError ignored) {
         }
     }
 
+    /**
+     * Replaces the stack lines of the report with interned instances,
+     * so related reports share the memory of their common frames.
+     */
+    private void internFrames(final JsonObject report) {
+        final var stack = report.getAsJsonArray("stack");
+        for (var i = 0; i < stack.size(); i++) {
+            final var line = stack.get(i).getAsString();
+            final var interned = frames.putIfAbsent(line, line);
+            if (interned != null) stack.set(i, new JsonPrimitive(interned));
+        }
+    }
+
     private boolean isIgnored(@Nullable final Throwable error, final Set<Throwable> visited) {
         if (error == null || !visited.add(error)) return false;
 
@@ -108,6 +136,24 @@ final class SimpleErrorTracker implements ErrorTracker {
         return this;
     }
 
+    /**
+     * Sets the limits applied to errors tracked from now on.
+     *
+     * @param limits the limits
+     */
+    void setLimits(final ErrorHelper.Limits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Sets the listener notified about every report with a new fingerprint.
+     *
+     * @param listener the listener, or {@code null} to remove it
+     */
+    void setReportListener(@Nullable final Consumer<JsonObject> listener) {
+        this.reportListener = listener;
+    }
+
     public JsonArray getData(final String buildId) {
         final var report = new JsonArray(reports.size());
 
@@ -133,9 +179,55 @@ final class SimpleErrorTracker implements ErrorTracker {
         return report;
     }
 
-    public void clear() {
-        collected.replaceAll((k, v) -> 0);
-        reports.clear();
+    /**
+     * Replaces the stack lines of the given reports with their index in a payload-level frame table.
+     *
+     * @param reports    the reports, as returned by {@link #getData(String)}
+     * @param frameTable the frame table to add the stack lines to
+     */
+    static void indexFrames(final JsonArray reports, final Map<String, Integer> frameTable) {
+        reports.forEach(element -> {
+            final var report = element.getAsJsonObject();
+            final var stack = report.getAsJsonArray("stack");
+            if (stack == null) return;
+            final var indices = new JsonArray(stack.size());
+            stack.forEach(line -> indices.add(frameTable.computeIfAbsent(line.getAsString(), k -> frameTable.size())));
+            report.add("stack", indices);
+        });
+    }
+
+    /**
+     * Checks whether the metrics server supports the frame table error format.
+     *
+     * @param header the value of the {@link #ACCEPT_ERROR_FORMAT_HEADER} response header
+     * @return whether the frame table format is supported
+     */
+    static boolean isFrameTableSupported(@Nullable final String header) {
+        if (header == null) return false;
+        for (final var format : header.split(",")) {
+            if (format.trim().equals(FRAME_TABLE_FORMAT)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clears the given reports after they were submitted, other reports are kept for the next submission.
+     *
+     * @param hashes the hashes of the submitted reports
+     */
+    public void clear(final Collection<String> hashes) {
+        hashes.forEach(hash -> {
+            collected.computeIfPresent(hash, (k, v) -> 0);
+            reports.remove(hash);
+        });
+        if (reports.isEmpty()) frames.clear();
+    }
+
+    /**
+     * Discards all reports, as servers outside the sample never submit them.
+     */
+    void clear() {
+        clear(List.copyOf(reports.keySet()));
     }
 
     public boolean needsFlushing() {
@@ -1,7 +1,14 @@
 package dev.faststats.core;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import dev.faststats.core.data.CachedMetric;
 import dev.faststats.core.data.Metric;
+import dev.faststats.core.data.MetricGroup;
+import dev.faststats.core.data.SourceId;
 import org.jetbrains.annotations.Async;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.MustBeInvokedByOverriders;
@@ -11,43 +18,75 @@ import org.jspecify.annotations.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.net.ConnectException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpConnectTimeoutException;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiPredicate;
-import java.util.zip.GZIPOutputStream;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public abstract class SimpleMetrics implements Metrics {
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(3))
-            .version(HttpClient.Version.HTTP_1_1)
-            .build();
     private @Nullable ScheduledExecutorService executor = null;
 
-    private final Set<Metric<?>> metrics;
+    /**
+     * The plugin messaging channel backend servers relay their submissions to the proxy over.
+     */
+    protected static final String RELAY_CHANNEL = Relay.CHANNEL;
+
+    private static final String ERROR_FLUSH_FILE = "error-flush";
+    private static final long TRUNCATED_OVERHEAD = entrySize("truncated", "{\"metrics\":[],\"errors\":}".length() + 10);
+    private static final int MAX_DEFERRALS = 3;
+
+    private final Object registryLock = new Object();
+    private volatile Map<String, Metric<?>> metrics = Map.of();
     private final Config config;
     private final @Token String token;
     private final @Nullable ErrorTracker tracker;
     private final @Nullable Runnable flush;
-    private final URI url;
     private final boolean debug;
+    private final boolean deltaSubmission;
+    private final boolean binaryFormat;
+
+    private final Map<String, Long> acceptedHashes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> deferrals = new ConcurrentHashMap<>();
+    private final Map<JsonElement, byte[]> encodings = Collections.synchronizedMap(new IdentityHashMap<>());
+    private volatile @Nullable Segments segments = null;
+    private volatile long lastFullSubmission = 0;
+    private final AtomicBoolean errorFlushPending = new AtomicBoolean();
+    private final Object submissionLock = new Object();
+    private int submissionsPending = 0;
+    private boolean errorFlushDeferred = false;
+    private CompletableFuture<Boolean> errorFlush = CompletableFuture.completedFuture(false);
+    private volatile long lastErrorFlush = 0;
+
+    private @Nullable Path folder = null;
+    private final Tuning tuning = new Tuning(this);
+    private final Sender sender;
+    private final Sharing sharing;
 
     private final String SDK_NAME;
     private final String SDK_VERSION;
@@ -70,17 +109,37 @@ public abstract class SimpleMetrics implements Metrics {
         if (factory.token == null) throw new IllegalStateException("Token must be specified");
 
         this.config = config;
-        this.metrics = config.additionalMetrics ? Set.copyOf(factory.metrics) : Set.of();
+        factory.metrics.forEach(this::register);
         this.debug = factory.debug || Boolean.getBoolean("faststats.debug") || config.debug();
         this.token = factory.token;
         this.tracker = config.errorTracking ? factory.tracker : null;
         this.flush = factory.flush;
-        this.url = factory.url;
+        this.sender = new Sender(this, tuning, factory.url, factory.transport, getUserAgent(), debug);
+        this.sharing = new Sharing(this, tuning, sender);
+        this.deltaSubmission = factory.deltaSubmission;
+        this.binaryFormat = factory.binaryFormat;
+        listenForReports();
     }
 
     @Contract(mutates = "io")
     protected SimpleMetrics(final Factory<?, ?> factory, final Path config) throws IllegalStateException {
         this(factory, Config.read(config));
+        this.folder = config.toAbsolutePath().getParent();
+        tuning.restore();
+        this.lastErrorFlush = readLastErrorFlush();
+    }
+
+    @VisibleForTesting
+    protected SimpleMetrics(
+            final Config config,
+            final Set<Metric<?>> metrics,
+            @Token final String token,
+            @Nullable final ErrorTracker tracker,
+            @Nullable final Runnable flush,
+            final URI url,
+            final boolean debug
+    ) {
+        this(config, metrics, token, tracker, flush, url, Transport.http(), debug);
     }
 
     @VisibleForTesting
@@ -91,19 +150,41 @@ public abstract class SimpleMetrics implements Metrics {
             @Nullable final ErrorTracker tracker,
             @Nullable final Runnable flush,
             final URI url,
+            final Transport transport,
             final boolean debug
     ) {
         if (!token.matches(Token.PATTERN)) {
             throw new IllegalArgumentException("Invalid token '" + token + "', must match '" + Token.PATTERN + "'");
         }
 
-        this.metrics = config.additionalMetrics ? Set.copyOf(metrics) : Set.of();
+        metrics.forEach(this::register);
         this.config = config;
         this.debug = debug;
         this.token = token;
         this.tracker = tracker;
         this.flush = flush;
-        this.url = url;
+        this.sender = new Sender(this, tuning, url, transport, getUserAgent(), debug);
+        this.sharing = new Sharing(this, tuning, sender);
+        this.deltaSubmission = false;
+        this.binaryFormat = false;
+        listenForReports();
+    }
+
+    private String getUserAgent() {
+        return "FastStats Metrics " + SDK_NAME + "/" + SDK_VERSION;
+    }
+
+    private void listenForReports() {
+        getErrorTracker().map(SimpleErrorTracker.class::cast).ifPresent(tracker -> tracker.setReportListener(this::onNewReport));
+    }
+
+    /**
+     * Called for every error report with a new fingerprint.
+     */
+    private void onNewReport(final JsonObject report) {
+        final var handled = report.has("handled") && report.get("handled").getAsBoolean();
+        tuning.reported(handled);
+        if (!handled) scheduleErrorFlush();
     }
 
     protected String getOnboardingMessage() {
@@ -125,13 +206,228 @@ public abstract class SimpleMetrics implements Metrics {
         return TimeUnit.MINUTES.toMillis(30);
     }
 
+    /**
+     * The time to wait for asynchronous metrics before submitting without them.
+     *
+     * @return the metric timeout in milliseconds
+     */
+    protected long getMetricTimeout() {
+        return TimeUnit.SECONDS.toMillis(Long.getLong("faststats.metric-timeout", 10));
+    }
+
+    /**
+     * Whether values that did not change since the last accepted submission are omitted.
+     *
+     * @return whether delta submission is enabled
+     * @see Metrics.Factory#deltaSubmission(boolean)
+     */
+    protected boolean isDeltaSubmission() {
+        return deltaSubmission;
+    }
+
+    /**
+     * Whether the submission data is encoded using the compact binary format instead of JSON.
+     * <p>
+     * If the metrics server does not support the binary format, JSON is used regardless.
+     *
+     * @return whether the binary format is enabled
+     * @see Metrics.Factory#binaryFormat(boolean)
+     */
+    protected boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
+    /**
+     * The maximum size of a submission before compression.
+     * <p>
+     * Metrics and error reports exceeding the budget are deferred to the next submission.
+     *
+     * @return the payload budget in bytes
+     */
+    protected long getPayloadBudget() {
+        return Long.getLong("faststats.payload-budget", 256 * 1024);
+    }
+
+    /**
+     * Whether the submission period adapts to the activity of the server,
+     * set using the {@code faststats.adaptive-period} system property.
+     * <p>
+     * The period is stretched up to the {@link #getMaxPeriod() maximum period} while nothing changes,
+     * and shortened down to the {@link #getMinPeriod() minimum period}
+     * when new unhandled errors occur or metrics change significantly.
+     *
+     * @return whether the submission period is adaptive
+     */
+    protected boolean isAdaptivePeriod() {
+        return Boolean.getBoolean("faststats.adaptive-period");
+    }
+
+    /**
+     * The minimum submission period while the {@link #isAdaptivePeriod() period is adaptive}.
+     *
+     * @return the minimum period in milliseconds
+     */
+    protected long getMinPeriod() {
+        return TimeUnit.MINUTES.toMillis(Long.getLong("faststats.min-period", 5));
+    }
+
+    /**
+     * The maximum submission period while the {@link #isAdaptivePeriod() period is adaptive}.
+     *
+     * @return the maximum period in milliseconds
+     */
+    protected long getMaxPeriod() {
+        return TimeUnit.MINUTES.toMillis(Long.getLong("faststats.max-period", 120));
+    }
+
+    /**
+     * Whether unhandled errors with a new fingerprint are submitted right away instead of with the next submission,
+     * set using the {@code faststats.error-flush} system property.
+     * <p>
+     * Such errors often precede the server dying, which would lose them.
+     * They are submitted after the {@link #getErrorFlushDelay() delay}, coalescing bursts of errors into one submission,
+     * and at most once per {@link #getErrorFlushInterval() interval}.
+     *
+     * @return whether unhandled errors are flushed immediately
+     */
+    protected boolean isErrorFlushing() {
+        return Boolean.parseBoolean(System.getProperty("faststats.error-flush", "true"));
+    }
+
+    /**
+     * The time to wait for further errors before flushing unhandled errors.
+     *
+     * @return the error flush delay in milliseconds
+     * @see #isErrorFlushing()
+     */
+    protected long getErrorFlushDelay() {
+        return TimeUnit.SECONDS.toMillis(Long.getLong("faststats.error-flush-delay", 5));
+    }
+
+    /**
+     * The minimum time between two error flushes, which also applies across restarts.
+     *
+     * @return the error flush interval in milliseconds
+     * @see #isErrorFlushing()
+     */
+    protected long getErrorFlushInterval() {
+        return TimeUnit.MINUTES.toMillis(Long.getLong("faststats.error-flush-interval", 5));
+    }
+
+    /**
+     * The fraction of servers submitting detailed data, set using the {@code faststats.sample-rate} system property.
+     * <p>
+     * Servers that are not part of the sample omit error reports and metrics with array or object values,
+     * discarding the omitted metric data.
+     * A sample rate provided by the metrics server takes precedence.
+     *
+     * @return the sample rate, between {@code 0} and {@code 1}
+     */
+    protected double getSampleRate() {
+        final var rate = Sampling.parseRate(System.getProperty("faststats.sample-rate"));
+        return Double.isNaN(rate) ? 1 : rate;
+    }
+
+    /**
+     * The maximum time between two full submissions while delta submission is enabled.
+     *
+     * @return the full submission period in milliseconds
+     */
+    protected long getFullSubmissionPeriod() {
+        return TimeUnit.HOURS.toMillis(Long.getLong("faststats.full-submission-period", 6));
+    }
+
+    /**
+     * The memory-mapped region shared with the other servers on the same host,
+     * set using the {@code faststats.shared-region} system property.
+     * <p>
+     * Relative paths are resolved against the faststats folder,
+     * servers with separate faststats folders need to use an absolute path.
+     *
+     * @return the region file, or {@code null} to submit independently of other servers
+     */
+    protected @Nullable Path getSharedRegion() {
+        final var region = System.getProperty("faststats.shared-region");
+        if (region == null) return null;
+        return folder != null ? folder.resolve(region) : Path.of(region);
+    }
+
+    /**
+     * Whether the submissions of all plugins on the same server are coalesced into a single batch request,
+     * set using the {@code faststats.coalesce-submissions} system property.
+     *
+     * @return whether submissions are coalesced
+     */
+    protected boolean isCoalescing() {
+        return Boolean.getBoolean("faststats.coalesce-submissions");
+    }
+
+    /**
+     * Whether backend servers relay their submissions to the proxy, which submits them on their behalf,
+     * set using the {@code faststats.network-mode} system property on the proxy and the backend servers.
+     *
+     * @return whether network mode is enabled
+     */
+    protected boolean isNetworkMode() {
+        return Boolean.getBoolean("faststats.network-mode");
+    }
+
+    /**
+     * Whether the next submission can be relayed to the proxy instead of being submitted.
+     *
+     * @return whether the submission can be relayed
+     * @see #relay(byte[])
+     */
+    protected boolean canRelay() {
+        return false;
+    }
+
+    /**
+     * Sends a relay message to the proxy over the {@link #RELAY_CHANNEL}.
+     *
+     * @param message the relay message
+     * @return whether the message was sent
+     * @see #canRelay()
+     */
+    protected boolean relay(final byte[] message) {
+        return false;
+    }
+
+    /**
+     * Receives a relay message a backend server sent over the {@link #RELAY_CHANNEL}.
+     * <p>
+     * Handshakes and relayed submissions are acknowledged using the given reply channel,
+     * and the relayed submission is submitted as part of the next submission of this proxy.
+     *
+     * @param server  the name of the backend server
+     * @param message the relay message
+     * @param reply   sends a relay message back to the backend server
+     * @return whether the message belongs to this project
+     */
+    protected boolean receiveRelayed(final String server, final byte[] message, final Consumer<byte[]> reply) {
+        return sharing.receiveRelayed(server, message, reply);
+    }
+
+    /**
+     * Receives a relay message the proxy sent over the {@link #RELAY_CHANNEL} in reply to a message of this server.
+     * <p>
+     * An acknowledged handshake enables relaying,
+     * an acknowledged submission is treated as accepted.
+     *
+     * @param message the relay message
+     * @return whether the message belongs to this project
+     */
+    protected boolean receiveRelayAck(final byte[] message) {
+        return sharing.receiveRelayAck(message);
+    }
+
     @Async.Schedule
     @MustBeInvokedByOverriders
     protected void startSubmitting() {
-        startSubmitting(getInitialDelay(), getPeriod(), TimeUnit.MILLISECONDS);
+        startSubmitting(getInitialDelay());
     }
 
-    private void startSubmitting(final long initialDelay, final long period, final TimeUnit unit) {
+    private void startSubmitting(final long initialDelay) {
         if (Boolean.getBoolean("faststats.first-run")) {
             info("Skipping metrics submission due to first-run flag");
             return;
@@ -163,6 +459,9 @@ public abstract class SimpleMetrics implements Metrics {
             return;
         }
 
+        // the constant data is appended on the calling thread, which platforms may require to query server state
+        getSegments();
+
         this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
             final var thread = new Thread(runnable, "metrics-submitter");
             thread.setDaemon(true);
@@ -170,7 +469,22 @@ public abstract class SimpleMetrics implements Metrics {
         });
 
         info("Starting metrics submission");
-        executor.scheduleAtFixedRate(this::submit, Math.max(0, initialDelay), Math.max(1000, period), unit);
+        scheduleSubmission(initialDelay);
+    }
+
+    /**
+     * Schedules the next submission, which schedules the one after it once completed,
+     * so changes of the submission period apply right away.
+     */
+    private void scheduleSubmission(final long delay) {
+        final var executor = this.executor;
+        if (executor == null || executor.isShutdown()) return;
+        try {
+            executor.schedule(() -> submitAsync().whenComplete((ignored, throwable) -> {
+                scheduleSubmission(tuning.nextPeriod());
+            }), Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException ignored) {
+        }
     }
 
     protected boolean isSubmitting() {
@@ -178,87 +492,434 @@ public abstract class SimpleMetrics implements Metrics {
     }
 
     public boolean submit() {
+        return submitAsync().join();
+    }
+
+    /**
+     * Submits the data once an error flush in flight completed,
+     * as the submission would otherwise contain the same error reports.
+     * Error flushes are deferred until the submission completed for the same reason.
+     */
+    private CompletableFuture<Boolean> submitAsync() {
+        final CompletableFuture<Boolean> flush;
+        synchronized (submissionLock) {
+            submissionsPending++;
+            flush = errorFlush;
+        }
+        return flush.handle((ignored, throwable) -> null).thenCompose(ignored -> submitDataAsync()).whenComplete((accepted, throwable) -> {
+            final boolean deferred;
+            synchronized (submissionLock) {
+                deferred = --submissionsPending == 0 && errorFlushDeferred;
+                if (deferred) errorFlushDeferred = false;
+            }
+            if (deferred) scheduleErrorFlush();
+        });
+    }
+
+    private CompletableFuture<Boolean> submitDataAsync() {
         try {
-            return submitNow();
+            return sharing.submitAsync().exceptionally(throwable -> {
+                error("Failed to submit metrics", unwrap(throwable));
+                return false;
+            });
         } catch (final Throwable t) {
             error("Failed to submit metrics", t);
-            return false;
-        }
-    }
-
-    private boolean submitNow() throws IOException {
-        final var data = createData().toString();
-        final var bytes = data.getBytes(UTF_8);
-
-        info("Uncompressed data: " + data);
-
-        try (final var byteOutput = new ByteArrayOutputStream();
-             final var output = new GZIPOutputStream(byteOutput)) {
-
-            output.write(bytes);
-            output.finish();
-
-            final var compressed = byteOutput.toByteArray();
-            info("Compressed size: " + compressed.length + " bytes");
-
-            final var request = HttpRequest.newBuilder()
-                    .POST(HttpRequest.BodyPublishers.ofByteArray(compressed))
-                    .header("Content-Encoding", "gzip")
-                    .header("Content-Type", "application/octet-stream")
-                    .header("Authorization", "Bearer " + getToken())
-                    .header("User-Agent", "FastStats Metrics " + SDK_NAME + "/" + SDK_VERSION)
-                    .timeout(Duration.ofSeconds(3))
-                    .uri(url)
-                    .build();
-
-            info("Sending metrics to: " + url);
-            try {
-                final var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(UTF_8));
-                final var statusCode = response.statusCode();
-                final var body = response.body();
-
-                if (statusCode >= 200 && statusCode < 300) {
-                    info("Metrics submitted with status code: " + statusCode + " (" + body + ")");
-                    getErrorTracker().map(SimpleErrorTracker.class::cast).ifPresent(SimpleErrorTracker::clear);
-                    if (flush != null) flush.run();
-                    return true;
-                } else if (statusCode >= 300 && statusCode < 400) {
-                    warn("Received redirect response from metrics server: " + statusCode + " (" + body + ")");
-                } else if (statusCode >= 400 && statusCode < 500) {
-                    error("Submitted invalid request to metrics server: " + statusCode + " (" + body + ")", null);
-                } else if (statusCode >= 500 && statusCode < 600) {
-                    error("Received server error response from metrics server: " + statusCode + " (" + body + ")", null);
-                } else {
-                    warn("Received unexpected response from metrics server: " + statusCode + " (" + body + ")");
-                }
-            } catch (final HttpConnectTimeoutException t) {
-                error("Metrics submission timed out after 3 seconds: " + url, null);
-            } catch (final ConnectException t) {
-                error("Failed to connect to metrics server: " + url, null);
-            } catch (final Throwable t) {
-                error("Failed to submit metrics", t);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Schedules a flush of the unhandled errors, unless one is already pending.
+     */
+    private void scheduleErrorFlush() {
+        final var executor = this.executor;
+        if (!isErrorFlushing() || executor == null || executor.isShutdown()) return;
+        if (!Sampling.isSelected(config.serverId(), tuning.sampleRate())) return;
+        if (!errorFlushPending.compareAndSet(false, true)) return;
+        final var delay = Math.max(getErrorFlushDelay(), lastErrorFlush + getErrorFlushInterval() - System.currentTimeMillis());
+        try {
+            executor.schedule(this::flushErrors, delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            errorFlushPending.set(false);
+        }
+    }
+
+    /**
+     * Submits the pending unhandled errors without any metric data.
+     * <p>
+     * The submission is marked as {@code "errors_only"} and as a delta submission with empty data,
+     * so the metric data known to the metrics server is kept.
+     * The flush is deferred while a submission is in flight, as it may contain the same error reports.
+     */
+    private CompletableFuture<Boolean> flushErrors() {
+        errorFlushPending.set(false);
+        final var flush = new CompletableFuture<Boolean>();
+        synchronized (submissionLock) {
+            if (submissionsPending > 0) {
+                errorFlushDeferred = true;
+                return CompletableFuture.completedFuture(false);
+            }
+            errorFlush = flush;
+        }
+        final var future = flushErrorsNow();
+        future.whenComplete((flushed, throwable) -> flush.complete(flushed != null && flushed));
+        return future;
+    }
+
+    private CompletableFuture<Boolean> flushErrorsNow() {
+        try {
+            final var json = new JsonObject();
+            json.addProperty("delta", true);
+            json.add("data", new JsonObject());
+            json.addProperty("errors_only", true);
+            final var remaining = tuning.payloadBudget() - encode(json, false).length;
+            appendErrors(json, remaining, report -> report.has("handled") && !report.get("handled").getAsBoolean());
+            if (!json.has("errors")) return CompletableFuture.completedFuture(false);
+
+            writeLastErrorFlush();
+            info("Flushing " + json.getAsJsonArray("errors").size() + " unhandled errors");
+            return submitNow(json).exceptionally(throwable -> {
+                error("Failed to flush errors", unwrap(throwable));
+                return false;
+            });
+        } catch (final Throwable t) {
+            error("Failed to flush errors", t);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * The file recording the time of the last error flush of this project, so the interval applies across restarts.
+     */
+    private @Nullable Path getErrorFlushFile() {
+        return getProjectFile(ERROR_FLUSH_FILE);
+    }
+
+    /**
+     * Resolves a file of this project, keyed by the hash of the token,
+     * as the folder is shared by all plugins on the server.
+     *
+     * @return the file, or {@code null} if there is no folder to keep files in
+     */
+    @Nullable Path getProjectFile(final String name) {
+        final var folder = this.folder;
+        return folder != null ? folder.resolve(name + "." + Long.toHexString(MurmurHash3.hash64(getToken().getBytes(UTF_8)))) : null;
+    }
+
+    private long readLastErrorFlush() {
+        final var file = getErrorFlushFile();
+        if (file == null || !Files.isRegularFile(file)) return 0;
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    private void writeLastErrorFlush() {
+        lastErrorFlush = System.currentTimeMillis();
+        final var file = getErrorFlushFile();
+        if (file != null) try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[0]);
+        } catch (final IOException e) {
+            error("Failed to record error flush", e);
+        }
+    }
+
+    CompletableFuture<Boolean> submitNow(final JsonObject json) {
+        info("Sending metrics to: " + sender.url());
+        return sender.send(sender.url(), getToken(), binary -> binary ? encodeBinary(json) : encode(json, false)).handle((response, throwable) -> {
+            final var accepted = sender.handleResponse(response, throwable);
+            if (accepted) acceptSubmission(json);
+            return accepted;
+        });
+    }
+
+    /**
+     * Completes a submission that was accepted by the metrics server.
+     */
+    void acceptSubmission(final JsonObject json) {
+        getErrorTracker().map(SimpleErrorTracker.class::cast).ifPresent(tracker -> tracker.clear(getSubmittedErrors(json)));
+        if (json.has("errors_only")) return;
+        acceptData(json);
+        sharing.accepted(json);
+        final var truncated = getTruncatedMetrics(json);
+        submittedMetrics().stream()
+                .filter(metric -> Collections.disjoint(truncated, getFieldIds(metric)))
+                .forEach(this::flushMetric);
+        if (flush != null) flush.run();
+    }
+
+    /**
+     * Forgets the data accepted by the metrics server, so the next submission is a full submission.
+     */
+    void resetAcceptedData() {
+        acceptedHashes.clear();
+    }
+
+    private void acceptData(final JsonObject json) {
+        if (!isDeltaSubmission()) return;
+        final var delta = json.has("delta") && json.get("delta").getAsBoolean();
+        if (!delta) {
+            acceptedHashes.clear();
+            lastFullSubmission = System.currentTimeMillis();
+        }
+        json.getAsJsonObject("data").entrySet().forEach(entry -> {
+            if (entry.getValue().isJsonNull()) acceptedHashes.remove(entry.getKey());
+            else acceptedHashes.put(entry.getKey(), hash(entry.getValue()));
+        });
+    }
+
+    private static Set<String> getSubmittedErrors(final JsonObject json) {
+        final var errors = json.getAsJsonArray("errors");
+        if (errors == null) return Set.of();
+        final var hashes = new HashSet<String>(errors.size());
+        errors.forEach(error -> hashes.add(error.getAsJsonObject().get("hash").getAsString()));
+        return hashes;
+    }
+
+    private static Set<String> getTruncatedMetrics(final JsonObject json) {
+        final var truncated = json.getAsJsonObject("truncated");
+        if (truncated == null) return Set.of();
+        final var ids = new HashSet<String>();
+        truncated.getAsJsonArray("metrics").forEach(id -> ids.add(id.getAsString()));
+        return ids;
+    }
+
+    private boolean isDeltaDue() {
+        return isDeltaSubmission() && !acceptedHashes.isEmpty()
+               && System.currentTimeMillis() - lastFullSubmission < getFullSubmissionPeriod();
+    }
+
+    private void removeUnchanged(final JsonObject fields) {
+        fields.entrySet().removeIf(entry -> {
+            final var hash = acceptedHashes.get(entry.getKey());
+            return hash != null && hash == hash(entry.getValue());
+        });
+    }
+
+    private static void removeDetailed(final JsonObject fields) {
+        fields.entrySet().removeIf(entry -> !entry.getValue().isJsonPrimitive());
+    }
+
+    private long hash(final JsonElement element) {
+        return MurmurHash3.hash64(encoding(element));
+    }
+
+    static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * Encodes the submission data, splicing in the pre-encoded identifier and constant data.
+     * <p>
+     * The constant data is omitted from delta submissions, as it never changes,
+     * and the {@link BatchFormat#HOST_FIELDS host fields} are omitted from submissions that are part of a batch.
+     */
+    byte[] encode(final JsonObject json, final boolean batched) {
+        final var segments = getSegments();
+        final var delta = json.has("delta") && json.get("delta").getAsBoolean();
+        final var output = new ByteArrayOutputStream(1024);
+
+        output.writeBytes(segments.identifier());
+        for (final var entry : json.entrySet()) {
+            output.write(',');
+            output.writeBytes(new JsonPrimitive(entry.getKey()).toString().getBytes(UTF_8));
+            output.write(':');
+            if (!entry.getKey().equals("data")) {
+                writeEncoded(output, entry.getValue());
+                continue;
+            }
+            final var constants = delta ? new byte[0] : batched ? segments.hostless() : segments.constants();
+            output.write('{');
+            output.writeBytes(constants);
+            var first = constants.length == 0;
+            for (final var field : entry.getValue().getAsJsonObject().entrySet()) {
+                if (!first) output.write(',');
+                first = false;
+                output.writeBytes(new JsonPrimitive(field.getKey()).toString().getBytes(UTF_8));
+                output.write(':');
+                writeEncoded(output, field.getValue());
+            }
+            output.write('}');
+        }
+        output.write('}');
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes the JSON encoding of an element, reusing the encoding measured while assembling the submission data.
+     */
+    private void writeEncoded(final ByteArrayOutputStream output, final JsonElement element) {
+        final var encoded = encodings.get(element);
+        if (encoded != null) {
+            output.writeBytes(encoded);
+        } else if (element instanceof final JsonArray array) {
+            output.write('[');
+            for (var i = 0; i < array.size(); i++) {
+                if (i > 0) output.write(',');
+                writeEncoded(output, array.get(i));
             }
-            return false;
+            output.write(']');
+        } else {
+            output.writeBytes(element.toString().getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * Measures the JSON encoding of an element, keeping the encoding to reuse it when encoding the submission.
+     * <p>
+     * The element must not be modified afterward.
+     *
+     * @return the size of the encoding in bytes
+     */
+    long measure(final JsonElement element) {
+        return encoding(element).length;
+    }
+
+    private byte[] encoding(final JsonElement element) {
+        return encodings.computeIfAbsent(element, ignored -> element.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * Computes the size of an object entry, including its separator.
+     */
+    private static long entrySize(final String key, final long valueSize) {
+        return 1 + new JsonPrimitive(key).toString().getBytes(UTF_8).length + 1 + valueSize;
+    }
+
+    /**
+     * Encodes the submission data using the {@link BinaryFormat binary format},
+     * continuing from the pre-encoded identifier and constant data.
+     */
+    byte[] encodeBinary(final JsonObject json) {
+        final var segments = getSegments();
+        final var delta = json.has("delta") && json.get("delta").getAsBoolean();
+        final var writer = (delta ? segments.binaryDelta() : segments.binaryFull()).copy();
+
+        writer.entries(json.getAsJsonObject("data"));
+        writer.endObject();
+        json.entrySet().forEach(entry -> {
+            if (entry.getKey().equals("data")) return;
+            writer.key(entry.getKey());
+            writer.value(entry.getValue());
+        });
+        writer.endObject();
+
+        return writer.toByteArray();
+    }
+
+    Segments getSegments() {
+        final var cached = segments;
+        if (cached != null) return cached;
+
+        final var constants = new JsonObject();
+        constants.addProperty("core_count", Runtime.getRuntime().availableProcessors());
+        constants.addProperty("java_vendor", System.getProperty("java.vendor"));
+        constants.addProperty("java_version", System.getProperty("java.version"));
+        constants.addProperty("os_arch", System.getProperty("os.arch"));
+        constants.addProperty("os_name", System.getProperty("os.name"));
+        constants.addProperty("os_version", System.getProperty("os.version"));
+
+        var complete = true;
+        try {
+            appendConstantData(constants);
+        } catch (final Throwable t) {
+            complete = false;
+            error("Failed to append constant data", t);
+            getErrorTracker().ifPresent(tracker -> tracker.trackError(t));
         }
+
+        final var serverId = new JsonPrimitive(config.serverId().toString());
+        final var identifier = "{\"identifier\":" + serverId;
+        final var encoded = constants.toString();
+        final var hostless = constants.deepCopy();
+        final var host = BatchFormat.hoist(List.of(hostless)).toString();
+        final var encodedHostless = hostless.toString();
+
+        final var binaryDelta = new BinaryFormat.Writer();
+        binaryDelta.startObject();
+        binaryDelta.key("identifier");
+        binaryDelta.value(serverId);
+        binaryDelta.key("data");
+        binaryDelta.startObject();
+        final var binaryFull = binaryDelta.copy();
+        binaryFull.entries(constants);
+
+        return segments = new Segments(
+                identifier.getBytes(UTF_8),
+                constants,
+                encoded.substring(1, encoded.length() - 1).getBytes(UTF_8),
+                host,
+                encodedHostless.substring(1, encodedHostless.length() - 1).getBytes(UTF_8),
+                binaryFull,
+                binaryDelta,
+                complete
+        );
     }
 
-    private final String javaVendor = System.getProperty("java.vendor");
-    private final String javaVersion = System.getProperty("java.version");
-    private final String osArch = System.getProperty("os.arch");
-    private final String osName = System.getProperty("os.name");
-    private final String osVersion = System.getProperty("os.version");
-    private final int coreCount = Runtime.getRuntime().availableProcessors();
+    /**
+     * The pre-encoded parts of every submission.
+     * The constant data must not be mutated,
+     * and the binary writers are prefixes that must only be used through {@link BinaryFormat.Writer#copy()}.
+     * Incomplete segments, where appending the constant data failed, are rebuilt for the next submission.
+     */
+    record Segments(
+            byte[] identifier,
+            JsonObject constantData,
+            byte[] constants,
+            String host,
+            byte[] hostless,
+            BinaryFormat.Writer binaryFull,
+            BinaryFormat.Writer binaryDelta,
+            boolean complete
+    ) {
+    }
 
+    /**
+     * Creates the complete submission data, including the identifier and the system and constant data.
+     *
+     * @return the submission data
+     * @see #createDataAsync()
+     */
     protected JsonObject createData() {
+        final var json = createDataAsync().join();
+        final var delta = json.has("delta") && json.get("delta").getAsBoolean();
+        final var segments = getSegments();
+
         final var data = new JsonObject();
-        final var metrics = new JsonObject();
+        data.addProperty("identifier", config.serverId().toString());
+        json.entrySet().forEach(entry -> {
+            if (delta || !entry.getKey().equals("data")) {
+                data.add(entry.getKey(), entry.getValue());
+                return;
+            }
+            final var metrics = segments.constantData().deepCopy();
+            entry.getValue().getAsJsonObject().entrySet().forEach(field -> metrics.add(field.getKey(), field.getValue()));
+            data.add("data", metrics);
+        });
+        return data;
+    }
+
+    /**
+     * Creates the submission data.
+     * <p>
+     * The data of all metrics is requested at once,
+     * and the returned future completes once every metric completed or timed out.
+     * <p>
+     * Unlike {@link #createData()}, the identifier and the system and {@link #appendConstantData(JsonObject) constant data}
+     * are not part of the returned data, they are encoded once and spliced into every submission.
+     *
+     * @return a future completing with the submission data
+     * @see #getMetricTimeout()
+     */
+    protected CompletableFuture<JsonObject> createDataAsync() {
+        final var cached = segments;
+        if (cached != null && !cached.complete()) segments = null;
 
-        metrics.addProperty("core_count", coreCount);
-        metrics.addProperty("java_vendor", javaVendor);
-        metrics.addProperty("java_version", javaVersion);
-        metrics.addProperty("os_arch", osArch);
-        metrics.addProperty("os_name", osName);
-        metrics.addProperty("os_version", osVersion);
+        final var metrics = new JsonObject();
 
         try {
             appendDefaultData(metrics);
@@ -267,25 +928,269 @@ public abstract class SimpleMetrics implements Metrics {
             getErrorTracker().ifPresent(tracker -> tracker.trackError(t));
         }
 
-        this.metrics.forEach(metric -> {
-            try {
-                metric.getData().ifPresent(element -> metrics.add(metric.getId(), element));
-            } catch (final Throwable t) {
-                error("Failed to build metric data: " + metric.getId(), t);
-                getErrorTracker().ifPresent(tracker -> tracker.trackError(t));
+        final var submitted = submittedMetrics();
+        final var pending = new ArrayList<Map.Entry<Metric<?>, CompletableFuture<Optional<JsonElement>>>>(submitted.size());
+        submitted.forEach(metric -> pending.add(Map.entry(metric, getData(metric))));
+
+        return CompletableFuture.allOf(pending.stream().map(Map.Entry::getValue).toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> assembleData(metrics, pending));
+    }
+
+    /**
+     * Assembles the submission data within the {@link #getPayloadBudget() payload budget}.
+     * <p>
+     * The default data is always included, followed by the metrics in registration order
+     * and the error reports ordered by their count.
+     * Metrics and error reports that do not fit are deferred to the next submission and recorded as truncated.
+     * A metric that was deferred {@value #MAX_DEFERRALS} times in a row is dropped instead,
+     * so a metric that never fits does not accumulate its data forever.
+     * <p>
+     * Servers that are not part of the {@link #getSampleRate() sample} only include scalar data
+     * and discard their error reports.
+     */
+    private JsonObject assembleData(final JsonObject metrics, final List<Map.Entry<Metric<?>, CompletableFuture<Optional<JsonElement>>>> pending) {
+        encodings.clear();
+        final var data = new JsonObject();
+        final var delta = isDeltaDue();
+        final var sampleRate = tuning.sampleRate();
+        final var sampled = Sampling.isSelected(config.serverId(), sampleRate);
+        if (!sampled) removeDetailed(metrics);
+        final var present = new HashSet<>(metrics.keySet());
+        tuning.observe(metrics);
+        if (delta) removeUnchanged(metrics);
+
+        final var segments = getSegments();
+        if (metrics.keySet().removeIf(segments.constantData()::has)) {
+            warn("Default data collides with the constant data, skipping the colliding fields");
+        }
+        var remaining = tuning.payloadBudget() - segments.identifier().length - entrySize("data", 2) - 1
+                        - (delta ? entrySize("delta", 4) : segments.constants().length) - TRUNCATED_OVERHEAD;
+        if (sampleRate < 1) remaining -= entrySize("sample_rate", new JsonPrimitive(sampleRate).toString().length());
+        for (final var entry : metrics.entrySet()) remaining -= entrySize(entry.getKey(), measure(entry.getValue()));
+
+        final var truncated = new JsonArray();
+        for (final var entry : pending) {
+            final var element = entry.getValue().join().orElse(null);
+            if (element == null) continue;
+
+            final var fields = new JsonObject();
+            if (entry.getKey() instanceof MetricGroup<?> && element instanceof final JsonObject group) {
+                group.entrySet().forEach(field -> fields.add(field.getKey(), field.getValue()));
+            } else fields.add(entry.getKey().getId(), element);
+            if (fields.keySet().removeIf(segments.constantData()::has)) {
+                warn("Metric collides with the constant data, skipping the colliding fields: " + entry.getKey().getId());
             }
-        });
 
-        data.addProperty("identifier", config.serverId().toString());
-        data.add("data", metrics);
+            if (!sampled) removeDetailed(fields);
+            present.addAll(fields.keySet());
+            tuning.observe(fields);
+            if (delta) removeUnchanged(fields);
+            if (fields.size() == 0) continue;
+
+            var size = 0L;
+            for (final var field : fields.entrySet()) size += entrySize(field.getKey(), measure(field.getValue()));
+            final var id = entry.getKey().getId();
+            if (size > remaining) {
+                if (deferrals.merge(id, 1, Integer::sum) >= MAX_DEFERRALS) {
+                    deferrals.remove(id);
+                    warn("Metric exceeded the payload budget " + MAX_DEFERRALS + " times in a row, dropping its data: " + id);
+                    continue;
+                }
+                // the fields are recorded, as the metrics server never receives the id of a metric group
+                for (final var field : fields.keySet()) {
+                    truncated.add(field);
+                    remaining -= encodedSize(new JsonPrimitive(field)) + 1;
+                }
+                continue;
+            }
+            deferrals.remove(id);
+            remaining -= size;
+            fields.entrySet().forEach(field -> metrics.add(field.getKey(), field.getValue()));
+        }
 
-        getErrorTracker().map(SimpleErrorTracker.class::cast)
-                .map(tracker -> tracker.getData(BUILD_ID))
-                .filter(errors -> !errors.isEmpty())
-                .ifPresent(errors -> data.add("errors", errors));
+        if (delta) {
+            acceptedHashes.keySet().forEach(id -> {
+                if (!present.contains(id)) metrics.add(id, JsonNull.INSTANCE);
+            });
+            data.addProperty("delta", true);
+        }
+        data.add("data", metrics);
+        if (sampleRate < 1) data.addProperty("sample_rate", sampleRate);
+
+        if (!sampled) getErrorTracker().map(SimpleErrorTracker.class::cast).ifPresent(SimpleErrorTracker::clear);
+        final var deferred = sampled ? appendErrors(data, remaining, report -> true) : 0;
+        if (!truncated.isEmpty() || deferred > 0) {
+            warn("Payload budget exceeded, deferred " + truncated.size() + " metrics and " + deferred + " errors");
+            final var record = new JsonObject();
+            record.add("metrics", truncated);
+            record.addProperty("errors", deferred);
+            data.add("truncated", record);
+        }
         return data;
     }
 
+    /**
+     * Appends the error reports, most frequent first, as long as they fit into the remaining budget.
+     * <p>
+     * The budget accounts for the frame table, if supported, including the frames each report adds to it.
+     *
+     * @return the number of deferred error reports
+     */
+    private int appendErrors(final JsonObject data, long remaining, final Predicate<JsonObject> filter) {
+        final var tracker = getErrorTracker().map(SimpleErrorTracker.class::cast).orElse(null);
+        if (tracker == null) return 0;
+
+        final var reports = new ArrayList<JsonObject>();
+        tracker.getData(BUILD_ID).forEach(report -> {
+            if (filter.test(report.getAsJsonObject())) reports.add(report.getAsJsonObject());
+        });
+        reports.sort(Comparator.comparingInt(SimpleMetrics::getCount).reversed());
+
+        final var frames = sender.isFrameTableSupported() ? new LinkedHashMap<String, Integer>() : null;
+        final var table = new JsonArray();
+        remaining -= entrySize("errors", 2) + (frames != null ? entrySize("frames", 2) : 0);
+
+        final var errors = new JsonArray(reports.size());
+        var deferred = 0;
+        for (final var report : reports) {
+            var size = 0L;
+            final var known = table.size();
+            if (frames != null && report.has("stack")) {
+                final var stack = report.getAsJsonArray("stack").deepCopy();
+                final var single = new JsonArray(1);
+                single.add(report);
+                SimpleErrorTracker.indexFrames(single, frames);
+                // new frames are indexed in stack order, following the frames of the previous reports
+                for (final var frame : stack) {
+                    if (frames.get(frame.getAsString()) != table.size()) continue;
+                    size += measure(frame) + 1;
+                    table.add(frame);
+                }
+            }
+            size += measure(report) + 1;
+            if (size > remaining) {
+                deferred++;
+                if (frames != null) {
+                    frames.values().removeIf(index -> index >= known);
+                    while (table.size() > known) table.remove(table.size() - 1);
+                }
+                continue;
+            }
+            remaining -= size;
+            errors.add(report);
+        }
+        if (errors.isEmpty()) return deferred;
+
+        data.add("errors", errors);
+        if (frames != null) data.add("frames", table);
+        return deferred;
+    }
+
+    private static int getCount(final JsonObject report) {
+        return report.has("count") ? report.get("count").getAsInt() : 1;
+    }
+
+    private static long encodedSize(final JsonElement element) {
+        return element.toString().getBytes(UTF_8).length;
+    }
+
+    private CompletableFuture<Optional<JsonElement>> getData(final Metric<?> metric) {
+        try {
+            return metric.getDataAsync().copy()
+                    .orTimeout(getMetricTimeout(), TimeUnit.MILLISECONDS)
+                    .exceptionally(throwable -> {
+                        final var cause = unwrap(throwable);
+                        if (cause instanceof TimeoutException) {
+                            warn("Timed out building metric data: " + metric.getId());
+                        } else {
+                            error("Failed to build metric data: " + metric.getId(), cause);
+                            getErrorTracker().ifPresent(tracker -> tracker.trackError(cause));
+                        }
+                        return Optional.empty();
+                    });
+        } catch (final Throwable t) {
+            error("Failed to build metric data: " + metric.getId(), t);
+            getErrorTracker().ifPresent(tracker -> tracker.trackError(t));
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    void flushMetric(final Metric<?> metric) {
+        try {
+            metric.onFlush();
+        } catch (final Throwable t) {
+            error("Failed to flush metric: " + metric.getId(), t);
+            getErrorTracker().ifPresent(tracker -> tracker.trackError(t));
+        }
+    }
+
+    Collection<Metric<?>> submittedMetrics() {
+        return config.additionalMetrics ? metrics.values() : List.of();
+    }
+
+    @Override
+    public void register(final Metric<?> metric) throws IllegalArgumentException {
+        synchronized (registryLock) {
+            if (metrics.containsKey(metric.getId())) {
+                throw new IllegalArgumentException("Metric already registered: " + metric.getId());
+            }
+            final var cached = segments;
+            final var ids = getFieldIds(metric);
+            for (final var id : ids) {
+                if (BatchFormat.HOST_FIELDS.contains(id) || (cached != null && cached.constantData().has(id))) {
+                    throw new IllegalArgumentException("Metric id is reserved for the constant data: " + id);
+                }
+            }
+            checkFieldIds(metrics.values(), ids);
+            final var copy = new LinkedHashMap<>(metrics);
+            copy.put(metric.getId(), metric);
+            metrics = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    /**
+     * The ids of the fields a metric contributes to the submission data,
+     * which are the ids of its metrics for a {@link MetricGroup metric group}.
+     */
+    private static Set<String> getFieldIds(final Metric<?> metric) {
+        return metric instanceof final MetricGroup<?> group ? group.getIds() : Set.of(metric.getId());
+    }
+
+    /**
+     * Ensures the given field ids are not contributed by any of the given metrics,
+     * as one of the values would silently replace the other.
+     */
+    private static void checkFieldIds(final Collection<? extends Metric<?>> metrics, final Set<String> ids) throws IllegalArgumentException {
+        for (final var metric : metrics) {
+            for (final var id : getFieldIds(metric)) {
+                if (ids.contains(id)) throw new IllegalArgumentException("Metric id already in use: " + id);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Metric<?>> unregister(@SourceId final String id) {
+        synchronized (registryLock) {
+            final var metric = metrics.get(id);
+            if (metric == null) return Optional.empty();
+            final var copy = new LinkedHashMap<>(metrics);
+            copy.remove(id);
+            metrics = Collections.unmodifiableMap(copy);
+            if (metric instanceof final CachedMetric<?> cached) cached.close();
+            return Optional.of(metric);
+        }
+    }
+
+    @Override
+    public Optional<Metric<?>> getMetric(@SourceId final String id) {
+        return Optional.ofNullable(metrics.get(id));
+    }
+
+    @Override
+    public Collection<Metric<?>> getMetrics() {
+        return metrics.values();
+    }
+
     @Override
     public @Token String getToken() {
         return token;
@@ -301,6 +1206,19 @@ public abstract class SimpleMetrics implements Metrics {
         return config;
     }
 
+    /**
+     * Appends data that does not change for the lifetime of this metrics instance.
+     * <p>
+     * This is called once, before the first submission, and the appended data is encoded only once.
+     * Data that may change between submissions belongs in {@link #appendDefaultData(JsonObject)}.
+     *
+     * @param metrics the constant data
+     * @since 0.23.0
+     */
+    @Contract(mutates = "param1")
+    protected void appendConstantData(final JsonObject metrics) {
+    }
+
     @Contract(mutates = "param1")
     protected abstract void appendDefaultData(JsonObject metrics);
 
@@ -325,6 +1243,7 @@ public abstract class SimpleMetrics implements Metrics {
     @Override
     public void shutdown() {
         getErrorTracker().ifPresent(ErrorTracker::detachErrorContext);
+        sharing.stopCoalescing();
         if (executor != null) try {
             info("Shutting down metrics submission");
             executor.shutdown();
@@ -336,20 +1255,53 @@ public abstract class SimpleMetrics implements Metrics {
         } finally {
             executor = null;
         }
+        metrics.values().forEach(metric -> {
+            if (metric instanceof final CachedMetric<?> cached) cached.close();
+        });
+        sharing.closeSharedRegion();
     }
 
     public abstract static class Factory<T, F extends Metrics.Factory<T, F>> implements Metrics.Factory<T, F> {
         private final Set<Metric<?>> metrics = new HashSet<>(0);
-        private URI url = URI.create("https://metrics.faststats.dev/v1/collect");
+        private URI url = defaultUrl();
         private @Nullable ErrorTracker tracker;
         private @Nullable Runnable flush;
         private @Nullable String token;
         private boolean debug = false;
+        private Transport transport = defaultTransport();
+        private boolean deltaSubmission = false;
+        private boolean binaryFormat = false;
+
+        /**
+         * Submits to a host-level aggregator on a loopback port if the {@code faststats.aggregator-port}
+         * system property is set.
+         */
+        private static URI defaultUrl() {
+            final var port = Integer.getInteger("faststats.aggregator-port");
+            if (port != null) return URI.create("http://127.0.0.1:" + port + "/v1/collect");
+            return URI.create("https://metrics.faststats.dev/v1/collect");
+        }
+
+        /**
+         * Submits to a host-level aggregator on a Unix domain socket if the {@code faststats.aggregator-socket}
+         * system property is set.
+         */
+        private static Transport defaultTransport() {
+            final var socket = System.getProperty("faststats.aggregator-socket");
+            if (socket != null) return Transport.unixDomainSocket(Path.of(socket));
+            return Transport.http();
+        }
 
         @Override
         @SuppressWarnings("unchecked")
         public F addMetric(final Metric<?> metric) throws IllegalArgumentException {
-            if (!metrics.add(metric)) throw new IllegalArgumentException("Metric already added: " + metric.getId());
+            if (metrics.contains(metric)) throw new IllegalArgumentException("Metric already added: " + metric.getId());
+            final var ids = getFieldIds(metric);
+            for (final var id : ids) {
+                if (BatchFormat.HOST_FIELDS.contains(id)) throw new IllegalArgumentException("Metric id is reserved for the system data: " + id);
+            }
+            checkFieldIds(metrics, ids);
+            metrics.add(metric);
             return (F) this;
         }
 
@@ -374,6 +1326,20 @@ public abstract class SimpleMetrics implements Metrics {
             return (F) this;
         }
 
+        @Override
+        @SuppressWarnings("unchecked")
+        public F deltaSubmission(final boolean enabled) {
+            this.deltaSubmission = enabled;
+            return (F) this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public F binaryFormat(final boolean enabled) {
+            this.binaryFormat = enabled;
+            return (F) this;
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public F token(@Token final String token) throws IllegalArgumentException {
@@ -390,6 +1356,13 @@ public abstract class SimpleMetrics implements Metrics {
             this.url = url;
             return (F) this;
         }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public F transport(final Transport transport) {
+            this.transport = transport;
+            return (F) this;
+        }
     }
 
     public record Config(
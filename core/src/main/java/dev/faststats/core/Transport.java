@@ -0,0 +1,127 @@
+package dev.faststats.core;
+
+import org.jetbrains.annotations.Contract;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Transports submissions to the metrics server.
+ * <p>
+ * Every submission is sent as an HTTP-style {@link Request request}, answered by a {@link Response response}.
+ *
+ * @see Metrics.Factory#transport(Transport)
+ * @since 0.23.0
+ */
+public interface Transport {
+    /**
+     * Sends a request.
+     * <p>
+     * Failures to deliver the request complete the returned future exceptionally.
+     *
+     * @param request the request
+     * @return a future completing with the response
+     * @since 0.23.0
+     */
+    CompletableFuture<Response> send(Request request);
+
+    /**
+     * Creates a transport using the {@link java.net.http.HttpClient Java HTTP client}.
+     * <p>
+     * This is the default transport.
+     *
+     * @return the http transport
+     * @since 0.23.0
+     */
+    @Contract(value = " -> new", pure = true)
+    static Transport http() {
+        return new HttpTransport();
+    }
+
+    /**
+     * Creates a transport handing every request to the given handler within the same JVM.
+     * <p>
+     * This is meant for tests and benchmarks that should not depend on sockets.
+     *
+     * @param handler the request handler
+     * @return the loopback transport
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static Transport loopback(final Function<Request, Response> handler) {
+        return new LoopbackTransport(handler);
+    }
+
+    /**
+     * Creates a transport speaking HTTP/1.1 over a Unix domain socket, for example to a sidecar on the same host.
+     * <p>
+     * Only the path and query of the request url are used.
+     *
+     * @param socket the path of the socket
+     * @return the unix domain socket transport
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static Transport unixDomainSocket(final Path socket) {
+        return new UnixDomainSocketTransport(socket);
+    }
+
+    /**
+     * A request to the metrics server.
+     *
+     * @param url     the url of the metrics server
+     * @param headers the request headers
+     * @param body    the request body
+     * @since 0.23.0
+     */
+    record Request(URI url, Map<String, String> headers, byte[] body) {
+        public Request {
+            headers = Map.copyOf(headers);
+        }
+    }
+
+    /**
+     * A response of the metrics server.
+     *
+     * @param statusCode the status code
+     * @param headers    the response headers
+     * @param body       the response body
+     * @since 0.23.0
+     */
+    record Response(int statusCode, Map<String, List<String>> headers, String body) {
+        public Response {
+            headers = Map.copyOf(headers);
+        }
+
+        /**
+         * Creates a response without headers.
+         *
+         * @param statusCode the status code
+         * @param body       the response body
+         * @since 0.23.0
+         */
+        public Response(final int statusCode, final String body) {
+            this(statusCode, Map.of(), body);
+        }
+
+        /**
+         * Get the first value of a response header, ignoring the case of its name.
+         *
+         * @param name the name of the header
+         * @return an optional containing the first value of the header, or an empty optional if it is absent
+         * @since 0.23.0
+         */
+        @Contract(pure = true)
+        public Optional<String> header(final String name) {
+            return headers.entrySet().stream()
+                    .filter(entry -> entry.getKey().equalsIgnoreCase(name))
+                    .flatMap(entry -> entry.getValue().stream())
+                    .findFirst();
+        }
+    }
+}
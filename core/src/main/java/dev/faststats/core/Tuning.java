@@ -0,0 +1,140 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the submission period, sample rate and payload budget of a metrics instance.
+ * <p>
+ * The settings of the metrics instance apply unless the metrics server overrides them,
+ * using a {@link Directive directive} or the {@link Sampling#SAMPLE_RATE_HEADER sample rate header},
+ * and the period adapts to the activity of the server if {@link SimpleMetrics#isAdaptivePeriod() enabled}.
+ */
+final class Tuning {
+    private static final String DIRECTIVE_FILE = "directive";
+
+    private final SimpleMetrics metrics;
+    private final Activity activity = new Activity();
+
+    private volatile Directive directive = Directive.NONE;
+    private volatile double providedSampleRate = Double.NaN;
+
+    Tuning(final SimpleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Applies the directive cached by a previous run, so it applies right away after a restart.
+     */
+    void restore() {
+        final var file = metrics.getProjectFile(DIRECTIVE_FILE);
+        final var cached = file != null ? Directive.read(file) : null;
+        if (cached != null) apply(cached);
+    }
+
+    /**
+     * Applies and caches the directive of an accepting response of the metrics server, if it contains a new one.
+     *
+     * @param body the response body
+     */
+    void receiveDirective(final String body) {
+        final var received = Directive.parse(body);
+        if (received == null || received.equals(directive)) return;
+        metrics.info("Applying directive of the metrics server: " + received.toJson());
+        apply(received);
+        final var file = metrics.getProjectFile(DIRECTIVE_FILE);
+        if (file != null) try {
+            received.write(file);
+        } catch (final IOException e) {
+            metrics.error("Failed to cache directive", e);
+        }
+    }
+
+    /**
+     * Applies the sample rate provided by an accepting response of the metrics server.
+     *
+     * @param header the value of the {@link Sampling#SAMPLE_RATE_HEADER sample rate header}
+     */
+    void receiveSampleRate(@Nullable final String header) {
+        providedSampleRate = Sampling.parseRate(header);
+    }
+
+    private void apply(final Directive directive) {
+        this.directive = directive;
+        metrics.getErrorTracker().map(SimpleErrorTracker.class::cast).ifPresent(tracker -> tracker.setLimits(directive.limits()));
+    }
+
+    /**
+     * Compares the given fields against their values of the previous submission, if the period is adaptive.
+     *
+     * @param fields the submission data
+     */
+    void observe(final JsonObject fields) {
+        if (metrics.isAdaptivePeriod()) activity.observe(fields);
+    }
+
+    /**
+     * Records an error report with a new fingerprint.
+     *
+     * @param handled whether the error was handled
+     */
+    void reported(final boolean handled) {
+        activity.reported(handled);
+    }
+
+    /**
+     * The current submission period, as set by the metrics server or {@link SimpleMetrics#getPeriod()}.
+     *
+     * @return the submission period in milliseconds
+     */
+    long period() {
+        final var period = directive.period();
+        return Math.max(1000, period != null ? period : metrics.getPeriod());
+    }
+
+    /**
+     * The period until the next submission, adapted to the activity since the last submission if enabled.
+     *
+     * @return the period until the next submission in milliseconds
+     */
+    long nextPeriod() {
+        final var period = period();
+        if (!metrics.isAdaptivePeriod()) return period;
+        final var next = Math.max(1000, activity.next(period, metrics.getMinPeriod(), metrics.getMaxPeriod()));
+        if (next != period) metrics.info("Next submission in " + TimeUnit.MILLISECONDS.toSeconds(next) + " seconds");
+        return next;
+    }
+
+    /**
+     * The time after which servers that did not submit anymore are considered gone,
+     * covering the longest possible submission period.
+     *
+     * @return the stale timeout in milliseconds
+     */
+    long staleTimeout() {
+        return Math.max(period(), metrics.isAdaptivePeriod() ? metrics.getMaxPeriod() : 0) * 3;
+    }
+
+    /**
+     * The current sample rate, as set by a directive or header of the metrics server or {@link SimpleMetrics#getSampleRate()}.
+     *
+     * @return the sample rate, between {@code 0} and {@code 1}
+     */
+    double sampleRate() {
+        final var directed = directive.sampleRate();
+        return directed != null ? directed : Double.isNaN(providedSampleRate) ? metrics.getSampleRate() : providedSampleRate;
+    }
+
+    /**
+     * The current payload budget, as set by the metrics server or {@link SimpleMetrics#getPayloadBudget()}.
+     *
+     * @return the payload budget in bytes
+     */
+    long payloadBudget() {
+        final var budget = directive.payloadBudget();
+        return budget != null ? budget : metrics.getPayloadBudget();
+    }
+}
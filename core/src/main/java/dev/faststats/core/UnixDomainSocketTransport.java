@@ -0,0 +1,194 @@
+package dev.faststats.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A minimal HTTP/1.1 client over a Unix domain socket.
+ * <p>
+ * Every request uses its own connection and asks the server to close it,
+ * so the response is read until the end of the stream.
+ * The blocking socket operations run on a small pool of daemon threads shared by all transports.
+ */
+final class UnixDomainSocketTransport implements Transport {
+    private static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+    private static final int THREADS = 4;
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final UnixDomainSocketAddress address;
+
+    UnixDomainSocketTransport(final Path socket) {
+        this.address = UnixDomainSocketAddress.of(socket);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(final Request request) {
+        final var future = new CompletableFuture<Response>();
+        try {
+            EXECUTOR.execute(() -> {
+                if (future.isDone()) return;
+                try (final var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                    future.whenComplete((response, throwable) -> close(channel));
+                    channel.connect(address);
+                    write(channel, request);
+                    future.complete(read(channel));
+                } catch (final Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future.orTimeout(3, TimeUnit.SECONDS);
+    }
+
+    private static ExecutorService createExecutor() {
+        final var executor = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, "metrics-transport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void write(final SocketChannel channel, final Request request) throws IOException {
+        final var url = request.url();
+        final var path = url.getRawPath() == null || url.getRawPath().isEmpty() ? "/" : url.getRawPath();
+        final var target = url.getRawQuery() != null ? path + "?" + url.getRawQuery() : path;
+
+        final var head = new StringBuilder("POST ").append(target).append(" HTTP/1.1\r\n")
+                .append("Host: localhost\r\n")
+                .append("Content-Length: ").append(request.body().length).append("\r\n")
+                .append("Connection: close\r\n");
+        request.headers().forEach((name, value) -> {
+            if (name.indexOf('\r') != -1 || name.indexOf('\n') != -1 || value.indexOf('\r') != -1 || value.indexOf('\n') != -1) {
+                throw new IllegalArgumentException("Invalid header: " + name);
+            }
+            head.append(name).append(": ").append(value).append("\r\n");
+        });
+        head.append("\r\n");
+
+        final var buffers = new ByteBuffer[]{ByteBuffer.wrap(head.toString().getBytes(ISO_8859_1)), ByteBuffer.wrap(request.body())};
+        while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) channel.write(buffers);
+    }
+
+    private static Response read(final SocketChannel channel) throws IOException {
+        final var output = new ByteArrayOutputStream();
+        final var buffer = ByteBuffer.allocate(8192);
+        while (channel.read(buffer) != -1) {
+            output.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+            if (output.size() > MAX_RESPONSE_SIZE) throw new ProtocolException("Response too large");
+        }
+        return parse(output.toByteArray());
+    }
+
+    static Response parse(final byte[] bytes) throws ProtocolException {
+        final var end = indexOfHeaderEnd(bytes);
+        if (end == -1) throw new ProtocolException("Incomplete response");
+
+        final var lines = new String(bytes, 0, end, ISO_8859_1).split("\r\n");
+        final var status = lines[0].split(" ", 3);
+        if (status.length < 2 || !status[0].startsWith("HTTP/1.")) throw new ProtocolException("Invalid status line: " + lines[0]);
+
+        final int statusCode;
+        try {
+            statusCode = Integer.parseInt(status[1]);
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Invalid status code: " + status[1]);
+        }
+
+        final var headers = new LinkedHashMap<String, List<String>>();
+        for (var i = 1; i < lines.length; i++) {
+            final var separator = lines[i].indexOf(':');
+            if (separator <= 0) throw new ProtocolException("Invalid header: " + lines[i]);
+            final var name = lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            headers.computeIfAbsent(name, k -> new ArrayList<>()).add(lines[i].substring(separator + 1).trim());
+        }
+
+        var body = Arrays.copyOfRange(bytes, end + 4, bytes.length);
+        if (headers.getOrDefault("transfer-encoding", List.of()).contains("chunked")) {
+            body = dechunk(body);
+        } else if (headers.containsKey("content-length")) {
+            final var length = parseLength(headers.get("content-length").get(0));
+            if (length > body.length) throw new ProtocolException("Incomplete response body");
+            body = Arrays.copyOf(body, length);
+        }
+        return new Response(statusCode, Map.copyOf(headers), new String(body, UTF_8));
+    }
+
+    private static int parseLength(final String length) throws ProtocolException {
+        try {
+            final var parsed = Integer.parseInt(length);
+            if (parsed < 0) throw new ProtocolException("Invalid content length: " + length);
+            return parsed;
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Invalid content length: " + length);
+        }
+    }
+
+    private static byte[] dechunk(final byte[] bytes) throws ProtocolException {
+        final var output = new ByteArrayOutputStream(bytes.length);
+        var position = 0;
+        while (true) {
+            final var lineEnd = indexOfLineEnd(bytes, position);
+            if (lineEnd == -1) throw new ProtocolException("Incomplete chunk");
+            final var size = new String(bytes, position, lineEnd - position, ISO_8859_1).split(";", 2)[0].trim();
+            final int length;
+            try {
+                length = Integer.parseInt(size, 16);
+            } catch (final NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + size);
+            }
+            if (length < 0) throw new ProtocolException("Invalid chunk size: " + size);
+            position = lineEnd + 2;
+            if (length == 0) return output.toByteArray();
+            if (position + length > bytes.length) throw new ProtocolException("Incomplete chunk");
+            output.write(bytes, position, length);
+            position += length + 2;
+        }
+    }
+
+    private static int indexOfHeaderEnd(final byte[] bytes) {
+        for (var i = 0; i + 3 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static int indexOfLineEnd(final byte[] bytes, final int from) {
+        for (var i = from; i + 1 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static void close(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ignored) {
+        }
+    }
+}
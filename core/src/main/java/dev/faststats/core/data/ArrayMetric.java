@@ -2,6 +2,7 @@ package dev.faststats.core.data;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import org.jspecify.annotations.Nullable;
 
 import java.util.Optional;
@@ -16,12 +17,15 @@ final class ArrayMetric<T> extends SimpleMetric<T[]> {
     public Optional<JsonElement> getData() throws Exception {
         return compute().map(data -> {
             final var elements = new JsonArray(data.length);
-            for (final var d : data) {
-                if (d instanceof final Boolean b) elements.add(b);
-                else if (d instanceof final Number n) elements.add(n);
-                else elements.add(d.toString());
-            }
+            for (final var d : data) add(elements, d);
             return elements;
         });
     }
+
+    static void add(final JsonArray elements, @Nullable final Object element) {
+        if (element == null) elements.add(JsonNull.INSTANCE);
+        else if (element instanceof final Boolean b) elements.add(b);
+        else if (element instanceof final Number n) elements.add(n);
+        else elements.add(element.toString());
+    }
 }
@@ -0,0 +1,29 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+final class AsyncMetric<T> extends SimpleMetric<T> {
+    private final Supplier<? extends CompletionStage<@Nullable T>> supplier;
+
+    public AsyncMetric(@SourceId final String id, final Supplier<? extends CompletionStage<@Nullable T>> supplier) throws IllegalArgumentException {
+        super(id, () -> supplier.get().toCompletableFuture().get());
+        this.supplier = supplier;
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return compute().map(SingleValueMetric::encode);
+    }
+
+    @Override
+    public CompletableFuture<Optional<JsonElement>> getDataAsync() {
+        return supplier.get().toCompletableFuture()
+                .thenApply(data -> Optional.ofNullable(data).map(SingleValueMetric::encode));
+    }
+}
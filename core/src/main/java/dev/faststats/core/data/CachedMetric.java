@@ -0,0 +1,55 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * A metric that caches the data of an expensive metric.
+ * <p>
+ * The underlying metric is first refreshed on {@link #getData()}, and from then on asynchronously
+ * whenever the time-to-live elapsed since the last refresh, until the metric is {@linkplain #close() closed}.
+ * {@link #getData()} never waits for a refresh and serves the last successfully computed data instead.
+ * If no data was computed yet, the metric is omitted from the submission.
+ * <p>
+ * {@link #compute()} always invokes the underlying metric.
+ * <p>
+ * Metrics that aggregate data over a submission period, i.e. those that implement {@link #onFlush()}, cannot be cached.
+ * Registered cached metrics are closed once they are unregistered or the metrics submission is shut down.
+ *
+ * @param <T> the metric data type
+ * @see Metric#cached(Metric, Duration)
+ * @since 0.23.0
+ */
+public sealed interface CachedMetric<T> extends Metric<T>, AutoCloseable permits RefreshingMetric {
+    /**
+     * Get the age of the cached data.
+     *
+     * @return an optional containing the time since the cached data was computed,
+     * or an empty optional if no data was computed yet
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    Optional<Duration> getAge();
+
+    /**
+     * Refreshes the cached data asynchronously, regardless of its age.
+     * <p>
+     * Does nothing if a refresh is already in progress or the metric is closed.
+     *
+     * @since 0.23.0
+     */
+    void refresh();
+
+    /**
+     * Stops refreshing the cached data and cancels the scheduled refresh.
+     * <p>
+     * The last computed data is still served afterwards.
+     *
+     * @since 0.23.0
+     */
+    @Override
+    @Contract(mutates = "this")
+    void close();
+}
@@ -0,0 +1,50 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A family of counters, broken down by a fixed number of labels, such as the world or game mode.
+ * <p>
+ * Label combinations do not have to be declared up front.
+ * Once the cardinality limit is reached, increments for new combinations are counted
+ * towards a combination where every label is {@code "_other"}.
+ * <p>
+ * The family is submitted as a single object, nested by label in order, leaving out combinations without a count.
+ * The submitted counts are subtracted once the metrics have been submitted to, and accepted by, the metrics server.
+ * Combinations left without a count by a submission are removed, freeing their slot for new combinations.
+ * <pre>{@code
+ * final var kills = Metric.counterFamily("kills", 2);
+ * kills.increment("world", "zombie");
+ * // submitted as {"world": {"zombie": 1}}
+ * }</pre>
+ *
+ * @see Metric#counterFamily(String, int)
+ * @since 0.23.0
+ */
+public sealed interface CounterFamily extends Metric<Map<List<String>, Long>> permits CounterFamilyMetric {
+    /**
+     * Increments the counter of the given label combination by one.
+     *
+     * @param labels the labels
+     * @throws IllegalArgumentException if the number of labels does not match the family
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    default void increment(final String... labels) throws IllegalArgumentException {
+        add(1, labels);
+    }
+
+    /**
+     * Increments the counter of the given label combination.
+     *
+     * @param amount the amount to add
+     * @param labels the labels
+     * @throws IllegalArgumentException if the number of labels does not match the family
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void add(long amount, String... labels) throws IllegalArgumentException;
+}
@@ -0,0 +1,44 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+final class CounterFamilyMetric extends SimpleMetric<Map<List<String>, Long>> implements CounterFamily {
+    private final AtomicReference<Map<List<String>, Long>> submitted = new AtomicReference<>(Map.of());
+    private final LabelledFamily<LongAdder, Long> family;
+
+    public CounterFamilyMetric(@SourceId final String id, final int labels, final int maxCardinality) throws IllegalArgumentException {
+        this(id, new LabelledFamily<>(labels, maxCardinality, adder -> {
+            final var sum = adder.sum();
+            return sum != 0 ? sum : null;
+        }));
+    }
+
+    private CounterFamilyMetric(@SourceId final String id, final LabelledFamily<LongAdder, Long> family) throws IllegalArgumentException {
+        super(id, family::snapshot);
+        this.family = family;
+    }
+
+    @Override
+    public void add(final long amount, final String... labels) throws IllegalArgumentException {
+        family.update(labels, ignored -> new LongAdder(), adder -> adder.add(amount));
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        final var snapshot = compute();
+        submitted.set(snapshot.orElse(Map.of()));
+        return LabelledFamily.encode(snapshot);
+    }
+
+    @Override
+    public void onFlush() {
+        family.forEach(submitted.getAndSet(Map.of()), (adder, count) -> adder.add(-count));
+        family.evict(adder -> adder.sum() == 0);
+    }
+}
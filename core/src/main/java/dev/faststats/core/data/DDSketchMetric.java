@@ -0,0 +1,235 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Quantile estimation based on DDSketch by Masson, Rim and Lee.
+ * <p>
+ * Values are mapped to logarithmically sized bins, so every estimate is within the relative accuracy of the true value.
+ * Sketches with the same relative accuracy are merged by adding up the counts of matching bins.
+ * Once the values span more than {@link #MAX_BINS} bins, the lowest bins are collapsed into one,
+ * which keeps the memory fixed while preserving the accuracy of the higher quantiles.
+ * Flushing subtracts the submitted sketch, so values recorded while a submission is in flight are kept.
+ */
+final class DDSketchMetric extends SimpleMetric<Map<Double, Double>> implements QuantileMetric {
+    static final int MAX_BINS = 2048;
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private final Sketch sketch;
+
+    public DDSketchMetric(@SourceId final String id, final double relativeAccuracy) throws IllegalArgumentException {
+        this(id, new Sketch(relativeAccuracy));
+    }
+
+    private DDSketchMetric(@SourceId final String id, final Sketch sketch) throws IllegalArgumentException {
+        super(id, sketch::summary);
+        this.sketch = sketch;
+    }
+
+    @Override
+    public void record(final double value) throws IllegalArgumentException {
+        if (!(value >= 0)) throw new IllegalArgumentException("Value must not be negative or NaN: " + value);
+        sketch.record(value);
+    }
+
+    @Override
+    public double quantile(final double quantile) throws IllegalArgumentException {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        }
+        return sketch.quantile(quantile);
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return sketch.encode();
+    }
+
+    @Override
+    public void onFlush() {
+        sketch.flush();
+    }
+
+    private static final class Sketch {
+        private final long[] bins = new long[MAX_BINS];
+        private final double relativeAccuracy;
+        private final double gamma;
+        private final double logGamma;
+        private final double minIndexable;
+
+        private int offset = 0;
+        private int minKey = Integer.MAX_VALUE;
+        private int maxKey = Integer.MIN_VALUE;
+        private long zeroCount = 0;
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private @Nullable Snapshot submitted = null;
+
+        private Sketch(final double relativeAccuracy) throws IllegalArgumentException {
+            if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+                throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+            }
+            this.relativeAccuracy = relativeAccuracy;
+            this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+            this.logGamma = Math.log(gamma);
+            this.minIndexable = Double.MIN_NORMAL * gamma;
+        }
+
+        private synchronized void record(final double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            if (value < minIndexable) {
+                zeroCount++;
+                return;
+            }
+
+            final var key = (int) Math.ceil(Math.log(value) / logGamma);
+            if (minKey > maxKey) {
+                offset = key;
+                minKey = maxKey = key;
+            } else if (key < offset || key >= offset + MAX_BINS) {
+                extend(key);
+            } else {
+                minKey = Math.min(minKey, key);
+                maxKey = Math.max(maxKey, key);
+            }
+            bins[Math.max(key, offset) - offset]++;
+        }
+
+        private void extend(final int key) {
+            final var newMin = Math.min(minKey, key);
+            final var newMax = Math.max(maxKey, key);
+            final var newOffset = newMax - newMin < MAX_BINS && key < offset ? newMin : newMax - MAX_BINS + 1;
+
+            if (newOffset != offset) {
+                final var shifted = new long[MAX_BINS];
+                for (var k = minKey; k <= maxKey; k++) {
+                    shifted[Math.max(k, newOffset) - newOffset] += bins[k - offset];
+                }
+                System.arraycopy(shifted, 0, bins, 0, MAX_BINS);
+                offset = newOffset;
+            }
+
+            minKey = Math.max(newMin, offset);
+            maxKey = newMax;
+        }
+
+        private synchronized double quantile(final double quantile) {
+            if (count == 0) return Double.NaN;
+            if (quantile == 1) return max;
+            final var rank = quantile * (count - 1);
+
+            var cumulative = zeroCount;
+            if (cumulative > rank) return min;
+            for (var key = minKey; key <= maxKey; key++) {
+                cumulative += bins[key - offset];
+                if (cumulative > rank) return Math.max(min, Math.min(max, value(key)));
+            }
+            return max;
+        }
+
+        private double value(final int key) {
+            return 2 * Math.pow(gamma, key) / (gamma + 1);
+        }
+
+        private synchronized @Nullable Map<Double, Double> summary() {
+            if (count == 0) return null;
+            final var summary = new LinkedHashMap<Double, Double>(QUANTILES.length);
+            for (final var quantile : QUANTILES) summary.put(quantile, quantile(quantile));
+            return summary;
+        }
+
+        private synchronized Optional<JsonElement> encode() {
+            if (count == 0) return Optional.empty();
+
+            final var object = new JsonObject();
+            object.addProperty("relative_accuracy", relativeAccuracy);
+            object.addProperty("count", count);
+            object.addProperty("sum", sum);
+            object.addProperty("min", min);
+            object.addProperty("max", max);
+            object.addProperty("zero_count", zeroCount);
+
+            final var snapshot = new long[Math.max(0, maxKey - minKey + 1)];
+            if (minKey <= maxKey) {
+                final var counts = new JsonArray(snapshot.length);
+                for (var key = minKey; key <= maxKey; key++) counts.add(snapshot[key - minKey] = bins[key - offset]);
+                object.addProperty("offset", minKey);
+                object.add("bins", counts);
+            }
+            submitted = new Snapshot(count, sum, zeroCount, minKey, snapshot);
+            return Optional.of(object);
+        }
+
+        /**
+         * Subtracts the submitted sketch, collapsing its bins the same way as the bins of this sketch.
+         * <p>
+         * As the extremes of the remaining values are unknown,
+         * they are narrowed down to the bounds of the remaining bins.
+         */
+        private synchronized void flush() {
+            final var snapshot = submitted;
+            submitted = null;
+            if (snapshot == null) return;
+            if (snapshot.count() >= count) {
+                clear();
+                return;
+            }
+
+            count -= snapshot.count();
+            sum -= snapshot.sum();
+            zeroCount -= snapshot.zeroCount();
+            for (var i = 0; i < snapshot.bins().length; i++) {
+                bins[Math.max(snapshot.offset() + i, offset) - offset] -= snapshot.bins()[i];
+            }
+            while (minKey <= maxKey && bins[minKey - offset] == 0) minKey++;
+            while (maxKey >= minKey && bins[maxKey - offset] == 0) maxKey--;
+
+            if (minKey > maxKey) {
+                minKey = Integer.MAX_VALUE;
+                maxKey = Integer.MIN_VALUE;
+                max = Math.min(max, minIndexable);
+            } else {
+                if (zeroCount == 0) min = Math.max(min, Math.pow(gamma, minKey - 1));
+                max = Math.min(max, Math.pow(gamma, maxKey));
+            }
+        }
+
+        private synchronized void clear() {
+            if (minKey <= maxKey) Arrays.fill(bins, minKey - offset, maxKey - offset + 1, 0);
+            minKey = Integer.MAX_VALUE;
+            maxKey = Integer.MIN_VALUE;
+            zeroCount = 0;
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * The state of a sketch at the time it was encoded.
+     *
+     * @param count     the number of values
+     * @param sum       the sum of all values
+     * @param zeroCount the number of values too small to be indexed
+     * @param offset    the key of the first bin
+     * @param bins      the bin counts
+     */
+    private record Snapshot(long count, double sum, long zeroCount, int offset, long[] bins) {
+    }
+}
@@ -0,0 +1,46 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.UUID;
+
+/**
+ * A metric that estimates the number of distinct values, such as unique players or visited worlds.
+ * <p>
+ * The values themselves are never stored or submitted, only their hashes contribute to the estimate.
+ * The memory used is fixed, regardless of how many values are added.
+ * <p>
+ * The metric data is the estimated number of distinct values added since the last submission.
+ * The submitted values are removed once the metrics have been submitted to, and accepted by, the metrics server.
+ *
+ * @see Metric#distinctCount(String)
+ * @since 0.23.0
+ */
+public sealed interface DistinctCountMetric extends Metric<Long> permits HyperLogLogMetric {
+    /**
+     * Adds a value to the estimate.
+     *
+     * @param value the value
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void add(String value);
+
+    /**
+     * Adds a value to the estimate.
+     *
+     * @param value the value
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void add(UUID value);
+
+    /**
+     * Adds a value to the estimate.
+     *
+     * @param value the value
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void add(long value);
+}
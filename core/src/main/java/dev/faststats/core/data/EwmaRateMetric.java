@@ -0,0 +1,141 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate measurement using exponentially weighted moving averages, as known from UNIX load averages.
+ * <p>
+ * Events are counted in striped adders and folded into the averages every {@link #TICK_INTERVAL} nanoseconds.
+ * Instead of a dedicated thread, the averages are ticked by whichever thread marks or reads the metric next,
+ * catching up on every interval that passed in the meantime.
+ */
+final class EwmaRateMetric extends SimpleMetric<Map<String, Number>> implements RateMetric {
+    static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final Meter meter;
+
+    public EwmaRateMetric(@SourceId final String id) throws IllegalArgumentException {
+        this(id, new Meter());
+    }
+
+    private EwmaRateMetric(@SourceId final String id, final Meter meter) throws IllegalArgumentException {
+        super(id, meter::snapshot);
+        this.meter = meter;
+    }
+
+    @Override
+    public void mark(final long events) throws IllegalArgumentException {
+        if (events < 0) throw new IllegalArgumentException("Events must not be negative: " + events);
+        meter.mark(events);
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        meter.tickIfNecessary();
+        return meter.m1.perSecond();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        meter.tickIfNecessary();
+        return meter.m5.perSecond();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        meter.tickIfNecessary();
+        return meter.m15.perSecond();
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return compute().map(snapshot -> {
+            submitted.set(snapshot.get("count").longValue());
+            final var object = new JsonObject();
+            snapshot.forEach(object::addProperty);
+            return object;
+        });
+    }
+
+    @Override
+    public void onFlush() {
+        meter.count.add(-submitted.getAndSet(0));
+    }
+
+    private static final class Meter {
+        private final LongAdder uncounted = new LongAdder();
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+        private final Average m1 = new Average(1);
+        private final Average m5 = new Average(5);
+        private final Average m15 = new Average(15);
+
+        private void mark(final long events) {
+            tickIfNecessary();
+            uncounted.add(events);
+            count.add(events);
+        }
+
+        private void tickIfNecessary() {
+            final var previous = lastTick.get();
+            final var age = System.nanoTime() - previous;
+            if (age < TICK_INTERVAL) return;
+
+            final var ticks = age / TICK_INTERVAL;
+            if (!lastTick.compareAndSet(previous, previous + ticks * TICK_INTERVAL)) return;
+
+            final var events = uncounted.sumThenReset();
+            for (var i = 0; i < ticks; i++) {
+                final var tickEvents = i == 0 ? events : 0;
+                m1.tick(tickEvents);
+                m5.tick(tickEvents);
+                m15.tick(tickEvents);
+            }
+        }
+
+        private Map<String, Number> snapshot() {
+            tickIfNecessary();
+            final var snapshot = new LinkedHashMap<String, Number>(4);
+            snapshot.put("count", count.sum());
+            snapshot.put("m1_rate", m1.perSecond());
+            snapshot.put("m5_rate", m5.perSecond());
+            snapshot.put("m15_rate", m15.perSecond());
+            return snapshot;
+        }
+    }
+
+    private static final class Average {
+        private final double alpha;
+        private volatile double rate = 0;
+        private volatile boolean initialized = false;
+
+        private Average(final int minutes) {
+            this.alpha = 1 - Math.exp(-(double) TICK_INTERVAL / TimeUnit.MINUTES.toNanos(minutes));
+        }
+
+        // only ever called by the thread that won the tick
+        private void tick(final long events) {
+            final var instantRate = (double) events / TICK_INTERVAL;
+            if (initialized) {
+                rate += alpha * (instantRate - rate);
+            } else {
+                rate = instantRate;
+                initialized = true;
+            }
+        }
+
+        private double perSecond() {
+            return rate * TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A family of gauges, broken down by a fixed number of labels, such as the world or game mode.
+ * <p>
+ * Label combinations do not have to be declared up front.
+ * Once the cardinality limit is reached, values for new combinations are stored
+ * in a combination where every label is {@code "_other"}.
+ * Gauges are not aggregated, so that combination holds the last value set for any combination beyond the limit.
+ * <p>
+ * The family is submitted as a single object, nested by label in order.
+ * Unlike counters, gauges keep their value across submissions until they are {@link #remove(String...) removed}.
+ *
+ * @see Metric#gaugeFamily(String, int)
+ * @since 0.23.0
+ */
+public sealed interface GaugeFamily extends Metric<Map<List<String>, Double>> permits GaugeFamilyMetric {
+    /**
+     * Sets the gauge of the given label combination.
+     *
+     * @param value  the value
+     * @param labels the labels
+     * @throws IllegalArgumentException if the number of labels does not match the family
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void set(double value, String... labels) throws IllegalArgumentException;
+
+    /**
+     * Removes the gauge of the given label combination.
+     *
+     * @param labels the labels
+     * @throws IllegalArgumentException if the number of labels does not match the family
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void remove(String... labels) throws IllegalArgumentException;
+}
@@ -0,0 +1,35 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+final class GaugeFamilyMetric extends SimpleMetric<Map<List<String>, Double>> implements GaugeFamily {
+    private final LabelledFamily<Double, Double> family;
+
+    public GaugeFamilyMetric(@SourceId final String id, final int labels, final int maxCardinality) throws IllegalArgumentException {
+        this(id, new LabelledFamily<>(labels, maxCardinality, value -> value));
+    }
+
+    private GaugeFamilyMetric(@SourceId final String id, final LabelledFamily<Double, Double> family) throws IllegalArgumentException {
+        super(id, family::snapshot);
+        this.family = family;
+    }
+
+    @Override
+    public void set(final double value, final String... labels) throws IllegalArgumentException {
+        family.set(labels, value);
+    }
+
+    @Override
+    public void remove(final String... labels) throws IllegalArgumentException {
+        family.remove(labels);
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return LabelledFamily.encode(compute());
+    }
+}
@@ -0,0 +1,188 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Distinct counting based on the HyperLogLog algorithm by Flajolet, Fusy, Gandouet and Meunier.
+ * <p>
+ * Every register is a single byte, updated lock-free.
+ * The registers are submitted alongside the estimate, so the metrics server can merge them across servers.
+ * Requesting the data swaps in empty registers, so values added while a submission is in flight
+ * are counted in the next one, even if they were part of the submitted ones already.
+ * Until the submission is flushed, the swapped out registers are still included in the estimate,
+ * and in the next submission should the current one fail.
+ */
+final class HyperLogLogMetric extends SimpleMetric<Long> implements DistinctCountMetric {
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    private static final VarHandle REGISTER = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final Registers registers;
+
+    public HyperLogLogMetric(@SourceId final String id, final int precision) throws IllegalArgumentException {
+        this(id, new Registers(precision));
+    }
+
+    private HyperLogLogMetric(@SourceId final String id, final Registers registers) throws IllegalArgumentException {
+        super(id, () -> Registers.estimate(registers.snapshot()));
+        this.registers = registers;
+    }
+
+    @Override
+    public void add(final String value) {
+        var hash = 0xcbf29ce484222325L;
+        for (var i = 0; i < value.length(); i++) hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        registers.add(mix(hash));
+    }
+
+    @Override
+    public void add(final UUID value) {
+        registers.add(mix(value.getMostSignificantBits() ^ mix(value.getLeastSignificantBits())));
+    }
+
+    @Override
+    public void add(final long value) {
+        registers.add(mix(value));
+    }
+
+    /**
+     * Spreads the bits of a value over the whole hash, using the finalization mix of MurmurHash3.
+     * <p>
+     * The value is offset first, so small values such as {@code 0} do not end up in the first register.
+     */
+    private static long mix(final long value) {
+        var k = value + 0x9e3779b97f4a7c15L;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        final var snapshot = registers.swap();
+        final var object = new JsonObject();
+        object.addProperty("estimate", Registers.estimate(snapshot));
+        object.addProperty("precision", registers.precision);
+        object.addProperty("registers", Base64.getEncoder().encodeToString(snapshot));
+        return Optional.of(object);
+    }
+
+    @Override
+    public void onFlush() {
+        registers.flush();
+    }
+
+    private static final class Registers {
+        private final int precision;
+
+        private volatile byte[] active;
+        private @Nullable Submission submitted = null;
+
+        private Registers(final int precision) throws IllegalArgumentException {
+            if (precision < MIN_PRECISION || precision > MAX_PRECISION) throw new IllegalArgumentException(
+                    "Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+            this.active = new byte[1 << precision];
+            this.precision = precision;
+        }
+
+        private void add(final long hash) {
+            final var index = (int) (hash >>> (Long.SIZE - precision));
+            final var rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+            raise(active, index, rank);
+        }
+
+        private static void raise(final byte[] registers, final int index, final byte rank) {
+            var current = (byte) REGISTER.getVolatile(registers, index);
+            while (current < rank) {
+                final var witness = (byte) REGISTER.compareAndExchange(registers, index, current, rank);
+                if (witness == current) return;
+                current = witness;
+            }
+        }
+
+        private static Long estimate(final byte[] registers) {
+            final var m = registers.length;
+            var sum = 0d;
+            var zeros = 0;
+            for (var i = 0; i < m; i++) {
+                final var register = registers[i];
+                sum += 1d / (1L << register);
+                if (register == 0) zeros++;
+            }
+            final var estimate = alpha(m) * m * m / sum;
+            if (estimate <= 2.5 * m && zeros > 0) return Math.round(m * Math.log((double) m / zeros));
+            return Math.round(estimate);
+        }
+
+        private static byte[] read(final byte[] registers) {
+            final var snapshot = new byte[registers.length];
+            for (var i = 0; i < snapshot.length; i++) snapshot[i] = (byte) REGISTER.getVolatile(registers, i);
+            return snapshot;
+        }
+
+        /**
+         * Reads the active registers, merged with the submitted ones that were not flushed yet.
+         */
+        private synchronized byte[] snapshot() {
+            final var snapshot = read(active);
+            final var submitted = this.submitted;
+            if (submitted != null) for (var i = 0; i < snapshot.length; i++) {
+                snapshot[i] = (byte) Math.max(snapshot[i], (byte) REGISTER.getVolatile(submitted.registers(), i));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Swaps in empty registers and returns the swapped out ones,
+         * merged with the previously submitted ones if they were not flushed.
+         */
+        private synchronized byte[] swap() {
+            final var swapped = active;
+            active = new byte[swapped.length];
+            final var previous = submitted;
+            if (previous != null) for (var i = 0; i < swapped.length; i++) {
+                raise(swapped, i, (byte) REGISTER.getVolatile(previous.registers(), i));
+            }
+            final var snapshot = read(swapped);
+            submitted = new Submission(swapped, snapshot);
+            return snapshot;
+        }
+
+        /**
+         * Drops the submitted registers, moving values that were added to them after they were read to the active ones.
+         */
+        private synchronized void flush() {
+            final var submitted = this.submitted;
+            if (submitted == null) return;
+            this.submitted = null;
+            for (var i = 0; i < submitted.snapshot().length; i++) {
+                final var register = (byte) REGISTER.getVolatile(submitted.registers(), i);
+                if (register > submitted.snapshot()[i]) raise(active, i, register);
+            }
+        }
+
+        private static double alpha(final int m) {
+            return switch (m) {
+                case 16 -> 0.673;
+                case 32 -> 0.697;
+                case 64 -> 0.709;
+                default -> 0.7213 / (1 + 1.079 / m);
+            };
+        }
+
+        private record Submission(byte[] registers, byte[] snapshot) {
+        }
+    }
+}
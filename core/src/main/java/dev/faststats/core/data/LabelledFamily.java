@@ -0,0 +1,194 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The shared state of counter and gauge families.
+ * <p>
+ * Label tuples are stored once per distinct combination in a concurrent map,
+ * which stripes updates to different combinations across bins.
+ * Every combination reserves a slot before it is inserted, so concurrent insertions never exceed the cardinality limit.
+ * Once the limit is reached, new combinations are merged into the {@link #OVERFLOW} combination,
+ * which does not take up a slot.
+ * Idle combinations can be {@linkplain #evict(Predicate) evicted} to free their slots again.
+ *
+ * @param <S> the per-combination state type
+ * @param <V> the value type
+ */
+final class LabelledFamily<S, V extends Number> {
+    static final String OVERFLOW = "_other";
+
+    private final Map<Labels, S> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger slots = new AtomicInteger();
+    private final Function<S, @Nullable V> reader;
+    private final Labels overflow;
+    private final int labels;
+    private final int maxCardinality;
+
+    LabelledFamily(final int labels, final int maxCardinality, final Function<S, @Nullable V> reader) throws IllegalArgumentException {
+        if (labels < 1) throw new IllegalArgumentException("Label count must be positive: " + labels);
+        if (maxCardinality < 1) throw new IllegalArgumentException("Cardinality limit must be positive: " + maxCardinality);
+        final var overflow = new String[labels];
+        Arrays.fill(overflow, OVERFLOW);
+        this.overflow = new Labels(overflow);
+        this.labels = labels;
+        this.maxCardinality = maxCardinality;
+        this.reader = reader;
+    }
+
+    /**
+     * Applies the given update to the state of the given label combination, creating it if necessary.
+     * <p>
+     * If the state was {@linkplain #evict(Predicate) evicted} concurrently,
+     * the update is applied again to the state that replaced it.
+     *
+     * @param labels  the label values
+     * @param factory the factory creating the state of a new combination
+     * @param update  the update
+     * @throws IllegalArgumentException if the number of labels does not match
+     */
+    void update(final String[] labels, final Function<Labels, S> factory, final Consumer<S> update) throws IllegalArgumentException {
+        final var key = key(labels);
+        S state;
+        do {
+            state = get(key, factory);
+            update.accept(state);
+        } while (entries.get(key) != state && entries.get(overflow) != state);
+    }
+
+    private S get(final Labels key, final Function<Labels, S> factory) {
+        final var state = entries.get(key);
+        if (state != null) return state;
+        if (key.equals(overflow) || !reserve()) return entries.computeIfAbsent(overflow, factory);
+
+        final var created = new boolean[1];
+        final var result = entries.computeIfAbsent(key.copy(), copy -> {
+            created[0] = true;
+            return factory.apply(copy);
+        });
+        if (!created[0]) slots.decrementAndGet();
+        return result;
+    }
+
+    void set(final String[] labels, final S state) throws IllegalArgumentException {
+        final var key = key(labels);
+        if (entries.replace(key, state) != null) return;
+        if (key.equals(overflow) || !reserve()) entries.put(overflow, state);
+        else if (entries.put(key.copy(), state) != null) slots.decrementAndGet();
+    }
+
+    void remove(final String[] labels) throws IllegalArgumentException {
+        final var key = key(labels);
+        if (entries.remove(key) != null && !key.equals(overflow)) slots.decrementAndGet();
+    }
+
+    private boolean reserve() {
+        if (slots.incrementAndGet() <= maxCardinality) return true;
+        slots.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Removes the label combinations whose state is idle, freeing their slots.
+     * <p>
+     * A state is only removed if it is still mapped to its combination,
+     * and updates that race with the removal are applied again by {@link #update(String[], Function, Consumer)}.
+     *
+     * @param idle whether a state is idle
+     */
+    void evict(final Predicate<S> idle) {
+        entries.forEach((key, state) -> {
+            if (idle.test(state) && entries.remove(key, state) && !key.equals(overflow)) slots.decrementAndGet();
+        });
+    }
+
+    /**
+     * Performs the given action for the state of every label combination of the given values that still exists.
+     *
+     * @param values the values by label combination, as created by {@link #snapshot()}
+     * @param action the action
+     */
+    void forEach(final Map<List<String>, V> values, final BiConsumer<S, V> action) {
+        values.forEach((labels, value) -> {
+            final var state = entries.get(new Labels(labels.toArray(String[]::new)));
+            if (state != null) action.accept(state, value);
+        });
+    }
+
+    @Nullable Map<List<String>, V> snapshot() {
+        final var snapshot = new LinkedHashMap<List<String>, V>(entries.size());
+        entries.forEach((key, state) -> {
+            final var value = reader.apply(state);
+            if (value != null) snapshot.put(key.list(), value);
+        });
+        return snapshot.isEmpty() ? null : snapshot;
+    }
+
+    static <V extends Number> Optional<JsonElement> encode(final Optional<Map<List<String>, V>> snapshot) {
+        return snapshot.map(values -> {
+            final var root = new JsonObject();
+            values.forEach((labels, value) -> {
+                var parent = root;
+                for (var i = 0; i < labels.size() - 1; i++) {
+                    final var label = labels.get(i);
+                    var child = parent.getAsJsonObject(label);
+                    if (child == null) parent.add(label, child = new JsonObject());
+                    parent = child;
+                }
+                parent.addProperty(labels.get(labels.size() - 1), value);
+            });
+            return root;
+        });
+    }
+
+    private Labels key(final String[] labels) throws IllegalArgumentException {
+        if (labels.length != this.labels) throw new IllegalArgumentException(
+                "Expected " + this.labels + " labels but got " + labels.length + ": " + Arrays.toString(labels));
+        return new Labels(labels);
+    }
+
+    static final class Labels {
+        private final String[] values;
+        private final int hash;
+
+        private Labels(final String[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        /**
+         * Creates the copy of this key that is stored in the map, detached from the caller's array.
+         */
+        private Labels copy() {
+            return new Labels(values.clone());
+        }
+
+        private List<String> list() {
+            return List.of(values);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof final Labels that && hash == that.hash && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
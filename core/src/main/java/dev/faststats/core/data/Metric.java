@@ -4,8 +4,15 @@ import com.google.gson.JsonElement;
 import org.jetbrains.annotations.Contract;
 import org.jspecify.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * A metric.
@@ -48,6 +55,42 @@ public interface Metric<T> {
     @Contract(pure = true)
     Optional<JsonElement> getData() throws Exception;
 
+    /**
+     * Get the metric data as a JSON element without blocking.
+     * <p>
+     * The metrics submission requests the data of all metrics at once
+     * and waits for the returned stages to complete without parking a thread.
+     * <p>
+     * <i>Completes immediately with the result of {@link #getData()} in most implementations.</i>
+     *
+     * @return a future completing with an optional containing the metric data as {@link JsonElement}
+     * @implSpec The implementation must follow the same thread-safety and pureness requirements as {@link #getData()}.
+     * @see #getData()
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    default CompletableFuture<Optional<JsonElement>> getDataAsync() {
+        try {
+            return CompletableFuture.completedFuture(getData());
+        } catch (final Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Invoked once the metric data has been submitted to, and accepted by, the metrics server.
+     * <p>
+     * Metrics that aggregate data over a submission period remove the submitted data from their state here,
+     * keeping whatever was recorded after the submitted data was {@linkplain #getData() requested}.
+     * <p>
+     * <i>No-op in most implementations.</i>
+     *
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    default void onFlush() {
+    }
+
     /**
      * Create a string array metric.
      *
@@ -96,6 +139,342 @@ public interface Metric<T> {
         return new ArrayMetric<>(id, callable);
     }
 
+    /**
+     * Create a number array metric from an {@code int} array.
+     * <p>
+     * The values are read from the array directly, without copying it into an {@code Integer[]} first.
+     *
+     * @param id       the source id
+     * @param callable the metric data callable
+     * @return the number array metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The callable must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #compute()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static Metric<int[]> intArray(@SourceId final String id, final Callable<int @Nullable []> callable) throws IllegalArgumentException {
+        return StreamingArrayMetric.ofInts(id, callable);
+    }
+
+    /**
+     * Create a number array metric from a {@code long} array.
+     * <p>
+     * The values are read from the array directly, without copying it into an {@code Long[]} first.
+     *
+     * @param id       the source id
+     * @param callable the metric data callable
+     * @return the number array metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The callable must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #compute()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static Metric<long[]> longArray(@SourceId final String id, final Callable<long @Nullable []> callable) throws IllegalArgumentException {
+        return StreamingArrayMetric.ofLongs(id, callable);
+    }
+
+    /**
+     * Create a number array metric from a {@code double} array.
+     * <p>
+     * The values are read from the array directly, without copying it into an {@code Double[]} first.
+     *
+     * @param id       the source id
+     * @param callable the metric data callable
+     * @return the number array metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The callable must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #compute()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static Metric<double[]> doubleArray(@SourceId final String id, final Callable<double @Nullable []> callable) throws IllegalArgumentException {
+        return StreamingArrayMetric.ofDoubles(id, callable);
+    }
+
+    /**
+     * Create an array metric that is lazily fed from an {@link Iterable}.
+     * <p>
+     * Elements are added to the submitted array as they are iterated, without collecting them into a list first.
+     * Booleans and numbers are submitted as they are, {@code null} elements as JSON {@code null},
+     * and every other element is submitted as its string representation.
+     *
+     * @param id       the source id
+     * @param callable the metric data callable
+     * @param <E>      the element type
+     * @return the array metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The callable must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #compute()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static <E> Metric<Iterable<E>> iterable(@SourceId final String id, final Callable<@Nullable Iterable<E>> callable) throws IllegalArgumentException {
+        return StreamingArrayMetric.ofIterable(id, callable);
+    }
+
+    /**
+     * Create an array metric that is lazily fed from a {@link Stream}.
+     * <p>
+     * Elements are added to the submitted array as they are produced, without collecting them into a list first.
+     * The stream is closed once it has been consumed.
+     * Booleans and numbers are submitted as they are, {@code null} elements as JSON {@code null},
+     * and every other element is submitted as its string representation.
+     *
+     * @param id       the source id
+     * @param callable the metric data callable, returning a new stream on every call
+     * @param <E>      the element type
+     * @return the array metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The callable must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #compute()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static <E> Metric<Stream<E>> stream(@SourceId final String id, final Callable<@Nullable Stream<E>> callable) throws IllegalArgumentException {
+        return StreamingArrayMetric.ofStream(id, callable);
+    }
+
+    /**
+     * Create a metric that tracks the most frequent strings, such as commands, worlds or game modes.
+     * <p>
+     * The frequencies are estimated using a fixed amount of memory, regardless of how many distinct strings are seen.
+     * The tracker keeps {@code k * 8} counters.
+     *
+     * @param id the source id
+     * @param k  the number of most frequent strings to submit
+     * @return the top-k metric
+     * @throws IllegalArgumentException if the source id is invalid or {@code k} is not positive
+     * @see #topK(String, int, int)
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static TopKMetric topK(@SourceId final String id, final int k) throws IllegalArgumentException {
+        return topK(id, k, Math.multiplyExact(k, 8));
+    }
+
+    /**
+     * Create a metric that tracks the most frequent strings, such as commands, worlds or game modes.
+     * <p>
+     * The frequencies are estimated using a fixed number of counters.
+     * Every string that accounts for more than {@code 1 / capacity} of all increments is guaranteed to be tracked,
+     * and its count is overestimated by at most {@code total / capacity}.
+     *
+     * @param id       the source id
+     * @param k        the number of most frequent strings to submit
+     * @param capacity the number of counters to keep
+     * @return the top-k metric
+     * @throws IllegalArgumentException if the source id is invalid, {@code k} is not positive or the capacity is less than {@code k}
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _, _ -> new", pure = true)
+    static TopKMetric topK(@SourceId final String id, final int k, final int capacity) throws IllegalArgumentException {
+        return new SpaceSavingMetric(id, k, capacity);
+    }
+
+    /**
+     * Create a metric that estimates the number of distinct values, such as unique players.
+     * <p>
+     * The estimate has a standard error of about 3.2% and uses 1 KiB of memory.
+     *
+     * @param id the source id
+     * @return the distinct count metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @see #distinctCount(String, int)
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static DistinctCountMetric distinctCount(@SourceId final String id) throws IllegalArgumentException {
+        return distinctCount(id, 10);
+    }
+
+    /**
+     * Create a metric that estimates the number of distinct values, such as unique players.
+     * <p>
+     * A precision of {@code p} uses {@code 2^p} bytes of memory and results in a standard error of
+     * about {@code 1.04 / sqrt(2^p)}.
+     *
+     * @param id        the source id
+     * @param precision the precision, between {@code 4} and {@code 16}
+     * @return the distinct count metric
+     * @throws IllegalArgumentException if the source id or precision is invalid
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static DistinctCountMetric distinctCount(@SourceId final String id, final int precision) throws IllegalArgumentException {
+        return new HyperLogLogMetric(id, precision);
+    }
+
+    /**
+     * Create a metric that tracks the distribution of values, such as timings or packet sizes.
+     * <p>
+     * Quantile estimates are within 1% of the true value.
+     *
+     * @param id the source id
+     * @return the quantile metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @see #quantiles(String, double)
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static QuantileMetric quantiles(@SourceId final String id) throws IllegalArgumentException {
+        return quantiles(id, 0.01);
+    }
+
+    /**
+     * Create a metric that tracks the distribution of values, such as timings or packet sizes.
+     * <p>
+     * Quantile estimates are within the given relative accuracy of the true value,
+     * as long as the recorded values span less than a factor of {@code ((1 + a) / (1 - a))^2048}.
+     * Beyond that, the estimates for the lowest quantiles degrade first.
+     *
+     * @param id               the source id
+     * @param relativeAccuracy the relative accuracy, between {@code 0} and {@code 1} (exclusive)
+     * @return the quantile metric
+     * @throws IllegalArgumentException if the source id or relative accuracy is invalid
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static QuantileMetric quantiles(@SourceId final String id, final double relativeAccuracy) throws IllegalArgumentException {
+        return new DDSketchMetric(id, relativeAccuracy);
+    }
+
+    /**
+     * Create a family of counters, broken down by the given number of labels.
+     * <p>
+     * The family tracks up to 100 distinct label combinations.
+     *
+     * @param id     the source id
+     * @param labels the number of labels per combination
+     * @return the counter family
+     * @throws IllegalArgumentException if the source id is invalid or the label count is not positive
+     * @see #counterFamily(String, int, int)
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static CounterFamily counterFamily(@SourceId final String id, final int labels) throws IllegalArgumentException {
+        return counterFamily(id, labels, 100);
+    }
+
+    /**
+     * Create a family of counters, broken down by the given number of labels.
+     *
+     * @param id             the source id
+     * @param labels         the number of labels per combination
+     * @param maxCardinality the maximum number of distinct label combinations
+     * @return the counter family
+     * @throws IllegalArgumentException if the source id is invalid or the label count or cardinality limit is not positive
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _, _ -> new", pure = true)
+    static CounterFamily counterFamily(@SourceId final String id, final int labels, final int maxCardinality) throws IllegalArgumentException {
+        return new CounterFamilyMetric(id, labels, maxCardinality);
+    }
+
+    /**
+     * Create a family of gauges, broken down by the given number of labels.
+     * <p>
+     * The family tracks up to 100 distinct label combinations.
+     *
+     * @param id     the source id
+     * @param labels the number of labels per combination
+     * @return the gauge family
+     * @throws IllegalArgumentException if the source id is invalid or the label count is not positive
+     * @see #gaugeFamily(String, int, int)
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static GaugeFamily gaugeFamily(@SourceId final String id, final int labels) throws IllegalArgumentException {
+        return gaugeFamily(id, labels, 100);
+    }
+
+    /**
+     * Create a family of gauges, broken down by the given number of labels.
+     *
+     * @param id             the source id
+     * @param labels         the number of labels per combination
+     * @param maxCardinality the maximum number of distinct label combinations
+     * @return the gauge family
+     * @throws IllegalArgumentException if the source id is invalid or the label count or cardinality limit is not positive
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _, _ -> new", pure = true)
+    static GaugeFamily gaugeFamily(@SourceId final String id, final int labels, final int maxCardinality) throws IllegalArgumentException {
+        return new GaugeFamilyMetric(id, labels, maxCardinality);
+    }
+
+    /**
+     * Create a metric that measures the rate of events.
+     *
+     * @param id the source id
+     * @return the rate metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @since 0.23.0
+     */
+    @Contract(value = "_ -> new", pure = true)
+    static RateMetric rate(@SourceId final String id) throws IllegalArgumentException {
+        return new EwmaRateMetric(id);
+    }
+
+    /**
+     * Create a metric that caches the data of an expensive metric and refreshes it in the background.
+     * <p>
+     * Refreshes run on the {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @param metric the metric to cache
+     * @param ttl    the time after which the cached data is refreshed
+     * @param <T>    the metric data type
+     * @return the cached metric
+     * @throws IllegalArgumentException if the time-to-live is negative or the metric {@linkplain #onFlush() aggregates} data
+     * @see #cached(Metric, Duration, Executor)
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new")
+    static <T> CachedMetric<T> cached(final Metric<T> metric, final Duration ttl) throws IllegalArgumentException {
+        return cached(metric, ttl, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a metric that caches the data of an expensive metric and refreshes it in the background.
+     * <p>
+     * The first refresh is started once the data is first requested, further refreshes are scheduled on the executor
+     * every time the time-to-live elapsed since the previous refresh, until the metric is {@linkplain CachedMetric#close() closed}.
+     *
+     * @param metric   the metric to cache
+     * @param ttl      the time after which the cached data is refreshed
+     * @param executor the executor to run refreshes on
+     * @param <T>      the metric data type
+     * @return the cached metric
+     * @throws IllegalArgumentException if the time-to-live is negative or the metric {@linkplain #onFlush() aggregates} data
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _, _ -> new")
+    static <T> CachedMetric<T> cached(final Metric<T> metric, final Duration ttl, final Executor executor) throws IllegalArgumentException {
+        return new RefreshingMetric<>(metric, ttl, executor);
+    }
+
+    /**
+     * Create a metric for a value that is computed asynchronously, for example by an asynchronous database driver.
+     * <p>
+     * The supplier is invoked for every submission, and the submission does not block while waiting for the result.
+     * Booleans and numbers are submitted as they are, every other value is submitted as its string representation.
+     * If the returned stage does not complete in time, the metric is omitted from the submission.
+     *
+     * @param id       the source id
+     * @param supplier the metric data supplier, returning a new stage on every call
+     * @param <T>      the metric data type
+     * @return the asynchronous metric
+     * @throws IllegalArgumentException if the source id is invalid
+     * @apiNote The supplier must be thread-safe and pure (i.e. not modify any shared state).
+     * @see #getDataAsync()
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static <T> Metric<T> async(@SourceId final String id, final Supplier<? extends CompletionStage<@Nullable T>> supplier) throws IllegalArgumentException {
+        return new AsyncMetric<>(id, supplier);
+    }
+
     /**
      * Create a metric for a boolean value.
      *
@@ -0,0 +1,110 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * A group of metrics that are derived from a single snapshot.
+ * <p>
+ * The snapshot is produced once per submission and then fanned out into the individual metrics of the group,
+ * which are submitted as if they were registered separately.
+ * This avoids repeating an expensive computation, such as a world scan, for every metric derived from it.
+ * <pre>{@code
+ * record WorldScan(int entities, int tiles, int chunks) {
+ * }
+ *
+ * final var group = MetricGroup.builder("world_scan", () -> scanWorlds())
+ *         .number("entity_count", WorldScan::entities)
+ *         .number("tile_count", WorldScan::tiles)
+ *         .number("chunk_count", WorldScan::chunks)
+ *         .build();
+ * }</pre>
+ * A group is registered like any other metric, using {@link dev.faststats.core.Metrics.Factory#addMetric(Metric)}.
+ *
+ * @param <T> the snapshot type
+ * @since 0.23.0
+ */
+public sealed interface MetricGroup<T> extends Metric<T> permits SimpleMetricGroup {
+    /**
+     * Creates a new metric group builder.
+     *
+     * @param id       the id of the group, used to identify the group in logs
+     * @param producer the snapshot producer
+     * @param <T>      the snapshot type
+     * @return the metric group builder
+     * @throws IllegalArgumentException if the group id is invalid
+     * @apiNote The producer must be thread-safe and pure (i.e. not modify any shared state).
+     * @since 0.23.0
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    static <T> Builder<T> builder(@SourceId final String id, final Callable<@Nullable T> producer) throws IllegalArgumentException {
+        return new SimpleMetricGroup.Builder<>(id, producer);
+    }
+
+    /**
+     * Get the source ids of the metrics in this group.
+     *
+     * @return the source ids
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    Set<String> getIds();
+
+    /**
+     * A metric group builder.
+     *
+     * @param <T> the snapshot type
+     * @since 0.23.0
+     */
+    interface Builder<T> {
+        /**
+         * Adds a number metric derived from the snapshot.
+         *
+         * @param id    the source id
+         * @param field the function deriving the value from the snapshot
+         * @return the metric group builder
+         * @throws IllegalArgumentException if the source id is invalid or already added
+         * @since 0.23.0
+         */
+        @Contract(value = "_, _ -> this", mutates = "this")
+        Builder<T> number(@SourceId String id, Function<T, @Nullable Number> field) throws IllegalArgumentException;
+
+        /**
+         * Adds a string metric derived from the snapshot.
+         *
+         * @param id    the source id
+         * @param field the function deriving the value from the snapshot
+         * @return the metric group builder
+         * @throws IllegalArgumentException if the source id is invalid or already added
+         * @since 0.23.0
+         */
+        @Contract(value = "_, _ -> this", mutates = "this")
+        Builder<T> string(@SourceId String id, Function<T, @Nullable String> field) throws IllegalArgumentException;
+
+        /**
+         * Adds a boolean metric derived from the snapshot.
+         *
+         * @param id    the source id
+         * @param field the function deriving the value from the snapshot
+         * @return the metric group builder
+         * @throws IllegalArgumentException if the source id is invalid or already added
+         * @since 0.23.0
+         */
+        @Contract(value = "_, _ -> this", mutates = "this")
+        Builder<T> bool(@SourceId String id, Function<T, @Nullable Boolean> field) throws IllegalArgumentException;
+
+        /**
+         * Creates the metric group.
+         *
+         * @return the metric group
+         * @throws IllegalStateException if no metrics were added
+         * @since 0.23.0
+         */
+        @Contract(value = " -> new", pure = true)
+        MetricGroup<T> build() throws IllegalStateException;
+    }
+}
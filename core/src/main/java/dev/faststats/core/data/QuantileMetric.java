@@ -0,0 +1,47 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.Map;
+
+/**
+ * A metric that tracks the distribution of values with unknown ranges, such as timings or packet sizes.
+ * <p>
+ * The values are summarized in a sketch with a bounded relative error and a fixed amount of memory.
+ * The sketch is submitted as a whole, so the metrics server can merge the sketches of many servers
+ * and compute percentiles across all of them.
+ * <p>
+ * The submitted data is the encoded sketch:
+ * <pre>{@code
+ * {"relative_accuracy":0.01,"count":3,"sum":42.0,"min":2.0,"max":30.0,"zero_count":0,"offset":35,"bins":[1,0,1,...]}
+ * }</pre>
+ * where {@code bins} holds the counts of consecutive bins starting at the key {@code offset}.
+ * {@link #compute()} maps the quantiles {@code 0.5}, {@code 0.9}, {@code 0.95} and {@code 0.99}
+ * to their estimated values instead.
+ * The submitted values are removed from the sketch once the metrics have been submitted to, and accepted by, the metrics server.
+ *
+ * @see Metric#quantiles(String)
+ * @since 0.23.0
+ */
+public sealed interface QuantileMetric extends Metric<Map<Double, Double>> permits DDSketchMetric {
+    /**
+     * Records a value.
+     *
+     * @param value the value
+     * @throws IllegalArgumentException if the value is negative or not a number
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void record(double value) throws IllegalArgumentException;
+
+    /**
+     * Estimates the value at the given quantile.
+     *
+     * @param quantile the quantile, between {@code 0} and {@code 1}
+     * @return the estimated value, or {@link Double#NaN} if no values were recorded
+     * @throws IllegalArgumentException if the quantile is out of range
+     * @since 0.23.0
+     */
+    @Contract(pure = true)
+    double quantile(double quantile) throws IllegalArgumentException;
+}
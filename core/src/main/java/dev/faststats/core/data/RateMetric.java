@@ -0,0 +1,64 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.Map;
+
+/**
+ * A metric that measures the rate of events, such as chat messages or block breaks per second.
+ * <p>
+ * The rates are exponentially weighted moving averages over one, five and fifteen minutes,
+ * so short bursts remain visible, unlike a plain counter averaged over the submission period.
+ * <p>
+ * The metric data contains the total number of events since the last submission ({@code count})
+ * and the moving averages in events per second ({@code m1_rate}, {@code m5_rate} and {@code m15_rate}).
+ * The submitted total is subtracted once the metrics have been submitted to, and accepted by, the metrics server.
+ *
+ * @see Metric#rate(String)
+ * @since 0.23.0
+ */
+public sealed interface RateMetric extends Metric<Map<String, Number>> permits EwmaRateMetric {
+    /**
+     * Records a single event.
+     *
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    default void mark() {
+        mark(1);
+    }
+
+    /**
+     * Records the given number of events.
+     *
+     * @param events the number of events
+     * @throws IllegalArgumentException if the number of events is negative
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void mark(long events) throws IllegalArgumentException;
+
+    /**
+     * Get the one-minute moving average rate.
+     *
+     * @return the rate in events per second
+     * @since 0.23.0
+     */
+    double getOneMinuteRate();
+
+    /**
+     * Get the five-minute moving average rate.
+     *
+     * @return the rate in events per second
+     * @since 0.23.0
+     */
+    double getFiveMinuteRate();
+
+    /**
+     * Get the fifteen-minute moving average rate.
+     *
+     * @return the rate in events per second
+     * @since 0.23.0
+     */
+    double getFifteenMinuteRate();
+}
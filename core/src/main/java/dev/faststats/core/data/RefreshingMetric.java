@@ -0,0 +1,149 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class RefreshingMetric<T> implements CachedMetric<T> {
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final WeakReference<RefreshingMetric<T>> reference = new WeakReference<>(this);
+    private final Metric<T> metric;
+    private final Executor executor;
+    private final long ttl;
+
+    private volatile @Nullable Snapshot snapshot = null;
+    private volatile @Nullable Exception failure = null;
+    private volatile @Nullable Future<?> pending = null;
+    private volatile boolean closed = false;
+
+    public RefreshingMetric(final Metric<T> metric, final Duration ttl, final Executor executor) throws IllegalArgumentException {
+        if (ttl.isNegative()) throw new IllegalArgumentException("TTL must not be negative: " + ttl);
+        if (isAggregating(metric)) throw new IllegalArgumentException("Aggregating metric cannot be cached: " + metric.getId());
+        this.metric = metric;
+        this.executor = executor;
+        this.ttl = ttl.toNanos();
+    }
+
+    /**
+     * Whether the metric aggregates data over a submission period, which is the case if it overrides {@link Metric#onFlush()}.
+     * <p>
+     * Refreshing such a metric in the background would request its data outside a submission,
+     * so the data flushed after a submission would no longer match the submitted data.
+     */
+    private static boolean isAggregating(final Metric<?> metric) {
+        try {
+            return metric.getClass().getMethod("onFlush").getDeclaringClass() != Metric.class;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public @SourceId String getId() {
+        return metric.getId();
+    }
+
+    @Override
+    public Optional<T> compute() throws Exception {
+        return metric.compute();
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        final var cached = this.snapshot;
+        if (!closed && (cached == null || System.nanoTime() - cached.timestamp() > ttl)) refresh();
+        final var snapshot = this.snapshot;
+        if (snapshot != null) return snapshot.data();
+
+        final var failure = this.failure;
+        if (failure != null) throw failure;
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> getAge() {
+        return Optional.ofNullable(snapshot).map(snapshot -> Duration.ofNanos(System.nanoTime() - snapshot.timestamp()));
+    }
+
+    @Override
+    public void refresh() {
+        if (closed || !refreshing.compareAndSet(false, true)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    if (closed) return;
+                    final var data = metric.getData();
+                    this.snapshot = new Snapshot(data, System.nanoTime());
+                    this.failure = null;
+                } catch (final Exception e) {
+                    this.failure = e;
+                } finally {
+                    refreshing.set(false);
+                    scheduleRefresh();
+                }
+            });
+        } catch (final RuntimeException e) {
+            refreshing.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Schedules the next refresh once the time-to-live elapsed, unless one is already scheduled.
+     * <p>
+     * The scheduled refresh only weakly references this metric, so metrics that are no longer used stop refreshing,
+     * and is cancelled once the metric is {@linkplain #close() closed}.
+     */
+    private void scheduleRefresh() {
+        if (ttl == 0 || closed || !scheduled.compareAndSet(false, true)) return;
+        final var reference = this.reference;
+        final var pending = CompletableFuture.runAsync(() -> {
+            final var metric = reference.get();
+            if (metric == null) return;
+            metric.scheduled.set(false);
+            metric.refresh();
+        }, CompletableFuture.delayedExecutor(ttl, TimeUnit.NANOSECONDS, executor));
+        this.pending = pending;
+        if (closed) pending.cancel(false);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final var pending = this.pending;
+        if (pending != null) pending.cancel(false);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        final RefreshingMetric<?> that = (RefreshingMetric<?>) o;
+        return Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshingMetric{" +
+                "metric=" + metric +
+                ", ttl=" + Duration.ofNanos(ttl) +
+                '}';
+    }
+
+    private record Snapshot(Optional<JsonElement> data, long timestamp) {
+    }
+}
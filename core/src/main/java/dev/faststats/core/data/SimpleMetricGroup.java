@@ -0,0 +1,82 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+final class SimpleMetricGroup<T> extends SimpleMetric<T> implements MetricGroup<T> {
+    private final Map<String, Function<T, ?>> fields;
+
+    private SimpleMetricGroup(@SourceId final String id, final Callable<@Nullable T> producer, final Map<String, Function<T, ?>> fields) throws IllegalArgumentException {
+        super(id, producer);
+        this.fields = fields;
+    }
+
+    @Override
+    public Set<String> getIds() {
+        return fields.keySet();
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return compute().map(snapshot -> {
+            final var object = new JsonObject();
+            fields.forEach((id, field) -> {
+                final var value = field.apply(snapshot);
+                if (value != null) object.add(id, SingleValueMetric.encode(value));
+            });
+            return object;
+        });
+    }
+
+    static final class Builder<T> implements MetricGroup.Builder<T> {
+        private final Map<String, Function<T, ?>> fields = new LinkedHashMap<>();
+        private final @SourceId String id;
+        private final Callable<@Nullable T> producer;
+
+        Builder(@SourceId final String id, final Callable<@Nullable T> producer) throws IllegalArgumentException {
+            if (!id.matches(SourceId.PATTERN)) {
+                throw new IllegalArgumentException("Invalid source id '" + id + "', must match '" + SourceId.PATTERN + "'");
+            }
+            this.id = id;
+            this.producer = producer;
+        }
+
+        @Override
+        public Builder<T> number(@SourceId final String id, final Function<T, @Nullable Number> field) throws IllegalArgumentException {
+            return add(id, field);
+        }
+
+        @Override
+        public Builder<T> string(@SourceId final String id, final Function<T, @Nullable String> field) throws IllegalArgumentException {
+            return add(id, field);
+        }
+
+        @Override
+        public Builder<T> bool(@SourceId final String id, final Function<T, @Nullable Boolean> field) throws IllegalArgumentException {
+            return add(id, field);
+        }
+
+        private Builder<T> add(@SourceId final String id, final Function<T, ?> field) throws IllegalArgumentException {
+            if (!id.matches(SourceId.PATTERN)) {
+                throw new IllegalArgumentException("Invalid source id '" + id + "', must match '" + SourceId.PATTERN + "'");
+            }
+            if (fields.putIfAbsent(id, field) != null) throw new IllegalArgumentException("Metric already added: " + id);
+            return this;
+        }
+
+        @Override
+        public MetricGroup<T> build() throws IllegalStateException {
+            if (fields.isEmpty()) throw new IllegalStateException("Metric group must contain at least one metric");
+            return new SimpleMetricGroup<>(id, producer, Collections.unmodifiableMap(new LinkedHashMap<>(fields)));
+        }
+    }
+}
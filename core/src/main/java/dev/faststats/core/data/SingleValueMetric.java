@@ -14,10 +14,12 @@ final class SingleValueMetric<T> extends SimpleMetric<T> {
 
     @Override
     public Optional<JsonElement> getData() throws Exception {
-        return compute().map(data -> {
-            if (data instanceof final Boolean bool) return new JsonPrimitive(bool);
-            if (data instanceof final Number number) return new JsonPrimitive(number);
-            return new JsonPrimitive(data.toString());
-        });
+        return compute().map(SingleValueMetric::encode);
+    }
+
+    static JsonElement encode(final Object data) {
+        if (data instanceof final Boolean bool) return new JsonPrimitive(bool);
+        if (data instanceof final Number number) return new JsonPrimitive(number);
+        return new JsonPrimitive(data.toString());
     }
 }
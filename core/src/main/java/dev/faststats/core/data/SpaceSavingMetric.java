@@ -0,0 +1,162 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Top-k tracking based on the Space-Saving algorithm
+ * by Metwally, Agrawal and El Abbadi (<i>Efficient Computation of Frequent and Top-k Elements in Data Streams</i>).
+ */
+final class SpaceSavingMetric extends SimpleMetric<Map<String, Long>> implements TopKMetric {
+    private final AtomicReference<Map<String, Long>> submitted = new AtomicReference<>(Map.of());
+    private final Summary summary;
+
+    public SpaceSavingMetric(@SourceId final String id, final int k, final int capacity) throws IllegalArgumentException {
+        this(id, new Summary(k, capacity));
+    }
+
+    private SpaceSavingMetric(@SourceId final String id, final Summary summary) throws IllegalArgumentException {
+        super(id, summary::top);
+        this.summary = summary;
+    }
+
+    @Override
+    public void add(final String item, final long count) throws IllegalArgumentException {
+        if (count < 0) throw new IllegalArgumentException("Count must not be negative: " + count);
+        if (count > 0) summary.add(item, count);
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return compute().filter(top -> !top.isEmpty()).map(top -> {
+            submitted.set(top);
+            final var object = new JsonObject();
+            top.forEach(object::addProperty);
+            return object;
+        });
+    }
+
+    @Override
+    public void onFlush() {
+        summary.subtract(submitted.getAndSet(Map.of()));
+    }
+
+    /**
+     * The counters, kept in a min-heap so the least frequent one can be replaced in constant time.
+     */
+    private static final class Summary {
+        private final Map<String, Counter> counters;
+        private final Counter[] heap;
+        private final int k;
+        private int size = 0;
+
+        private Summary(final int k, final int capacity) throws IllegalArgumentException {
+            if (k < 1) throw new IllegalArgumentException("k must be positive: " + k);
+            if (capacity < k) throw new IllegalArgumentException("Capacity must be at least k: " + capacity + " < " + k);
+            this.counters = new HashMap<>(Math.min(capacity, 64));
+            this.heap = new Counter[capacity];
+            this.k = k;
+        }
+
+        private synchronized void add(final String item, final long count) {
+            final var counter = counters.get(item);
+            if (counter != null) {
+                counter.count += count;
+                siftDown(counter.index);
+            } else if (size < heap.length) {
+                final var created = new Counter(item, count, size);
+                heap[size++] = created;
+                counters.put(item, created);
+                siftUp(created.index);
+            } else {
+                final var min = heap[0];
+                counters.remove(min.item);
+                min.item = item;
+                min.count += count;
+                counters.put(item, min);
+                siftDown(0);
+            }
+        }
+
+        private synchronized Map<String, Long> top() {
+            final var sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted, Comparator.comparingLong((Counter counter) -> counter.count).reversed());
+            final var top = new LinkedHashMap<String, Long>(Math.min(k, size));
+            for (var i = 0; i < Math.min(k, size); i++) top.put(sorted[i].item, sorted[i].count);
+            return top;
+        }
+
+        /**
+         * Subtracts the submitted counts, removing the counters that drop to zero,
+         * so the counts added since the submission are kept.
+         */
+        private synchronized void subtract(final Map<String, Long> submitted) {
+            submitted.forEach((item, count) -> {
+                final var counter = counters.get(item);
+                if (counter == null) return;
+                counter.count -= count;
+                if (counter.count > 0) siftUp(counter.index);
+                else remove(counter);
+            });
+        }
+
+        private void remove(final Counter counter) {
+            counters.remove(counter.item);
+            final var last = heap[--size];
+            heap[size] = null;
+            if (last == counter) return;
+            place(last, counter.index);
+            siftUp(last.index);
+            siftDown(last.index);
+        }
+
+        private void siftUp(int index) {
+            final var counter = heap[index];
+            while (index > 0) {
+                final var parent = (index - 1) >>> 1;
+                if (heap[parent].count <= counter.count) break;
+                place(heap[parent], index);
+                index = parent;
+            }
+            place(counter, index);
+        }
+
+        private void siftDown(int index) {
+            final var counter = heap[index];
+            while (true) {
+                var child = 2 * index + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1].count < heap[child].count) child++;
+                if (counter.count <= heap[child].count) break;
+                place(heap[child], index);
+                index = child;
+            }
+            place(counter, index);
+        }
+
+        private void place(final Counter counter, final int index) {
+            heap[index] = counter;
+            counter.index = index;
+        }
+    }
+
+    private static final class Counter {
+        private String item;
+        private long count;
+        private int index;
+
+        private Counter(final String item, final long count, final int index) {
+            this.item = item;
+            this.count = count;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dev.faststats.core.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+final class StreamingArrayMetric<T> extends SimpleMetric<T> {
+    private final Encoder<T> encoder;
+
+    private StreamingArrayMetric(@SourceId final String id, final Callable<@Nullable T> callable, final Encoder<T> encoder) throws IllegalArgumentException {
+        super(id, callable);
+        this.encoder = encoder;
+    }
+
+    @Override
+    public Optional<JsonElement> getData() throws Exception {
+        return compute().map(data -> {
+            final var elements = new JsonArray();
+            encoder.encode(data, elements);
+            return elements;
+        });
+    }
+
+    static StreamingArrayMetric<int[]> ofInts(@SourceId final String id, final Callable<int @Nullable []> callable) throws IllegalArgumentException {
+        return new StreamingArrayMetric<>(id, callable, (data, elements) -> {
+            for (final var value : data) elements.add(value);
+        });
+    }
+
+    static StreamingArrayMetric<long[]> ofLongs(@SourceId final String id, final Callable<long @Nullable []> callable) throws IllegalArgumentException {
+        return new StreamingArrayMetric<>(id, callable, (data, elements) -> {
+            for (final var value : data) elements.add(value);
+        });
+    }
+
+    static StreamingArrayMetric<double[]> ofDoubles(@SourceId final String id, final Callable<double @Nullable []> callable) throws IllegalArgumentException {
+        return new StreamingArrayMetric<>(id, callable, (data, elements) -> {
+            for (final var value : data) elements.add(value);
+        });
+    }
+
+    static <E> StreamingArrayMetric<Iterable<E>> ofIterable(@SourceId final String id, final Callable<@Nullable Iterable<E>> callable) throws IllegalArgumentException {
+        return new StreamingArrayMetric<>(id, callable, (data, elements) -> {
+            for (final var element : data) ArrayMetric.add(elements, element);
+        });
+    }
+
+    static <E> StreamingArrayMetric<Stream<E>> ofStream(@SourceId final String id, final Callable<@Nullable Stream<E>> callable) throws IllegalArgumentException {
+        return new StreamingArrayMetric<>(id, callable, (data, elements) -> {
+            try (data) {
+                data.forEachOrdered(element -> ArrayMetric.add(elements, element));
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Encoder<T> {
+        void encode(T data, JsonArray elements);
+    }
+}
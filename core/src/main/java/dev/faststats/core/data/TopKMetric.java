@@ -0,0 +1,38 @@
+package dev.faststats.core.data;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.Map;
+
+/**
+ * A metric that tracks the most frequent strings.
+ * <p>
+ * The metric data maps the most frequent strings to their estimated counts, ordered from most to least frequent.
+ * The submitted counts are subtracted once the metrics have been submitted to, and accepted by, the metrics server.
+ *
+ * @see Metric#topK(String, int)
+ * @since 0.23.0
+ */
+public sealed interface TopKMetric extends Metric<Map<String, Long>> permits SpaceSavingMetric {
+    /**
+     * Increments the count of the given string by one.
+     *
+     * @param item the string
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    default void increment(final String item) {
+        add(item, 1);
+    }
+
+    /**
+     * Increments the count of the given string.
+     *
+     * @param item  the string
+     * @param count the amount to add
+     * @throws IllegalArgumentException if the count is negative
+     * @since 0.23.0
+     */
+    @Contract(mutates = "this")
+    void add(String item, long count) throws IllegalArgumentException;
+}
@@ -3,10 +3,14 @@ package dev.faststats;
 import dev.faststats.core.ErrorTracker;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletionException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -196,4 +200,36 @@ public class ErrorTrackerTest {
         if (i <= 0) throw new RuntimeException("out of stack");
         roundAndRound(i - 1);
     }
+
+    @Test
+    public void framesAreSharedAcrossReports() throws IOException {
+        final var tracker = ErrorTracker.contextUnaware();
+        try (final var collector = new MockCollector().header("X-FastStats-Accept-Error-Format", "frames")) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false,
+                    Set.of(), collector.getUrl(), false, false);
+
+            tracker.trackError("first");
+            assertTrue(mock.submit());
+            final var inline = collector.getPayloads().get(0);
+            assertFalse(inline.has("frames"));
+            assertTrue(inline.getAsJsonArray("errors").get(0).getAsJsonObject()
+                    .getAsJsonArray("stack").get(0).getAsString().startsWith("java.lang.RuntimeException"));
+
+            tracker.trackError("second");
+            tracker.trackError(new IllegalStateException("third"));
+            assertTrue(mock.submit());
+            final var payload = collector.getPayloads().get(1);
+            final var frames = payload.getAsJsonArray("frames");
+            final var errors = payload.getAsJsonArray("errors");
+            assertEquals(2, errors.size());
+
+            var references = 0;
+            for (final var error : errors) {
+                final var stack = error.getAsJsonObject().getAsJsonArray("stack");
+                references += stack.size();
+                assertTrue(frames.get(stack.get(0).getAsInt()).getAsString().endsWith(error.getAsJsonObject().get("message").getAsString()));
+            }
+            assertTrue(frames.size() < references, frames.size() + " frames for " + references + " references");
+        }
+    }
 }
@@ -0,0 +1,378 @@
+package dev.faststats;
+
+import com.google.gson.JsonArray;
+import dev.faststats.core.data.Metric;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricDataTest {
+    @Test
+    public void primitiveArrays() throws Exception {
+        final var ints = Metric.intArray("ints", () -> new int[]{1, 2, 3}).getData().orElseThrow();
+        final var longs = Metric.longArray("longs", () -> new long[]{Long.MAX_VALUE}).getData().orElseThrow();
+        final var doubles = Metric.doubleArray("doubles", () -> new double[]{0.5, 1.5}).getData().orElseThrow();
+
+        assertEquals("[1,2,3]", ints.toString());
+        assertEquals("[" + Long.MAX_VALUE + "]", longs.toString());
+        assertEquals("[0.5,1.5]", doubles.toString());
+    }
+
+    @Test
+    public void nullArrayIsOmitted() throws Exception {
+        assertFalse(Metric.intArray("ints", () -> null).getData().isPresent());
+    }
+
+    @Test
+    public void iterableArray() throws Exception {
+        final var data = Metric.iterable("mixed", () -> List.of("world", 7, true)).getData().orElseThrow();
+        assertEquals("[\"world\",7,true]", data.toString());
+    }
+
+    @Test
+    public void nullElementsAreSubmittedAsNull() throws Exception {
+        final var iterable = Metric.iterable("mixed", () -> Arrays.asList("world", null, 7)).getData().orElseThrow();
+        final var stream = Metric.stream("worlds", () -> Stream.of("world", null)).getData().orElseThrow();
+        final var strings = Metric.stringArray("worlds", () -> new String[]{null, "world"}).getData().orElseThrow();
+        assertEquals("[\"world\",null,7]", iterable.toString());
+        assertEquals("[\"world\",null]", stream.toString());
+        assertEquals("[null,\"world\"]", strings.toString());
+    }
+
+    @Test
+    public void streamArrayIsClosed() throws Exception {
+        final var closed = new AtomicBoolean();
+        final var metric = Metric.stream("worlds", () -> Stream.of("world", "world_nether").onClose(() -> closed.set(true)));
+
+        final var data = (JsonArray) metric.getData().orElseThrow();
+        assertEquals(2, data.size());
+        assertTrue(closed.get());
+
+        // every submission consumes a fresh stream
+        assertEquals(data, metric.getData().orElseThrow());
+    }
+
+    @Test
+    public void topKKeepsMostFrequent() throws Exception {
+        final var metric = Metric.topK("commands", 2, 16);
+        for (var i = 0; i < 200; i++) metric.increment("noise_" + i);
+        for (var i = 0; i < 100; i++) metric.increment("spawn");
+        for (var i = 0; i < 50; i++) metric.increment("home");
+        metric.add("warp", 80);
+
+        final var top = metric.compute().orElseThrow();
+        assertEquals(List.of("spawn", "warp"), List.copyOf(top.keySet()));
+        assertTrue(top.get("spawn") >= 100);
+    }
+
+    @Test
+    public void topKResetsOnFlush() throws Exception {
+        final var metric = Metric.topK("worlds", 3);
+        metric.increment("world");
+        assertEquals("{\"world\":1}", metric.getData().orElseThrow().toString());
+
+        metric.onFlush();
+        assertFalse(metric.getData().isPresent());
+    }
+
+    @Test
+    public void topKKeepsCountsAddedBeforeFlush() throws Exception {
+        final var metric = Metric.topK("worlds", 3);
+        metric.add("world", 3);
+        metric.increment("world_nether");
+        assertEquals("{\"world\":3,\"world_nether\":1}", metric.getData().orElseThrow().toString());
+
+        metric.add("world", 2);
+        metric.onFlush();
+        assertEquals("{\"world\":2}", metric.getData().orElseThrow().toString());
+    }
+
+    @Test
+    public void distinctCountEstimate() throws Exception {
+        final var metric = Metric.distinctCount("unique_players");
+        for (var i = 0; i < 10_000; i++) {
+            final var uuid = UUID.randomUUID();
+            metric.add(uuid);
+            metric.add(uuid);
+        }
+
+        final long estimate = metric.compute().orElseThrow();
+        assertEquals(10_000, estimate, 1_000);
+
+        final var data = metric.getData().orElseThrow().getAsJsonObject();
+        assertEquals(1024, Base64.getDecoder().decode(data.get("registers").getAsString()).length);
+    }
+
+    @Test
+    public void distinctCountSmallRange() throws Exception {
+        final var metric = Metric.distinctCount("unique_worlds");
+        metric.add("world");
+        metric.add("world_nether");
+        metric.add("world_the_end");
+        metric.add("world");
+        assertEquals(3, (long) metric.compute().orElseThrow());
+        assertEquals(3, metric.getData().orElseThrow().getAsJsonObject().get("estimate").getAsLong());
+
+        metric.onFlush();
+        assertEquals(0, (long) metric.compute().orElseThrow());
+    }
+
+    @Test
+    public void distinctCountKeepsValuesAddedBeforeFlush() throws Exception {
+        final var metric = Metric.distinctCount("unique_worlds");
+        metric.add("world");
+        metric.getData();
+
+        for (var i = 0; i < 100; i++) metric.add("world_" + i);
+        metric.onFlush();
+        assertTrue(metric.compute().orElseThrow() > 50);
+    }
+
+    @Test
+    public void distinctCountKeepsSubmittedValuesAddedAgainBeforeFlush() throws Exception {
+        final var metric = Metric.distinctCount("unique_worlds");
+        for (var i = 0; i < 100; i++) metric.add("world_" + i);
+        final var submitted = metric.getData().orElseThrow().getAsJsonObject().get("estimate").getAsLong();
+
+        for (var i = 0; i < 100; i++) metric.add("world_" + i);
+        metric.onFlush();
+        assertEquals(submitted, (long) metric.compute().orElseThrow());
+    }
+
+    @Test
+    public void distinctCountResubmitsUnflushedValues() throws Exception {
+        final var metric = Metric.distinctCount("unique_worlds");
+        for (var i = 0; i < 100; i++) metric.add("world_" + i);
+        metric.getData();
+
+        for (var i = 100; i < 200; i++) metric.add("world_" + i);
+        assertEquals(200, metric.compute().orElseThrow(), 20);
+        assertEquals(200, metric.getData().orElseThrow().getAsJsonObject().get("estimate").getAsLong(), 20);
+
+        metric.onFlush();
+        assertEquals(0, (long) metric.compute().orElseThrow());
+    }
+
+    @Test
+    public void quantileEstimatesAreWithinRelativeAccuracy() {
+        final var metric = Metric.quantiles("chunk_generation_time");
+        for (var i = 1; i <= 10_000; i++) metric.record(i);
+
+        assertEquals(5_000, metric.quantile(0.5), 5_000 * 0.01);
+        assertEquals(9_900, metric.quantile(0.99), 9_900 * 0.01);
+        assertEquals(1, metric.quantile(0), 0);
+        assertEquals(10_000, metric.quantile(1), 0);
+    }
+
+    @Test
+    public void quantileSketchIsBounded() throws Exception {
+        final var metric = Metric.quantiles("packet_size", 0.05);
+        for (var exponent = -300; exponent <= 300; exponent++) metric.record(Math.pow(10, exponent));
+        metric.record(0);
+
+        final var data = metric.getData().orElseThrow().getAsJsonObject();
+        assertEquals(602, data.get("count").getAsLong());
+        assertEquals(1, data.get("zero_count").getAsLong());
+        assertTrue(data.getAsJsonArray("bins").size() <= 2048);
+        assertEquals(1e300, metric.quantile(1), 1e300 * 0.05);
+
+        metric.onFlush();
+        assertFalse(metric.getData().isPresent());
+    }
+
+    @Test
+    public void quantileSketchKeepsValuesRecordedBeforeFlush() throws Exception {
+        final var metric = Metric.quantiles("tick_time");
+        for (var i = 1; i <= 100; i++) metric.record(i);
+        assertEquals(100, metric.getData().orElseThrow().getAsJsonObject().get("count").getAsLong());
+
+        metric.record(1_000);
+        metric.onFlush();
+        final var data = metric.getData().orElseThrow().getAsJsonObject();
+        assertEquals(1, data.get("count").getAsLong());
+        assertEquals(1_000, data.get("sum").getAsDouble(), 0);
+        assertEquals(1_000, metric.quantile(0.5), 1_000 * 0.01);
+    }
+
+    @Test
+    public void counterFamilyIsNested() throws Exception {
+        final var metric = Metric.counterFamily("kills", 2);
+        metric.increment("world", "zombie");
+        metric.increment("world", "zombie");
+        metric.add(3, "world_nether", "blaze");
+
+        final var data = metric.getData().orElseThrow().getAsJsonObject();
+        assertEquals(2, data.getAsJsonObject("world").get("zombie").getAsLong());
+        assertEquals(3, data.getAsJsonObject("world_nether").get("blaze").getAsLong());
+
+        metric.onFlush();
+        assertFalse(metric.getData().isPresent());
+    }
+
+    @Test
+    public void counterFamilyKeepsIncrementsBeforeFlush() throws Exception {
+        final var metric = Metric.counterFamily("deaths", 1);
+        metric.add(5, "world");
+        metric.increment("world_nether");
+        assertEquals("{\"world\":5,\"world_nether\":1}", metric.getData().orElseThrow().toString());
+
+        metric.add(2, "world");
+        metric.onFlush();
+        assertEquals("{\"world\":2}", metric.getData().orElseThrow().toString());
+    }
+
+    @Test
+    public void counterFamilyCardinalityIsCapped() throws Exception {
+        final var metric = Metric.counterFamily("arena_games", 1, 2);
+        metric.increment("a");
+        metric.increment("b");
+        metric.increment("c");
+        metric.increment("d");
+
+        final var expected = Map.of(List.of("a"), 1L, List.of("b"), 1L, List.of("_other"), 2L);
+        assertEquals(expected, metric.compute().orElseThrow());
+    }
+
+    @Test
+    public void counterFamilyFreesSlotsOfFlushedCombinations() throws Exception {
+        final var metric = Metric.counterFamily("arena_games", 1, 2);
+        metric.increment("a");
+        metric.increment("b");
+        metric.getData();
+        metric.increment("b");
+        metric.onFlush();
+
+        metric.increment("c");
+        metric.increment("d");
+        final var expected = Map.of(List.of("b"), 1L, List.of("c"), 1L, List.of("_other"), 1L);
+        assertEquals(expected, metric.compute().orElseThrow());
+    }
+
+    @Test
+    public void counterFamilyCardinalityIsCappedConcurrently() throws Exception {
+        final var metric = Metric.counterFamily("arena_games", 1, 8);
+        final var threads = new ArrayList<Thread>();
+        for (var t = 0; t < 4; t++) {
+            final var offset = t * 100;
+            threads.add(new Thread(() -> {
+                for (var i = 0; i < 100; i++) metric.increment("arena_" + (offset + i));
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (final var thread : threads) thread.join();
+
+        final var counts = metric.compute().orElseThrow();
+        assertEquals(9, counts.size());
+        assertEquals(400, counts.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void gaugeFamilyKeepsValues() throws Exception {
+        final var metric = Metric.gaugeFamily("entities", 1);
+        metric.set(12, "world");
+        metric.set(4, "world_nether");
+        metric.remove("world_nether");
+        metric.onFlush();
+
+        assertEquals("{\"world\":12.0}", metric.getData().orElseThrow().toString());
+        assertThrows(IllegalArgumentException.class, () -> metric.set(1, "world", "extra"));
+    }
+
+    @Test
+    public void rateCountsPeriodTotal() throws Exception {
+        final var metric = Metric.rate("chat_messages");
+        metric.mark();
+        metric.mark(41);
+
+        final var data = metric.getData().orElseThrow().getAsJsonObject();
+        assertEquals(42, data.get("count").getAsLong());
+        assertTrue(data.has("m1_rate") && data.has("m5_rate") && data.has("m15_rate"));
+        assertEquals(0, metric.getOneMinuteRate(), 0);
+
+        metric.mark(3);
+        metric.onFlush();
+        assertEquals(3, metric.compute().orElseThrow().get("count").longValue());
+    }
+
+    @Test
+    public void cachedMetricServesLastValue() throws Exception {
+        final var calls = new AtomicInteger();
+        final var pending = new ArrayList<Runnable>();
+        final var metric = Metric.cached(Metric.number("region_files", calls::incrementAndGet), Duration.ZERO, pending::add);
+
+        assertFalse(metric.getData().isPresent());
+        assertFalse(metric.getAge().isPresent());
+
+        pending.remove(0).run();
+        assertEquals(1, metric.getData().orElseThrow().getAsInt());
+        assertTrue(metric.getAge().isPresent());
+
+        // the expired value is served while the refresh is pending
+        assertEquals(1, pending.size());
+        assertEquals(1, metric.getData().orElseThrow().getAsInt());
+        pending.remove(0).run();
+        assertEquals(2, metric.getData().orElseThrow().getAsInt());
+    }
+
+    @Test
+    public void cachedMetricRefreshesPeriodically() throws Exception {
+        final var calls = new AtomicInteger();
+        final var metric = Metric.cached(Metric.number("region_files", calls::incrementAndGet), Duration.ofMillis(20), Runnable::run);
+        assertEquals(0, calls.get());
+        assertEquals(1, metric.getData().orElseThrow().getAsInt());
+
+        final var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (calls.get() < 3 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(calls.get() >= 3);
+        assertTrue(metric.getAge().isPresent());
+    }
+
+    @Test
+    public void cachedMetricKeepsValueOnFailure() throws Exception {
+        final var fail = new AtomicBoolean();
+        final var metric = Metric.cached(Metric.number("database_rows", () -> {
+            if (fail.get()) throw new IllegalStateException("database unavailable");
+            return 7;
+        }), Duration.ZERO, Runnable::run);
+
+        assertEquals(7, metric.getData().orElseThrow().getAsInt());
+        fail.set(true);
+        assertEquals(7, metric.getData().orElseThrow().getAsInt());
+        assertEquals(7, metric.getData().orElseThrow().getAsInt());
+    }
+
+    @Test
+    public void cachedMetricStopsRefreshingOnClose() throws Exception {
+        final var calls = new AtomicInteger();
+        final var metric = Metric.cached(Metric.number("region_files", calls::incrementAndGet), Duration.ofMillis(20), Runnable::run);
+        assertEquals(1, metric.getData().orElseThrow().getAsInt());
+
+        metric.close();
+        final var closed = calls.get();
+        Thread.sleep(100);
+        assertEquals(closed, calls.get());
+        assertEquals(closed, metric.getData().orElseThrow().getAsInt());
+        metric.refresh();
+        assertEquals(closed, calls.get());
+    }
+
+    @Test
+    public void cachedMetricRejectsAggregatingMetrics() {
+        assertThrows(IllegalArgumentException.class, () -> Metric.cached(Metric.rate("chunk_loads"), Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> Metric.cached(Metric.distinctCount("unique_players"), Duration.ofMinutes(1)));
+    }
+}
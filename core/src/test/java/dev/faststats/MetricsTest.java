@@ -1,9 +1,34 @@
 package dev.faststats;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import dev.faststats.core.ErrorTracker;
+import dev.faststats.core.Transport;
+import dev.faststats.core.data.Metric;
+import dev.faststats.core.data.MetricGroup;
+import org.jspecify.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class MetricsTest {
@@ -12,4 +37,690 @@ public class MetricsTest {
         final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, true);
         assumeTrue(mock.submit(), "For this test to run, the server must be running");
     }
+
+    @Test
+    public void asyncMetricsAreAwaited() {
+        final var pending = new CompletableFuture<Integer>();
+        final var metrics = Set.<Metric<?>>of(
+                Metric.async("database_rows", () -> pending),
+                Metric.async("never_completes", CompletableFuture::new),
+                Metric.number("player_count", () -> 3)
+        );
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, metrics);
+
+        final var future = mock.createDataAsync();
+        assertFalse(future.isDone());
+        pending.complete(42);
+
+        final var data = future.join().getAsJsonObject("data");
+        assertEquals(42, data.get("database_rows").getAsInt());
+        assertEquals(3, data.get("player_count").getAsInt());
+        assertFalse(data.has("never_completes"));
+    }
+
+    @Test
+    public void metricGroupSharesSnapshot() {
+        record WorldScan(int entities, int tiles, String heaviest) {
+        }
+
+        final var scans = new AtomicInteger();
+        final var group = MetricGroup.builder("world_scan", () -> {
+                    scans.incrementAndGet();
+                    return new WorldScan(120, 30, "world_nether");
+                })
+                .number("entity_count", WorldScan::entities)
+                .number("tile_count", WorldScan::tiles)
+                .string("heaviest_world", WorldScan::heaviest)
+                .build();
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(group));
+
+        final var data = mock.createData().getAsJsonObject("data");
+        assertEquals(1, scans.get());
+        assertEquals(120, data.get("entity_count").getAsInt());
+        assertEquals(30, data.get("tile_count").getAsInt());
+        assertEquals("world_nether", data.get("heaviest_world").getAsString());
+        assertFalse(data.has("world_scan"));
+    }
+
+    @Test
+    public void metricsCanBeRegisteredAtRuntime() {
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false);
+        assertFalse(mock.createData().getAsJsonObject("data").has("module_count"));
+
+        final var metric = Metric.number("module_count", () -> 3);
+        mock.register(metric);
+        assertThrows(IllegalArgumentException.class, () -> mock.register(Metric.number("module_count", () -> 4)));
+        assertEquals(metric, mock.getMetric("module_count").orElseThrow());
+        assertEquals(3, mock.createData().getAsJsonObject("data").get("module_count").getAsInt());
+
+        assertEquals(metric, mock.unregister("module_count").orElseThrow());
+        assertTrue(mock.unregister("module_count").isEmpty());
+        assertTrue(mock.getMetrics().isEmpty());
+        assertFalse(mock.createData().getAsJsonObject("data").has("module_count"));
+    }
+
+    @Test
+    public void cachedMetricsAreClosedWhenUnregistered() throws Exception {
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false);
+        final var calls = new AtomicInteger();
+        final var pending = new ArrayList<Runnable>();
+        final var metric = Metric.cached(Metric.number("region_files", calls::incrementAndGet), Duration.ZERO, pending::add);
+        mock.register(metric);
+        assertFalse(mock.createData().getAsJsonObject("data").has("region_files"));
+        pending.remove(0).run();
+        assertEquals(1, mock.createData().getAsJsonObject("data").get("region_files").getAsInt());
+
+        mock.unregister("region_files");
+        pending.forEach(Runnable::run);
+        metric.refresh();
+        assertTrue(metric.getData().isPresent());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void createDataContainsIdentifierAndSystemData() {
+        final var serverId = UUID.randomUUID();
+        final var mock = new MockMetrics(serverId, "24f9fc423ed06194065a42d00995c600", null, false, Set.of(Metric.number("player_count", () -> 3)));
+
+        final var json = mock.createData();
+        assertEquals(serverId.toString(), json.get("identifier").getAsString());
+        final var data = json.getAsJsonObject("data");
+        assertEquals(Runtime.getRuntime().availableProcessors(), data.get("core_count").getAsInt());
+        assertEquals(System.getProperty("java.version"), data.get("java_version").getAsString());
+        assertEquals(3, data.get("player_count").getAsInt());
+        assertFalse(mock.createDataAsync().join().getAsJsonObject("data").has("core_count"));
+    }
+
+    @Test
+    public void metricIdsCollidingWithConstantDataAreRejected() {
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false)
+                .constantData(data -> data.addProperty("server_type", "paper"));
+        assertThrows(IllegalArgumentException.class, () -> mock.register(Metric.number("core_count", () -> 1)));
+
+        mock.createData();
+        assertThrows(IllegalArgumentException.class, () -> mock.register(Metric.string("server_type", () -> "spigot")));
+    }
+
+    @Test
+    public void metricGroupIdsMustNotCollide() {
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false);
+        mock.register(Metric.number("entity_count", () -> 1));
+
+        final var colliding = MetricGroup.builder("world_scan", () -> 1)
+                .number("chunk_count", scan -> 2)
+                .number("entity_count", scan -> 3)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> mock.register(colliding));
+
+        final var group = MetricGroup.builder("world_scan", () -> 1)
+                .number("chunk_count", scan -> 2)
+                .build();
+        mock.register(group);
+        assertThrows(IllegalArgumentException.class, () -> mock.register(Metric.number("chunk_count", () -> 4)));
+        assertThrows(IllegalArgumentException.class, () -> mock.register(MetricGroup.builder("other_scan", () -> 1)
+                .number("chunk_count", scan -> 5)
+                .build()));
+        assertThrows(IllegalArgumentException.class, () -> mock.register(MetricGroup.builder("host_scan", () -> 1)
+                .number("core_count", scan -> 6)
+                .build()));
+        assertEquals(2, mock.getMetrics().size());
+    }
+
+    @Test
+    public void failedConstantDataIsNotCached() {
+        final var attempts = new AtomicInteger();
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false)
+                .constantData(data -> {
+                    data.addProperty("server_type", "paper");
+                    if (attempts.incrementAndGet() == 1) throw new IllegalStateException("Server not ready");
+                    data.addProperty("online_mode", true);
+                });
+
+        assertFalse(mock.createData().getAsJsonObject("data").has("online_mode"));
+        assertTrue(mock.createData().getAsJsonObject("data").get("online_mode").getAsBoolean());
+        mock.createData();
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void deltaSubmissionOmitsUnchangedValues() throws IOException {
+        final var players = new AtomicInteger(10);
+        final var feature = new AtomicReference<@Nullable String>("vanilla");
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(
+                    Metric.number("player_count", players::get),
+                    Metric.string("server_type", () -> "paper"),
+                    Metric.string("feature", feature::get)
+            ), collector.getUrl(), true, false);
+
+            assertTrue(mock.submit());
+            final var full = collector.getPayloads().get(0);
+            assertFalse(full.has("delta"));
+            assertEquals(mock.getConfig().serverId().toString(), full.get("identifier").getAsString());
+            assertEquals(Runtime.getRuntime().availableProcessors(), full.getAsJsonObject("data").get("core_count").getAsInt());
+            assertTrue(full.getAsJsonObject("data").has("server_type"));
+
+            players.set(12);
+            feature.set(null);
+            assertTrue(mock.submit());
+            final var delta = collector.getPayloads().get(1);
+            assertTrue(delta.get("delta").getAsBoolean());
+            final var data = delta.getAsJsonObject("data");
+            assertEquals(2, data.size());
+            assertEquals(12, data.get("player_count").getAsInt());
+            assertTrue(data.get("feature").isJsonNull());
+
+            final var state = collector.getState();
+            assertEquals(12, state.get("player_count").getAsInt());
+            assertEquals("paper", state.get("server_type").getAsString());
+            assertEquals(System.getProperty("os.name"), state.get("os_name").getAsString());
+            assertFalse(state.has("feature"));
+
+            assertTrue(mock.submit());
+            assertEquals(0, collector.getPayloads().get(2).getAsJsonObject("data").size());
+        }
+    }
+
+    @Test
+    public void binaryFormatFallsBackToJson() throws IOException {
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(
+                    Metric.number("player_count", () -> 10)
+            ), collector.getUrl(), false, true);
+
+            assertTrue(mock.submit());
+            assertEquals(1, collector.getPayloads().size());
+            assertEquals(10, collector.getState().get("player_count").getAsInt());
+        }
+    }
+
+    @Test
+    public void truncatedMetricGroupsRecordTheirFields() throws IOException {
+        final var group = MetricGroup.builder("world_scan", () -> 1)
+                .number("entity_count", scan -> 120)
+                .number("chunk_count", scan -> 30)
+                .build();
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(group), collector.getUrl(), false, false).payloadBudget(1);
+
+            assertTrue(mock.submit());
+            final var metrics = collector.getPayloads().get(0).getAsJsonObject("truncated").getAsJsonArray("metrics");
+            assertEquals(2, metrics.size());
+            assertEquals("entity_count", metrics.get(0).getAsString());
+            assertEquals("chunk_count", metrics.get(1).getAsString());
+        }
+    }
+
+    @Test
+    public void payloadBudgetDefersMetricsAndErrors() throws IOException {
+        final var tracker = ErrorTracker.contextUnaware();
+        final var worlds = Metric.topK("top_worlds", 3);
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false,
+                    Set.of(worlds), collector.getUrl(), false, false).payloadBudget(1);
+
+            worlds.increment("world");
+            tracker.trackError("rare");
+            for (var i = 0; i < 3; i++) tracker.trackError(new IllegalStateException("frequent"));
+
+            assertTrue(mock.submit());
+            final var truncated = collector.getPayloads().get(0);
+            assertFalse(truncated.has("errors"));
+            assertEquals("top_worlds", truncated.getAsJsonObject("truncated").getAsJsonArray("metrics").get(0).getAsString());
+            assertEquals(2, truncated.getAsJsonObject("truncated").get("errors").getAsInt());
+
+            mock.payloadBudget(Long.MAX_VALUE);
+            assertTrue(mock.submit());
+            final var complete = collector.getPayloads().get(1);
+            assertFalse(complete.has("truncated"));
+            assertEquals(1, complete.getAsJsonObject("data").getAsJsonObject("top_worlds").get("world").getAsInt());
+            final var errors = complete.getAsJsonArray("errors");
+            assertEquals(2, errors.size());
+            assertEquals(3, errors.get(0).getAsJsonObject().get("count").getAsInt());
+        }
+    }
+
+    @Test
+    public void payloadBudgetIsNeverExceeded() throws IOException {
+        try (final var collector = new MockCollector()) {
+            collector.header("X-FastStats-Accept-Error-Format", "frames");
+            for (var budget = 400; budget <= 2000; budget += 100) {
+                final var tracker = ErrorTracker.contextUnaware();
+                final var mock = new MockMetrics(new UUID(0, 1), "24f9fc423ed06194065a42d00995c600", tracker, false, Set.of(
+                        Metric.string("server_software", () -> "paper-1.21.4-build-231"),
+                        Metric.number("player_count", () -> 42),
+                        Metric.string("motd", () -> "A Minecraft Server with a rather long message of the day")
+                ), collector.getUrl(), false, false).sampleRate(0.999);
+                assertTrue(mock.submit());
+
+                for (var i = 0; i < 5; i++) tracker.trackError(new IllegalStateException("error " + i));
+                mock.payloadBudget(budget);
+                assertTrue(mock.submit());
+                final var payload = collector.getPayloads().get(collector.getPayloads().size() - 1);
+                assertTrue(payload.has("sample_rate"));
+                if (budget == 2000) assertTrue(payload.has("frames"));
+                assertTrue(payload.toString().getBytes(UTF_8).length <= budget, "Payload exceeds budget of " + budget);
+            }
+        }
+    }
+
+    @Test
+    public void oversizedMetricIsDropped() throws IOException {
+        final var worlds = Metric.topK("top_worlds", 3);
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(worlds), collector.getUrl(), false, false).payloadBudget(1);
+            worlds.increment("world");
+
+            assertTrue(mock.submit());
+            assertTrue(mock.submit());
+            assertTrue(collector.getPayloads().get(1).has("truncated"));
+            assertTrue(mock.submit());
+            assertFalse(collector.getPayloads().get(2).has("truncated"));
+
+            mock.payloadBudget(Long.MAX_VALUE);
+            assertTrue(mock.submit());
+            assertFalse(collector.getPayloads().get(3).getAsJsonObject("data").has("top_worlds"));
+        }
+    }
+
+    @Test
+    public void sampledOutServersOnlySubmitScalarData() throws IOException {
+        final var tracker = ErrorTracker.contextUnaware();
+        final var worlds = Metric.topK("top_worlds", 3);
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false, Set.of(
+                    worlds,
+                    Metric.number("player_count", () -> 10)
+            ), collector.getUrl(), false, false).sampleRate(0);
+
+            worlds.increment("world");
+            tracker.trackError("error");
+
+            assertTrue(mock.submit());
+            final var scalar = collector.getPayloads().get(0);
+            assertEquals(0.0, scalar.get("sample_rate").getAsDouble());
+            assertFalse(scalar.has("errors"));
+            assertFalse(scalar.getAsJsonObject("data").has("top_worlds"));
+            assertEquals(10, scalar.getAsJsonObject("data").get("player_count").getAsInt());
+
+            collector.header("X-FastStats-Sample-Rate", "1");
+            assertTrue(mock.submit());
+            collector.status(503);
+            assertFalse(mock.submit());
+            collector.status(200);
+
+            tracker.trackError("sampled error");
+            worlds.increment("world");
+            assertTrue(mock.submit());
+            final var detailed = collector.getPayloads().get(3);
+            assertFalse(detailed.has("sample_rate"));
+            final var errors = detailed.getAsJsonArray("errors");
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0).getAsJsonObject().get("message").getAsString().contains("sampled error"));
+            assertTrue(detailed.getAsJsonObject("data").has("top_worlds"));
+        }
+    }
+
+    @Test
+    public void directivesOfTheMetricsServerAreApplied() throws IOException {
+        final var tracker = ErrorTracker.contextUnaware();
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false, Set.of(
+                    Metric.string("motd", () -> "x".repeat(2000))
+            ), collector.getUrl(), false, false);
+
+            collector.body("{\"directive\":{\"stack_trace_limit\":1,\"message_length\":5,\"payload_budget\":1}}");
+            assertTrue(mock.submit());
+            assertTrue(collector.getPayloads().get(0).getAsJsonObject("data").has("motd"));
+
+            tracker.trackError("Something went wrong");
+            assertTrue(mock.submit());
+            final var limited = collector.getPayloads().get(1);
+            assertEquals("motd", limited.getAsJsonObject("truncated").getAsJsonArray("metrics").get(0).getAsString());
+            final var error = limited.getAsJsonArray("errors").get(0).getAsJsonObject();
+            assertEquals("Somet...", error.get("message").getAsString());
+            assertTrue(error.getAsJsonArray("stack").get(2).getAsString().startsWith("  ... "));
+
+            collector.body("{\"directive\":{}}");
+            assertTrue(mock.submit());
+            assertTrue(mock.submit());
+            assertTrue(collector.getPayloads().get(3).getAsJsonObject("data").has("motd"));
+        }
+    }
+
+    @Test
+    public void directivesOfErrorResponsesAreIgnored() throws IOException {
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(
+                    Metric.string("motd", () -> "x".repeat(2000))
+            ), collector.getUrl(), false, false);
+
+            collector.status(503).body("{\"directive\":{\"payload_budget\":1}}");
+            assertFalse(mock.submit());
+
+            collector.status(200).body("{}");
+            assertTrue(mock.submit());
+            final var payload = collector.getPayloads().get(1);
+            assertFalse(payload.has("truncated"));
+            assertTrue(payload.getAsJsonObject("data").has("motd"));
+        }
+    }
+
+    @Test
+    public void unhandledErrorsAreFlushedImmediately() throws Exception {
+        final var tracker = ErrorTracker.contextUnaware();
+        final var flushed = new AtomicInteger();
+        final var events = new Metric<Number>() {
+            @Override
+            public String getId() {
+                return "events";
+            }
+
+            @Override
+            public Optional<Number> compute() {
+                return Optional.of(7);
+            }
+
+            @Override
+            public Optional<JsonElement> getData() {
+                return Optional.of(new JsonPrimitive(7));
+            }
+
+            @Override
+            public void onFlush() {
+                flushed.incrementAndGet();
+            }
+        };
+        try (final var collector = new MockCollector()) {
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false,
+                    Set.of(events), collector.getUrl(), false, false).errorFlush(100, 60_000);
+            mock.startSubmitting();
+            try {
+                tracker.trackError("handled");
+                tracker.trackError(new IllegalStateException("first"), false);
+                tracker.trackError(new IllegalArgumentException("second"), false);
+                for (var i = 0; i < 50 && collector.getPayloads().isEmpty(); i++) Thread.sleep(100);
+
+                assertEquals(1, collector.getPayloads().size());
+                final var payload = collector.getPayloads().get(0);
+                assertTrue(payload.get("errors_only").getAsBoolean());
+                assertEquals(0, payload.getAsJsonObject("data").size());
+                assertEquals(2, payload.getAsJsonArray("errors").size());
+                assertEquals(0, flushed.get());
+
+                tracker.trackError(new UnsupportedOperationException("third"), false);
+                Thread.sleep(500);
+                assertEquals(1, collector.getPayloads().size());
+            } finally {
+                mock.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void errorFlushWaitsForPendingSubmission() throws InterruptedException {
+        final var tracker = ErrorTracker.contextUnaware();
+        final var requests = new CopyOnWriteArrayList<CompletableFuture<Transport.Response>>();
+        final Transport transport = request -> {
+            final var response = new CompletableFuture<Transport.Response>();
+            requests.add(response);
+            return response;
+        };
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", tracker, false,
+                Set.of(), transport).errorFlush(0, 0);
+        mock.startSubmitting();
+        try {
+            final var submission = CompletableFuture.supplyAsync(mock::submit);
+            for (var i = 0; i < 50 && requests.isEmpty(); i++) Thread.sleep(20);
+            assertEquals(1, requests.size());
+
+            tracker.trackError(new IllegalStateException("unhandled"), false);
+            Thread.sleep(300);
+            assertEquals(1, requests.size());
+
+            requests.get(0).complete(new Transport.Response(200, "{}"));
+            assertTrue(submission.orTimeout(5, TimeUnit.SECONDS).join());
+            for (var i = 0; i < 50 && requests.size() < 2; i++) Thread.sleep(20);
+            assertEquals(2, requests.size());
+        } finally {
+            requests.forEach(request -> request.complete(new Transport.Response(200, "{}")));
+            mock.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedRegionCombinesServers() throws IOException {
+        final var region = Files.createTempDirectory("faststats").resolve("shared.region");
+        final var token = "bba4a14eac38779007a6fda4814381d4";
+        final var players = new AtomicInteger(3);
+        try (final var collector = new MockCollector()) {
+            final var leader = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(), collector.getUrl(), false, false).sharedRegion(region);
+            final var followerId = UUID.randomUUID();
+            final var follower = new MockMetrics(followerId, token, null, false,
+                    Set.of(Metric.number("player_count", players::get)), collector.getUrl(), false, false).sharedRegion(region);
+
+            assertTrue(leader.submit());
+            assertTrue(follower.submit());
+            assertFalse(follower.submit());
+            assertEquals(1, collector.getPayloads().size());
+
+            assertTrue(leader.submit());
+            final var servers = collector.getPayloads().get(1).getAsJsonArray("servers");
+            assertEquals(1, servers.size());
+            assertEquals(followerId.toString(), servers.get(0).getAsJsonObject().get("identifier").getAsString());
+            assertEquals(3, servers.get(0).getAsJsonObject().getAsJsonObject("data").get("player_count").getAsInt());
+
+            players.set(5);
+            assertTrue(follower.submit());
+            assertTrue(leader.submit());
+            assertEquals(5, collector.getPayloads().get(2).getAsJsonArray("servers").get(0).getAsJsonObject()
+                    .getAsJsonObject("data").get("player_count").getAsInt());
+
+            follower.shutdown();
+            leader.shutdown();
+        }
+    }
+
+    @Test
+    public void unpublishableDataIsSubmittedDirectly() throws IOException {
+        final var region = Files.createTempDirectory("faststats").resolve("shared.region");
+        final var token = "bba4a14eac38779007a6fda4814381d4";
+        try (final var collector = new MockCollector()) {
+            final var leader = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(), collector.getUrl(), false, false).sharedRegion(region);
+            final var follower = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(Metric.string("world_type", () -> "flat")), collector.getUrl(), false, false).sharedRegion(region);
+
+            assertTrue(leader.submit());
+            assertTrue(follower.submit());
+            assertEquals(2, collector.getPayloads().size());
+            assertEquals("flat", collector.getPayloads().get(1).getAsJsonObject("data").get("world_type").getAsString());
+
+            assertTrue(leader.submit());
+            assertFalse(collector.getPayloads().get(2).has("servers"));
+
+            follower.shutdown();
+            leader.shutdown();
+        }
+    }
+
+    @Test
+    public void submissionsOfAllPluginsAreCoalesced() throws IOException {
+        final var flushed = new AtomicInteger();
+        final var counter = new AtomicInteger(7);
+        final var events = new Metric<Number>() {
+            @Override
+            public String getId() {
+                return "events";
+            }
+
+            @Override
+            public Optional<Number> compute() {
+                return Optional.of(counter.get());
+            }
+
+            @Override
+            public Optional<JsonElement> getData() {
+                return Optional.of(new JsonPrimitive(counter.get()));
+            }
+
+            @Override
+            public void onFlush() {
+                flushed.incrementAndGet();
+            }
+        };
+        try (final var collector = new MockCollector()) {
+            final var leader = new MockMetrics(UUID.randomUUID(), "bba4a14eac38779007a6fda4814381d4", null, false,
+                    Set.of(Metric.number("player_count", () -> 3)), collector.getUrl(), false, false).coalescing(true);
+            final var follower = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(events, Metric.number("player_count", () -> 3)), collector.getUrl(), false, false).coalescing(true);
+            try {
+                assertTrue(leader.submit());
+                assertTrue(follower.submit());
+                assertEquals(1, collector.getPayloads().size());
+                assertEquals(0, flushed.get());
+
+                assertTrue(leader.submit());
+                assertEquals(1, collector.getPayloads().size());
+                assertEquals(1, collector.getBatches().size());
+                assertEquals(1, flushed.get());
+
+                final var batch = collector.getBatches().get(0);
+                assertTrue(batch.getAsJsonObject("host").has("core_count"));
+                assertFalse(batch.getAsJsonObject("host").has("player_count"));
+                final var submissions = batch.getAsJsonArray("submissions");
+                assertEquals(2, submissions.size());
+                final var offered = submissions.get(1).getAsJsonObject();
+                assertEquals("24f9fc423ed06194065a42d00995c600", offered.get("token").getAsString());
+                final var data = offered.getAsJsonObject("payload").getAsJsonObject("data");
+                assertFalse(data.has("core_count"));
+                assertEquals(3, data.get("player_count").getAsInt());
+                assertEquals(7, data.get("events").getAsInt());
+            } finally {
+                leader.shutdown();
+                follower.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void coalescedBatchesStayWithinTheBudget() throws IOException {
+        try (final var collector = new MockCollector()) {
+            final var leader = new MockMetrics(UUID.randomUUID(), "bba4a14eac38779007a6fda4814381d4", null, false,
+                    Set.of(), collector.getUrl(), false, false).coalescing(true).payloadBudget(1);
+            final var first = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(Metric.number("events", () -> 1)), collector.getUrl(), false, false).coalescing(true);
+            final var second = new MockMetrics(UUID.randomUUID(), "e04c5bd9e1a3c1b2b01a4a7fd3e7e4f1", null, false,
+                    Set.of(Metric.number("events", () -> 2)), collector.getUrl(), false, false).coalescing(true);
+            try {
+                assertTrue(leader.submit());
+                assertTrue(first.submit());
+                assertTrue(second.submit());
+
+                assertTrue(leader.submit());
+                assertEquals(1, collector.getBatches().size());
+                assertEquals(2, collector.getPayloads().size());
+                final var batch = collector.getBatches().get(0).getAsJsonArray("submissions");
+                assertEquals(1, batch.size());
+                assertEquals("24f9fc423ed06194065a42d00995c600", batch.get(0).getAsJsonObject().get("token").getAsString());
+
+                assertTrue(leader.submit());
+                assertEquals(2, collector.getBatches().size());
+                final var deferred = collector.getBatches().get(1).getAsJsonArray("submissions");
+                assertEquals(1, deferred.size());
+                assertEquals("e04c5bd9e1a3c1b2b01a4a7fd3e7e4f1", deferred.get(0).getAsJsonObject().get("token").getAsString());
+            } finally {
+                leader.shutdown();
+                first.shutdown();
+                second.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void relayedSubmissionsAreSubmittedByTheProxy() throws IOException {
+        final var token = "bba4a14eac38779007a6fda4814381d4";
+        try (final var collector = new MockCollector()) {
+            final var proxy = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(), collector.getUrl(), false, false);
+            final var other = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(), collector.getUrl(), false, false);
+            final var backendId = UUID.randomUUID();
+            final var players = new AtomicInteger(3);
+            final var backend = new MockMetrics(backendId, token, null, false,
+                    Set.of(Metric.number("player_count", players::get)), collector.getUrl(), true, false);
+            final var acknowledging = new AtomicBoolean(true);
+            backend.relay(message -> !other.receiveRelayed("lobby", message, reply -> fail("Unexpected reply"))
+                                     && proxy.receiveRelayed("lobby", message, reply -> {
+                if (acknowledging.get()) backend.receiveRelayAck(reply);
+            }));
+
+            assertTrue(backend.submit());
+            assertEquals(1, collector.getPayloads().size());
+            assertFalse(collector.getPayloads().get(0).has("servers"));
+
+            players.set(4);
+            assertTrue(backend.submit());
+            assertEquals(1, collector.getPayloads().size());
+
+            assertTrue(proxy.submit());
+            final var servers = collector.getPayloads().get(1).getAsJsonArray("servers");
+            assertEquals(1, servers.size());
+            final var server = servers.get(0).getAsJsonObject();
+            assertEquals(backendId.toString(), server.get("identifier").getAsString());
+            assertEquals("lobby", server.get("server").getAsString());
+            assertTrue(server.get("delta").getAsBoolean());
+            assertEquals(4, server.getAsJsonObject("data").get("player_count").getAsInt());
+
+            assertTrue(proxy.submit());
+            assertFalse(collector.getPayloads().get(2).has("servers"));
+
+            acknowledging.set(false);
+            players.set(5);
+            assertTrue(backend.submit());
+            assertEquals(3, collector.getPayloads().size());
+            assertTrue(backend.submit());
+            assertEquals(4, collector.getPayloads().size());
+            assertEquals(5, collector.getPayloads().get(3).getAsJsonObject("data").get("player_count").getAsInt());
+
+            backend.shutdown();
+            proxy.shutdown();
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void relayedSubmissionsAreQueuedUntilSubmitted() throws IOException {
+        final var token = "bba4a14eac38779007a6fda4814381d4";
+        try (final var collector = new MockCollector()) {
+            final var proxy = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(), collector.getUrl(), false, false);
+            final var players = new AtomicInteger(3);
+            final var backend = new MockMetrics(UUID.randomUUID(), token, null, false,
+                    Set.of(Metric.number("player_count", players::get)), collector.getUrl(), true, false);
+            backend.relay(message -> proxy.receiveRelayed("lobby", message, backend::receiveRelayAck));
+
+            assertTrue(backend.submit());
+            players.set(4);
+            assertTrue(backend.submit());
+            players.set(5);
+            assertTrue(backend.submit());
+            assertEquals(1, collector.getPayloads().size());
+
+            assertTrue(proxy.submit());
+            final var servers = collector.getPayloads().get(1).getAsJsonArray("servers");
+            assertEquals(2, servers.size());
+            assertEquals(4, servers.get(0).getAsJsonObject().getAsJsonObject("data").get("player_count").getAsInt());
+            assertEquals(5, servers.get(1).getAsJsonObject().getAsJsonObject("data").get("player_count").getAsInt());
+
+            assertTrue(proxy.submit());
+            assertFalse(collector.getPayloads().get(2).has("servers"));
+
+            backend.shutdown();
+            proxy.shutdown();
+        }
+    }
 }
@@ -0,0 +1,108 @@
+package dev.faststats;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jspecify.annotations.NullMarked;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A local stand-in for the metrics server, carrying values of delta submissions forward.
+ */
+@NullMarked
+public final class MockCollector implements AutoCloseable {
+    private final List<JsonObject> payloads = new CopyOnWriteArrayList<>();
+    private final List<JsonObject> batches = new CopyOnWriteArrayList<>();
+    private final Map<String, String> headers = new ConcurrentHashMap<>();
+    private final JsonObject state = new JsonObject();
+    private volatile String body = "{}";
+    private volatile int status = 200;
+    private final HttpServer server;
+
+    public MockCollector() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/collect", this::handle);
+        server.createContext("/v1/batch", this::handleBatch);
+        server.start();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        if (!"application/octet-stream".equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+            exchange.sendResponseHeaders(415, -1);
+            exchange.close();
+            return;
+        }
+        try (exchange; final var input = new GZIPInputStream(exchange.getRequestBody())) {
+            final var payload = JsonParser.parseString(new String(input.readAllBytes(), UTF_8)).getAsJsonObject();
+            payloads.add(payload);
+            if (status == 200) merge(payload);
+            final var response = body.getBytes(UTF_8);
+            headers.forEach(exchange.getResponseHeaders()::set);
+            exchange.sendResponseHeaders(status, response.length);
+            exchange.getResponseBody().write(response);
+        }
+    }
+
+    private void handleBatch(final HttpExchange exchange) throws IOException {
+        try (exchange; final var input = new GZIPInputStream(exchange.getRequestBody())) {
+            batches.add(JsonParser.parseString(new String(input.readAllBytes(), UTF_8)).getAsJsonObject());
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    private synchronized void merge(final JsonObject payload) {
+        final var delta = payload.has("delta") && payload.get("delta").getAsBoolean();
+        if (!delta) state.keySet().clear();
+        payload.getAsJsonObject("data").entrySet().forEach(entry -> {
+            if (entry.getValue().isJsonNull()) state.remove(entry.getKey());
+            else state.add(entry.getKey(), entry.getValue());
+        });
+    }
+
+    public MockCollector header(final String name, final String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public MockCollector status(final int status) {
+        this.status = status;
+        return this;
+    }
+
+    public MockCollector body(final String body) {
+        this.body = body;
+        return this;
+    }
+
+    public URI getUrl() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/collect");
+    }
+
+    public List<JsonObject> getPayloads() {
+        return payloads;
+    }
+
+    public List<JsonObject> getBatches() {
+        return batches;
+    }
+
+    public synchronized JsonObject getState() {
+        return state.deepCopy();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -4,17 +4,168 @@ import com.google.gson.JsonObject;
 import dev.faststats.core.ErrorTracker;
 import dev.faststats.core.SimpleMetrics;
 import dev.faststats.core.Token;
+import dev.faststats.core.Transport;
+import dev.faststats.core.data.Metric;
 import org.jspecify.annotations.NullMarked;
 import org.jspecify.annotations.Nullable;
 
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @NullMarked
 public final class MockMetrics extends SimpleMetrics {
     public MockMetrics(final UUID serverId, @Token final String token, @Nullable final ErrorTracker tracker, final boolean debug) {
-        super(new Config(serverId, true, debug, true, true, false, false), Set.of(), token, tracker, null, URI.create("http://localhost:5000/v1/collect"), debug);
+        this(serverId, token, tracker, debug, Set.of());
+    }
+
+    public MockMetrics(final UUID serverId, @Token final String token, @Nullable final ErrorTracker tracker, final boolean debug, final Set<Metric<?>> metrics) {
+        this(serverId, token, tracker, debug, metrics, URI.create("http://localhost:5000/v1/collect"), false, false);
+    }
+
+    public MockMetrics(final UUID serverId, @Token final String token, @Nullable final ErrorTracker tracker, final boolean debug, final Set<Metric<?>> metrics, final URI url, final boolean deltaSubmission, final boolean binaryFormat) {
+        this(serverId, token, tracker, debug, metrics, url, Transport.http(), deltaSubmission, binaryFormat);
+    }
+
+    public MockMetrics(final UUID serverId, @Token final String token, @Nullable final ErrorTracker tracker, final boolean debug, final Set<Metric<?>> metrics, final Transport transport) {
+        this(serverId, token, tracker, debug, metrics, URI.create("http://localhost/v1/collect"), transport, false, false);
+    }
+
+    private MockMetrics(final UUID serverId, @Token final String token, @Nullable final ErrorTracker tracker, final boolean debug, final Set<Metric<?>> metrics, final URI url, final Transport transport, final boolean deltaSubmission, final boolean binaryFormat) {
+        super(new Config(serverId, true, debug, true, true, false, false), metrics, token, tracker, null, url, transport, debug);
+        this.deltaSubmission = deltaSubmission;
+        this.binaryFormat = binaryFormat;
+    }
+
+    private final boolean deltaSubmission;
+    private final boolean binaryFormat;
+    private long payloadBudget = super.getPayloadBudget();
+    private double sampleRate = 1;
+    private long errorFlushDelay = super.getErrorFlushDelay();
+    private long errorFlushInterval = super.getErrorFlushInterval();
+    private @Nullable Path sharedRegion = null;
+    private boolean coalescing = false;
+    private @Nullable Predicate<byte[]> relay = null;
+    private @Nullable Consumer<JsonObject> constantData = null;
+
+    public MockMetrics payloadBudget(final long payloadBudget) {
+        this.payloadBudget = payloadBudget;
+        return this;
+    }
+
+    public MockMetrics errorFlush(final long delay, final long interval) {
+        this.errorFlushDelay = delay;
+        this.errorFlushInterval = interval;
+        return this;
+    }
+
+    public MockMetrics sampleRate(final double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    public MockMetrics sharedRegion(final Path sharedRegion) {
+        this.sharedRegion = sharedRegion;
+        return this;
+    }
+
+    public MockMetrics coalescing(final boolean coalescing) {
+        this.coalescing = coalescing;
+        return this;
+    }
+
+    public MockMetrics relay(final Predicate<byte[]> relay) {
+        this.relay = relay;
+        return this;
+    }
+
+    public MockMetrics constantData(final Consumer<JsonObject> constantData) {
+        this.constantData = constantData;
+        return this;
+    }
+
+    @Override
+    protected void appendConstantData(final JsonObject metrics) {
+        if (constantData != null) constantData.accept(metrics);
+    }
+
+    @Override
+    protected boolean isNetworkMode() {
+        return relay != null;
+    }
+
+    @Override
+    protected boolean canRelay() {
+        return relay != null;
+    }
+
+    @Override
+    protected boolean relay(final byte[] message) {
+        return relay != null && relay.test(message);
+    }
+
+    @Override
+    public boolean receiveRelayed(final String server, final byte[] message, final Consumer<byte[]> reply) {
+        return super.receiveRelayed(server, message, reply);
+    }
+
+    @Override
+    public boolean receiveRelayAck(final byte[] message) {
+        return super.receiveRelayAck(message);
+    }
+
+    @Override
+    protected boolean isCoalescing() {
+        return coalescing;
+    }
+
+    @Override
+    public void startSubmitting() {
+        super.startSubmitting();
+    }
+
+    @Override
+    protected long getErrorFlushDelay() {
+        return errorFlushDelay;
+    }
+
+    @Override
+    protected long getErrorFlushInterval() {
+        return errorFlushInterval;
+    }
+
+    @Override
+    protected double getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    protected @Nullable Path getSharedRegion() {
+        return sharedRegion;
+    }
+
+    @Override
+    protected long getPayloadBudget() {
+        return payloadBudget;
+    }
+
+    @Override
+    protected boolean isDeltaSubmission() {
+        return deltaSubmission;
+    }
+
+    @Override
+    protected boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
+    @Override
+    protected long getMetricTimeout() {
+        return 500;
     }
 
     @Override
@@ -38,6 +189,11 @@ public final class MockMetrics extends SimpleMetrics {
         return super.createData();
     }
 
+    @Override
+    public CompletableFuture<JsonObject> createDataAsync() {
+        return super.createDataAsync();
+    }
+
     @Override
     protected void appendDefaultData(final JsonObject metrics) {
     }
@@ -0,0 +1,125 @@
+package dev.faststats;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.faststats.core.Transport;
+import dev.faststats.core.data.Metric;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransportTest {
+    private static JsonObject decode(final byte[] body) {
+        try (final var input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return JsonParser.parseString(new String(input.readAllBytes(), UTF_8)).getAsJsonObject();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void loopbackTransport() {
+        final var requests = new CopyOnWriteArrayList<Transport.Request>();
+        final var transport = Transport.loopback(request -> {
+            requests.add(request);
+            return new Transport.Response(200, "{}");
+        });
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                Set.of(Metric.number("player_count", () -> 5)), transport);
+
+        assertTrue(mock.submit());
+        assertEquals(1, requests.size());
+        final var request = requests.get(0);
+        assertEquals("Bearer 24f9fc423ed06194065a42d00995c600", request.headers().get("Authorization"));
+        assertEquals("gzip", request.headers().get("Content-Encoding"));
+        assertEquals(5, decode(request.body()).getAsJsonObject("data").get("player_count").getAsInt());
+    }
+
+    @Test
+    public void loopbackFailuresAreReported() {
+        final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(),
+                Transport.loopback(request -> new Transport.Response(500, "error")));
+        assertFalse(mock.submit());
+
+        final var failing = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false, Set.of(),
+                Transport.loopback(request -> {
+                    throw new IllegalStateException("unreachable");
+                }));
+        assertFalse(failing.submit());
+    }
+
+    @Test
+    public void unixDomainSocketTransport() throws Exception {
+        final var directory = Files.createTempDirectory("faststats");
+        final var socket = directory.resolve("collector.sock");
+        try (final var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            final var received = CompletableFuture.supplyAsync(() -> {
+                try (final var channel = server.accept()) {
+                    final var output = new ByteArrayOutputStream();
+                    final var buffer = ByteBuffer.allocate(8192);
+                    while (!isComplete(output.toByteArray())) {
+                        if (channel.read(buffer) == -1) break;
+                        output.write(buffer.array(), 0, buffer.position());
+                        buffer.clear();
+                    }
+                    final var response = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n2\r\n{}\r\n0\r\n\r\n";
+                    channel.write(ByteBuffer.wrap(response.getBytes(ISO_8859_1)));
+                    return output.toByteArray();
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            final var mock = new MockMetrics(UUID.randomUUID(), "24f9fc423ed06194065a42d00995c600", null, false,
+                    Set.of(Metric.number("player_count", () -> 7)), Transport.unixDomainSocket(socket));
+            assertTrue(mock.submit());
+
+            final var request = received.join();
+            final var head = new String(request, 0, headerEnd(request), ISO_8859_1);
+            assertTrue(head.startsWith("POST /v1/collect HTTP/1.1\r\n"));
+            assertTrue(head.contains("\r\nContent-Encoding: gzip"));
+            final var body = Arrays.copyOfRange(request, headerEnd(request) + 4, request.length);
+            assertEquals(7, decode(body).getAsJsonObject("data").get("player_count").getAsInt());
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static boolean isComplete(final byte[] bytes) {
+        final var end = headerEnd(bytes);
+        if (end == -1) return false;
+        final var head = new String(bytes, 0, end, ISO_8859_1);
+        final var start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        final var length = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+        return bytes.length >= end + 4 + length;
+    }
+
+    private static int headerEnd(final byte[] bytes) {
+        for (var i = 0; i + 3 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ActivityTest {
+    private static final long BASE = 1800;
+    private static final long MIN = 300;
+    private static final long MAX = 7200;
+
+    @Test
+    public void periodStretchesWhileIdle() {
+        final var activity = new Activity();
+        activity.observe(data(10, "paper"));
+        assertEquals(BASE, activity.next(BASE, MIN, MAX));
+
+        activity.observe(data(10, "paper"));
+        assertEquals(2700, activity.next(BASE, MIN, MAX));
+        activity.observe(data(10, "paper"));
+        assertEquals(4050, activity.next(BASE, MIN, MAX));
+        activity.observe(data(10, "paper"));
+        assertEquals(6075, activity.next(BASE, MIN, MAX));
+        activity.observe(data(10, "paper"));
+        assertEquals(MAX, activity.next(BASE, MIN, MAX));
+
+        activity.observe(data(11, "paper"));
+        assertEquals(BASE, activity.next(BASE, MIN, MAX));
+    }
+
+    @Test
+    public void periodShortensOnUnhandledErrorsAndSwings() {
+        final var activity = new Activity();
+        activity.observe(data(10, "paper"));
+        activity.next(BASE, MIN, MAX);
+
+        activity.observe(data(10, "paper"));
+        activity.reported(true);
+        assertEquals(BASE, activity.next(BASE, MIN, MAX));
+
+        activity.observe(data(10, "paper"));
+        activity.reported(false);
+        assertEquals(900, activity.next(BASE, MIN, MAX));
+
+        activity.observe(data(40, "paper"));
+        assertEquals(450, activity.next(BASE, MIN, MAX));
+
+        activity.observe(data(5, "paper"));
+        assertEquals(MIN, activity.next(BASE, MIN, MAX));
+    }
+
+    private static JsonObject data(final int players, final String type) {
+        final var data = new JsonObject();
+        data.addProperty("player_count", players);
+        data.addProperty("server_type", type);
+        return data;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryFormatTest {
+    @Test
+    public void roundTrip() {
+        final var data = new JsonObject();
+        data.addProperty("player_count", 37);
+        data.addProperty("negative", -12_345_678_901L);
+        data.addProperty("ratio", 0.75);
+        data.addProperty("online_mode", true);
+        data.addProperty("server_type", "Paper");
+        data.add("removed", JsonNull.INSTANCE);
+        final var worlds = new JsonArray();
+        worlds.add("world");
+        worlds.add("world_nether");
+        worlds.add("world");
+        data.add("worlds", worlds);
+        final var nested = new JsonObject();
+        nested.addProperty("Paper", 3);
+        data.add("server_types", nested);
+
+        final var errors = new JsonArray();
+        final var patterns = List.<Map.Entry<Pattern, String>>of();
+        errors.add(ErrorHelper.compile(new IllegalStateException("Cannot load world data", new RuntimeException("Missing chunk")), null, false, patterns));
+
+        final var payload = new JsonObject();
+        payload.addProperty("identifier", "d4f8e3a0-5c6b-4f7e-9b1a-2c3d4e5f6a7b");
+        payload.add("data", data);
+        payload.add("errors", errors);
+
+        final var writer = new BinaryFormat.Writer();
+        writer.value(payload);
+        final var bytes = writer.toByteArray();
+
+        assertEquals(payload, BinaryFormat.read(bytes));
+        assertTrue(bytes.length < payload.toString().getBytes(UTF_8).length);
+    }
+
+    @Test
+    public void parsedNumbersKeepTheirKind() {
+        final var payload = JsonParser.parseString("{\"a\":1,\"b\":1.5,\"c\":-3}").getAsJsonObject();
+        final var writer = new BinaryFormat.Writer();
+        writer.value(payload);
+        final var read = BinaryFormat.read(writer.toByteArray());
+        assertEquals(1L, read.get("a").getAsLong());
+        assertEquals(1.5, read.get("b").getAsDouble(), 0);
+        assertEquals(-3L, read.get("c").getAsLong());
+    }
+
+    @Test
+    public void copiedWritersShareThePrefix() {
+        final var prefix = new BinaryFormat.Writer();
+        prefix.startObject();
+        prefix.key("identifier");
+        prefix.value(JsonParser.parseString("\"server\""));
+
+        final var first = prefix.copy();
+        first.key("identifier_copy");
+        first.value(JsonParser.parseString("\"server\""));
+        first.endObject();
+
+        final var read = BinaryFormat.read(first.toByteArray());
+        assertEquals("server", read.get("identifier_copy").getAsString());
+        assertEquals(BinaryFormat.MAGIC.length + 1 + 1 + 1 + 10 + 1 + 1 + 1 + 6, prefix.toByteArray().length);
+    }
+
+    @Test
+    public void malformedPayloadsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BinaryFormat.read(new byte[]{'F', 'S', 1, 0x07, 1}));
+        assertThrows(IllegalArgumentException.class, () -> BinaryFormat.read(new byte[]{'{', '}'}));
+        assertThrows(IllegalArgumentException.class, () -> BinaryFormat.read(new byte[]{'F', 'S', 1, 0x09}));
+    }
+}
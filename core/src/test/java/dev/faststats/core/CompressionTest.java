@@ -0,0 +1,120 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressionTest {
+    @Test
+    public void dictionaryCompressionBeatsGzip() throws Exception {
+        final var payloads = List.of(
+                payload(false),
+                payload(true)
+        );
+
+        for (final var payload : payloads) {
+            final var bytes = payload.toString().getBytes(UTF_8);
+            final var gzip = Compression.gzip(bytes);
+            final var deflate = Compression.deflate(bytes);
+
+            assertArrayEquals(bytes, gunzip(gzip.body()));
+            if (deflate.encoding() == null) {
+                assertArrayEquals(bytes, deflate.body());
+            } else {
+                assertArrayEquals(bytes, inflate(deflate.body()));
+                assertTrue(deflate.body().length < gzip.body().length,
+                        "deflate " + deflate.body().length + " >= gzip " + gzip.body().length);
+            }
+        }
+    }
+
+    @Test
+    public void smallPayloadsAreNotCompressed() {
+        final var bytes = "{\"identifier\":\"x\",\"data\":{}}".getBytes(UTF_8);
+        final var compressed = Compression.deflate(bytes);
+        assertArrayEquals(bytes, compressed.body());
+        assertNull(compressed.encoding());
+        assertNull(compressed.dictionary());
+    }
+
+    @Test
+    public void dictionaryVersionIsNegotiated() {
+        assertTrue(Compression.isSupported(Compression.DICTIONARY_VERSION));
+        assertTrue(Compression.isSupported("2, " + Compression.DICTIONARY_VERSION));
+        assertFalse(Compression.isSupported("2"));
+        assertFalse(Compression.isSupported(null));
+        assertEquals("deflate", Compression.deflate(payload(true).toString().getBytes(UTF_8)).encoding());
+    }
+
+    private static JsonObject payload(final boolean errors) {
+        final var data = new JsonObject();
+        data.addProperty("core_count", 8);
+        data.addProperty("java_vendor", "Eclipse Adoptium");
+        data.addProperty("java_version", "21.0.5");
+        data.addProperty("os_arch", "amd64");
+        data.addProperty("os_name", "Linux");
+        data.addProperty("os_version", "6.8.0-45-generic");
+        data.addProperty("minecraft_version", "1.21.4");
+        data.addProperty("online_mode", true);
+        data.addProperty("player_count", 37);
+        data.addProperty("plugin_version", "2.4.1");
+        data.addProperty("server_type", "Paper");
+
+        final var payload = new JsonObject();
+        payload.addProperty("identifier", UUID.randomUUID().toString());
+        payload.add("data", data);
+        if (!errors) return payload;
+
+        final var report = new JsonArray();
+        final var patterns = List.<Map.Entry<Pattern, String>>of();
+        final var cause = new IllegalStateException("Cannot load world data", new NullPointerException("Cannot invoke \"Object.toString()\" because \"value\" is null"));
+        report.add(ErrorHelper.compile(cause, null, false, patterns));
+        report.add(ErrorHelper.compile(new IllegalArgumentException("Invalid configuration value: spawn-radius"), null, true, patterns));
+        payload.add("errors", report);
+        return payload;
+    }
+
+    private static byte[] gunzip(final byte[] bytes) throws IOException {
+        try (final var input = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] inflate(final byte[] bytes) throws DataFormatException {
+        final var inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            final var output = new ByteArrayOutputStream();
+            final var buffer = new byte[4096];
+            while (!inflater.finished()) {
+                final var length = inflater.inflate(buffer);
+                if (length == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(Compression.dictionary());
+                    continue;
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package dev.faststats.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DirectiveTest {
+    @Test
+    public void directivesAreParsedAndClamped() {
+        final var directive = Directive.parse("{\"directive\":{\"period\":5,\"sample_rate\":2,\"stack_trace_limit\":100,\"payload_budget\":65536}}");
+        assert directive != null;
+        assertEquals(Long.valueOf(TimeUnit.MINUTES.toMillis(1)), directive.period());
+        assertEquals(Double.valueOf(1), directive.sampleRate());
+        assertEquals(Long.valueOf(65536), directive.payloadBudget());
+        assertNull(directive.messageLength());
+        assertEquals(50, directive.limits().stackTraceLimit());
+        assertEquals(ErrorHelper.Limits.DEFAULT.messageLength(), directive.limits().messageLength());
+
+        assertEquals(Directive.NONE, Directive.parse("{\"directive\":null}"));
+        assertNull(Directive.parse("{}"));
+        assertNull(Directive.parse("Accepted"));
+    }
+
+    @Test
+    public void directivesAreCached() throws IOException {
+        final var file = Files.createTempDirectory("faststats").resolve("directive.json");
+        assertNull(Directive.read(file));
+
+        final var directive = new Directive(TimeUnit.HOURS.toMillis(2), 0.25, 5, 200, 4096L);
+        directive.write(file);
+        directive.write(file);
+        assertEquals(directive, Directive.read(file));
+        try (final var files = Files.list(file.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+}
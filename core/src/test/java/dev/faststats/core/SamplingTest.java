@@ -0,0 +1,36 @@
+package dev.faststats.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SamplingTest {
+    @Test
+    public void selectionIsStableAndProportional() {
+        var selected = 0;
+        for (var i = 0; i < 10_000; i++) {
+            final var serverId = UUID.randomUUID();
+            final var sampled = Sampling.isSelected(serverId, 0.1);
+            assertEquals(sampled, Sampling.isSelected(serverId, 0.1));
+            if (sampled) {
+                selected++;
+                assertTrue(Sampling.isSelected(serverId, 0.5));
+            }
+            assertTrue(Sampling.isSelected(serverId, 1));
+            assertFalse(Sampling.isSelected(serverId, 0));
+        }
+        assertTrue(selected > 800 && selected < 1200, "Selected " + selected + " of 10000 servers");
+    }
+
+    @Test
+    public void invalidRatesAreIgnored() {
+        assertEquals(0.25, Sampling.parseRate(" 0.25 "));
+        assertTrue(Double.isNaN(Sampling.parseRate(null)));
+        assertTrue(Double.isNaN(Sampling.parseRate("2")));
+        assertTrue(Double.isNaN(Sampling.parseRate("half")));
+    }
+}
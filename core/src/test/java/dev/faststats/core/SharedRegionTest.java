@@ -0,0 +1,78 @@
+package dev.faststats.core;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedRegionTest {
+    private static final String TOKEN = "bba4a14eac38779007a6fda4814381d4";
+    private static final String OTHER_TOKEN = "24f9fc423ed06194065a42d00995c600";
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void publicationsAreConsumedOnce() throws Exception {
+        final var file = Files.createTempDirectory("faststats").resolve("shared.region");
+        final var followerId = UUID.randomUUID();
+        try (final var leader = SharedRegion.open(file, TOKEN, UUID.randomUUID(), TIMEOUT);
+             final var follower = SharedRegion.open(file, TOKEN, followerId, TIMEOUT);
+             final var stranger = SharedRegion.open(file, OTHER_TOKEN, UUID.randomUUID(), TIMEOUT)) {
+            assertTrue(leader.tryLead());
+            assertFalse(follower.tryLead());
+            assertTrue(stranger.tryLead());
+
+            final var data = new JsonObject();
+            data.addProperty("player_count", 12);
+            data.addProperty("tps", 19.5);
+            data.addProperty("online_mode", true);
+            assertEquals(3, follower.publish(data));
+            assertFalse(follower.isConsumed());
+            assertThrows(IllegalStateException.class, () -> follower.publish(data));
+            assertTrue(stranger.collect().isEmpty());
+
+            final var publications = leader.collect();
+            assertEquals(1, publications.size());
+            assertEquals(followerId, publications.get(0).serverId());
+            assertEquals("{\"player_count\":12,\"tps\":19.5,\"online_mode\":true}", publications.get(0).data().toString());
+
+            leader.consume(publications);
+            assertTrue(follower.isConsumed());
+            assertTrue(leader.collect().isEmpty());
+        }
+    }
+
+    @Test
+    public void onlyScalarDataIsPublishable() throws Exception {
+        final var data = new JsonObject();
+        data.addProperty("player_count", 12);
+        assertTrue(SharedRegion.isPublishable(data));
+
+        data.addProperty("server_type", "Paper");
+        assertFalse(SharedRegion.isPublishable(data));
+
+        final var file = Files.createTempDirectory("faststats").resolve("shared.region");
+        try (final var follower = SharedRegion.open(file, TOKEN, UUID.randomUUID(), TIMEOUT)) {
+            assertThrows(IllegalArgumentException.class, () -> follower.publish(data));
+            assertTrue(follower.isConsumed());
+        }
+    }
+
+    @Test
+    public void leadershipIsReleasedOnClose() throws Exception {
+        final var file = Files.createTempDirectory("faststats").resolve("shared.region");
+        try (final var follower = SharedRegion.open(file, TOKEN, UUID.randomUUID(), TIMEOUT)) {
+            try (final var leader = SharedRegion.open(file, TOKEN, UUID.randomUUID(), TIMEOUT)) {
+                assertTrue(leader.tryLead());
+                assertFalse(follower.tryLead());
+            }
+            assertTrue(follower.tryLead());
+        }
+    }
+}
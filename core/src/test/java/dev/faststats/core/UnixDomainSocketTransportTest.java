@@ -0,0 +1,28 @@
+package dev.faststats.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UnixDomainSocketTransportTest {
+    @Test
+    public void responsesAreParsed() throws ProtocolException {
+        final var response = UnixDomainSocketTransport.parse(bytes("HTTP/1.1 202 Accepted\r\nContent-Length: 2\r\n\r\n{}trailing"));
+        assertEquals(202, response.statusCode());
+        assertEquals("{}", response.body());
+    }
+
+    @Test
+    public void negativeLengthsAreRejected() {
+        assertThrows(ProtocolException.class, () -> UnixDomainSocketTransport.parse(bytes("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n{}")));
+        assertThrows(ProtocolException.class, () -> UnixDomainSocketTransport.parse(bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-2\r\n{}\r\n0\r\n\r\n")));
+    }
+
+    private static byte[] bytes(final String response) {
+        return response.getBytes(ISO_8859_1);
+    }
+}
@@ -38,15 +38,20 @@ final class FabricMetricsImpl extends SimpleMetrics implements FabricMetrics {
     }
 
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
+    protected void appendConstantData(final JsonObject metrics) {
         assert server != null : "Server not initialized";
         metrics.addProperty("minecraft_version", server.getServerVersion());
-        metrics.addProperty("online_mode", server.usesAuthentication());
-        metrics.addProperty("player_count", server.getPlayerCount());
         metrics.addProperty("plugin_version", mod.getMetadata().getVersion().getFriendlyString());
         metrics.addProperty("server_type", "Fabric");
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        assert server != null : "Server not initialized";
+        metrics.addProperty("online_mode", server.usesAuthentication());
+        metrics.addProperty("player_count", server.getPlayerCount());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.error(message, throwable);
@@ -26,12 +26,16 @@ final class HytaleMetricsImpl extends SimpleMetrics implements HytaleMetrics {
     }
 
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
+    protected void appendConstantData(final JsonObject metrics) {
         metrics.addProperty("server_version", HytaleServer.get().getServerName());
-        metrics.addProperty("player_count", Universe.get().getPlayerCount());
         metrics.addProperty("server_type", "Hytale");
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("player_count", Universe.get().getPlayerCount());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.atSevere().log(message, throwable);
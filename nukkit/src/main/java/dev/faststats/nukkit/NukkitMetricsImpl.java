@@ -32,14 +32,18 @@ final class NukkitMetricsImpl extends SimpleMetrics implements NukkitMetrics {
     }
 
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
+    protected void appendConstantData(final JsonObject metrics) {
         metrics.addProperty("minecraft_version", server.getVersion());
-        metrics.addProperty("online_mode", server.xboxAuth);
-        metrics.addProperty("player_count", server.getOnlinePlayersCount());
         metrics.addProperty("plugin_version", plugin.getDescription().getVersion());
         metrics.addProperty("server_type", server.getName());
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("online_mode", server.xboxAuth);
+        metrics.addProperty("player_count", server.getOnlinePlayersCount());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.error(message, throwable);
@@ -8,6 +8,7 @@ plugins {
 }
 
 rootProject.name = "faststats-java"
+include("aggregator")
 include("bukkit")
 include("bukkit:example-plugin")
 include("bungeecord")
@@ -62,14 +62,18 @@ final class SpongeMetricsImpl extends SimpleMetrics implements SpongeMetrics {
     }
 
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
-        metrics.addProperty("online_mode", Sponge.server().isOnlineModeEnabled());
-        metrics.addProperty("player_count", Sponge.server().onlinePlayers().size());
+    protected void appendConstantData(final JsonObject metrics) {
         metrics.addProperty("plugin_version", plugin.metadata().version().toString());
         metrics.addProperty("minecraft_version", Sponge.platform().minecraftVersion().name());
         metrics.addProperty("server_type", Sponge.platform().container(Platform.Component.IMPLEMENTATION).metadata().id());
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("online_mode", Sponge.server().isOnlineModeEnabled());
+        metrics.addProperty("player_count", Sponge.server().onlinePlayers().size());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.error(message, throwable);
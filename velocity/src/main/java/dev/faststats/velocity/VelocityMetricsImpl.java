@@ -1,9 +1,12 @@
 package dev.faststats.velocity;
 
 import com.google.gson.JsonObject;
+import com.velocitypowered.api.event.connection.PluginMessageEvent;
 import com.velocitypowered.api.plugin.PluginContainer;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
 import dev.faststats.core.Metrics;
 import dev.faststats.core.SimpleMetrics;
 import org.jetbrains.annotations.Async;
@@ -25,7 +28,8 @@ final class VelocityMetricsImpl extends SimpleMetrics implements VelocityMetrics
             final Logger logger,
             final ProxyServer server,
             final Path config,
-            final PluginContainer plugin
+            final PluginContainer plugin,
+            final Object instance
     ) throws IllegalStateException {
         super(factory, config);
 
@@ -33,19 +37,37 @@ final class VelocityMetricsImpl extends SimpleMetrics implements VelocityMetrics
         this.server = server;
         this.plugin = plugin;
 
+        if (isNetworkMode()) registerRelayChannel(instance);
+
         startSubmitting();
     }
 
+    private void registerRelayChannel(final Object instance) {
+        final var channel = MinecraftChannelIdentifier.from(RELAY_CHANNEL);
+        server.getChannelRegistrar().register(channel);
+        server.getEventManager().register(instance, PluginMessageEvent.class, event -> {
+            if (!event.getIdentifier().equals(channel)) return;
+            event.setResult(PluginMessageEvent.ForwardResult.handled());
+            if (event.getSource() instanceof final ServerConnection connection) {
+                receiveRelayed(connection.getServerInfo().getName(), event.getData(), reply -> connection.sendPluginMessage(channel, reply));
+            }
+        });
+    }
+
     @Override
-    protected void appendDefaultData(final JsonObject metrics) {
+    protected void appendConstantData(final JsonObject metrics) {
         final var pluginVersion = plugin.getDescription().getVersion().orElse("unknown");
-        metrics.addProperty("online_mode", server.getConfiguration().isOnlineMode());
-        metrics.addProperty("player_count", server.getPlayerCount());
         metrics.addProperty("plugin_version", pluginVersion);
         metrics.addProperty("proxy_version", server.getVersion().getVersion());
         metrics.addProperty("server_type", server.getVersion().getName());
     }
 
+    @Override
+    protected void appendDefaultData(final JsonObject metrics) {
+        metrics.addProperty("online_mode", server.getConfiguration().isOnlineMode());
+        metrics.addProperty("player_count", server.getPlayerCount());
+    }
+
     @Override
     protected void printError(final String message, @Nullable final Throwable throwable) {
         logger.error(message, throwable);
@@ -88,7 +110,7 @@ final class VelocityMetricsImpl extends SimpleMetrics implements VelocityMetrics
         public Metrics create(final Object plugin) throws IllegalStateException, IllegalArgumentException {
             final var faststats = dataDirectory.resolveSibling("faststats");
             final var container = server.getPluginManager().ensurePluginContainer(plugin);
-            return new VelocityMetricsImpl(this, logger, server, faststats.resolve("config.properties"), container);
+            return new VelocityMetricsImpl(this, logger, server, faststats.resolve("config.properties"), container, plugin);
         }
     }
 }